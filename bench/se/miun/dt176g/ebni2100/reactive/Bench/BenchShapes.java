@@ -0,0 +1,81 @@
+package se.miun.dt176g.ebni2100.reactive.Bench;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Oval;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.StraightLine;
+
+import java.awt.*;
+import java.util.Random;
+
+/**
+ * Shapes used by the benchmarks, the same for every run.
+ */
+public final class BenchShapes {
+
+    /**
+     * Kinds of shapes.
+     */
+    public enum Kind {
+        RECTANGLE, OVAL, STRAIGHT_LINE, FREEHAND, STROKE_DELTA
+    }
+
+    static final int WIDTH = 1000;
+    static final int HEIGHT = 800;
+
+    // Points of a freehand, and of a part of a stroke as the drawing panel sends them.
+    static final int FREEHAND_POINTS = 100;
+    static final int STROKE_DELTA_POINTS = 16;
+
+    private BenchShapes() {
+    }
+
+    /**
+     * Creates a shape somewhere on a 1000x800 canvas.
+     * @param kind kind of shape.
+     * @param seed picks the position and size.
+     * @return the shape.
+     */
+    static Shape create(Kind kind, long seed) {
+        Random random = new Random(seed);
+        int x = random.nextInt(WIDTH - 200);
+        int y = random.nextInt(HEIGHT - 200);
+        switch (kind) {
+            case RECTANGLE:
+            case OVAL: {
+                Shape shape = kind == Kind.RECTANGLE ? new Rectangle(Color.RED, 2) : new Oval(Color.BLUE, 2);
+                shape.setPosition(x, y);
+                shape.setSize(10 + random.nextInt(190), 10 + random.nextInt(190));
+                return shape;
+            }
+            case STRAIGHT_LINE: {
+                StraightLine line = new StraightLine(Color.GREEN, 2);
+                line.setPosition(x, y);
+                line.setEndPoint(x + random.nextInt(200), y + random.nextInt(200));
+                return line;
+            }
+            case FREEHAND: {
+                Freehand freehand = new Freehand(Color.RED, 3);
+                freehand.setPosition(x, y);
+                for (int i = 0; i < FREEHAND_POINTS; i++) {
+                    x = Math.max(0, Math.min(WIDTH, x + random.nextInt(7) - 3));
+                    y = Math.max(0, Math.min(HEIGHT, y + random.nextInt(7) - 3));
+                    freehand.addPoint(x, y);
+                }
+                return freehand;
+            }
+            case STROKE_DELTA:
+            default: {
+                int[] xs = new int[STROKE_DELTA_POINTS];
+                int[] ys = new int[STROKE_DELTA_POINTS];
+                for (int i = 0; i < xs.length; i++) {
+                    xs[i] = x + i;
+                    ys[i] = y + random.nextInt(3);
+                }
+                return new StrokeDelta(Color.RED, 3, seed, StrokeDelta.Phase.APPEND, xs, ys);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package se.miun.dt176g.ebni2100.reactive.Bench;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeInput;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+import se.miun.dt176g.ebni2100.reactive.Server.ServerConfig;
+import se.miun.dt176g.ebni2100.reactive.Server.VirtualThreads;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idle clients of the blocking engine, each with a reader blocked on its next shape the way the server reads
+ * from a client, on platform threads of the io-scheduler or on virtual threads. The time is for connecting
+ * all clients until every reader is blocked. Reports the heap per client and the live platform threads once
+ * they are, the platform threads holding a stack each. The counters add up over the measured runs.
+ *
+ * Virtual threads need Java 21 or later, the VIRTUAL runs fail on older JVMs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx1g"})
+public class ClientThreadsBenchmark {
+
+    @Param({"1000", "4000"})
+    public int clients;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ServerConfig.ClientThreads threads;
+
+    /**
+     * What a run reports besides its time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public double heapKbPerClient;
+        public long platformThreads;
+    }
+
+    private ServerSocket server;
+    private Scheduler scheduler;
+    private ExecutorService executor;
+    private final List<Socket> sockets = new ArrayList<>();
+    private long baseHeap;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException, InterruptedException {
+        server = new ServerSocket(0, clients);
+        if (threads == ServerConfig.ClientThreads.VIRTUAL) {
+            executor = VirtualThreads.newPerTaskExecutor();
+            scheduler = Schedulers.from(executor);
+        } else {
+            scheduler = Schedulers.io();
+        }
+        baseHeap = heapAfterGc();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        sockets.clear();
+        server.close();
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private static long heapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        Thread.sleep(100);
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Connects the clients, and starts a reader for each that blocks once it has read the stream header.
+     */
+    @Benchmark
+    public void connect(Counters counters) throws IOException, InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            Socket client = new Socket("localhost", server.getLocalPort());
+            WireFormat.BINARY.newOutput(client.getOutputStream()); // Sends the stream header.
+            Socket accepted = server.accept();
+            sockets.add(client);
+            sockets.add(accepted);
+            Observable.just(accepted)
+                    .observeOn(scheduler)
+                    .subscribe(socket -> {
+                        try (ShapeInput input = WireFormat.BINARY.newInput(socket.getInputStream())) {
+                            blocked.countDown();
+                            input.read();
+                        } catch (IOException | ClassNotFoundException e) {
+                            // Closed at the end of the run.
+                        }
+                    });
+        }
+        blocked.await();
+
+        counters.heapKbPerClient = (heapAfterGc() - baseHeap) / 1024.0 / clients;
+        counters.platformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+}
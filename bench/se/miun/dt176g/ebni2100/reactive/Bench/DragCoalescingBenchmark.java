@@ -0,0 +1,127 @@
+package se.miun.dt176g.ebni2100.reactive.Bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.ebni2100.reactive.Client.DrawingPanel;
+import se.miun.dt176g.ebni2100.reactive.Client.Menu;
+
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A mouse polled at 1000 Hz dragging a shape across the drawing panel for one second. The drags are posted
+ * to the event dispatching thread on time, like from a real mouse, and every repaint the panel requests is
+ * painted into an off-screen image at once. Reports the repaints and the cpu time of the event dispatching
+ * thread, which stay near one per display frame however fast the mouse is polled. The counters add up over
+ * the measured runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DragCoalescingBenchmark {
+
+    private static final int RATE_HZ = 1000;
+
+    @Param({"Rectangle", "Freehand"})
+    public String shape;
+
+    /**
+     * What a run reports besides its time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long repaints;
+        public long edtCpuMillis;
+    }
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final BufferedImage image = new BufferedImage(BenchShapes.WIDTH, BenchShapes.HEIGHT,
+            BufferedImage.TYPE_INT_ARGB);
+    private DrawingPanel panel;
+    private long eventThread;
+    private long repaints;
+
+    /**
+     * Drawing panel that paints each repaint it requests into the image.
+     */
+    private class PaintingPanel extends DrawingPanel {
+        private static final long serialVersionUID = 1L;
+
+        PaintingPanel(Menu menu) {
+            super(menu);
+        }
+
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {
+            if (this != panel) {
+                return; // Still being constructed.
+            }
+            repaints++;
+            Graphics2D g = image.createGraphics();
+            g.setClip(x, y, width, height);
+            paintComponent(g);
+            g.dispose();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(() -> {
+            Menu menu = new Menu();
+            panel = new PaintingPanel(menu);
+            panel.setSize(BenchShapes.WIDTH, BenchShapes.HEIGHT);
+            MousePipelineBenchmark.selectShape(menu, shape);
+            eventThread = Thread.currentThread().getId();
+        });
+        repaints = 0;
+    }
+
+    private void post(int id, int x, int y) {
+        MouseEvent event = new MouseEvent(panel, id, 0, InputEvent.BUTTON1_DOWN_MASK, x, y, 1, false,
+                MouseEvent.BUTTON1);
+        SwingUtilities.invokeLater(() -> panel.dispatchEvent(event));
+    }
+
+    /**
+     * Presses, drags for a second at 1000 Hz and releases, then waits for the event dispatching thread.
+     */
+    @Benchmark
+    public void drag(Counters counters) throws InterruptedException, InvocationTargetException {
+        long cpuBefore = threads.getThreadCpuTime(eventThread);
+        long start = System.nanoTime();
+        post(MouseEvent.MOUSE_PRESSED, 10, 10);
+        for (int i = 1; i <= RATE_HZ; i++) {
+            long due = start + i * TimeUnit.SECONDS.toNanos(1) / RATE_HZ;
+            while (System.nanoTime() < due) {
+                Thread.onSpinWait();
+            }
+            post(MouseEvent.MOUSE_DRAGGED, 10 + i % 500, 10 + (i * 7) % 400);
+        }
+        post(MouseEvent.MOUSE_RELEASED, 20, 20);
+        SwingUtilities.invokeAndWait(() -> { });
+        counters.repaints = repaints;
+        counters.edtCpuMillis = (threads.getThreadCpuTime(eventThread) - cpuBefore) / 1_000_000;
+    }
+}
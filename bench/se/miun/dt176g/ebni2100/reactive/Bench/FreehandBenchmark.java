@@ -0,0 +1,97 @@
+package se.miun.dt176g.ebni2100.reactive.Bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.ebni2100.reactive.Client.Point;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and serializing a stroke of 10k points, stored like a freehand does in two int-arrays, and in a
+ * list of point objects like it used to. Run with "-prof gc" for the bytes allocated per stroke.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FreehandBenchmark {
+
+    private static final int POINTS = 10_000;
+
+    /**
+     * How the points of the stroke are stored.
+     */
+    public enum Layout {
+        POINT_LIST, INT_ARRAYS
+    }
+
+    @Param({"POINT_LIST", "INT_ARRAYS"})
+    public Layout layout;
+
+    private final int[] xs = new int[POINTS];
+    private final int[] ys = new int[POINTS];
+    private Serializable stroke;
+
+    @Setup
+    public void setUp() {
+        int x = BenchShapes.WIDTH / 2;
+        int y = BenchShapes.HEIGHT / 2;
+        for (int i = 0; i < POINTS; i++) {
+            x = Math.max(0, Math.min(BenchShapes.WIDTH, x + (i * 7919) % 7 - 3));
+            y = Math.max(0, Math.min(BenchShapes.HEIGHT, y + (i * 104729) % 7 - 3));
+            xs[i] = x;
+            ys[i] = y;
+        }
+        stroke = build();
+    }
+
+    /**
+     * Adds every point of the stroke, the way the drawing panel does while the stroke is drawn.
+     */
+    @Benchmark
+    public Serializable build() {
+        if (layout == Layout.POINT_LIST) {
+            List<Point> points = new ArrayList<>();
+            for (int i = 0; i < POINTS; i++) {
+                points.add(new Point(xs[i], ys[i]));
+            }
+            return (Serializable) points;
+        }
+        Freehand freehand = new Freehand(Color.RED, 3);
+        for (int i = 0; i < POINTS; i++) {
+            freehand.addPoint(xs[i], ys[i]);
+        }
+        return freehand;
+    }
+
+    /**
+     * Serializes the whole stroke, like it was sent on release.
+     */
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(stroke);
+        }
+        return bytes.toByteArray();
+    }
+}
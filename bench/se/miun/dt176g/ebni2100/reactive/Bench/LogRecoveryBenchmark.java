@@ -0,0 +1,75 @@
+package se.miun.dt176g.ebni2100.reactive.Bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+import se.miun.dt176g.ebni2100.reactive.Server.RoomRegistry;
+import se.miun.dt176g.ebni2100.reactive.Server.ShapeLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup of a server with a shape log: the log is opened, and the canvas rebuilt from every record in it.
+ * The log holds rectangles and freehands drawn into the default room, written once before the runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class LogRecoveryBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int shapes;
+
+    private Path path;
+
+    @Setup
+    public void writeLog() throws IOException {
+        path = Files.createTempFile("shapes", ".log");
+        Files.delete(path);
+        Shape[] drawn = new Shape[100];
+        for (int i = 0; i < drawn.length; i++) {
+            drawn[i] = BenchShapes.create(i % 2 == 0 ? BenchShapes.Kind.RECTANGLE : BenchShapes.Kind.FREEHAND, i);
+        }
+        try (ShapeLog log = ShapeLog.open(path, ShapeLog.Durability.NONE, 0)) {
+            log.recover(shape -> { });
+            for (int i = 0; i < shapes; i++) {
+                log.append(drawn[i % drawn.length]);
+            }
+        }
+    }
+
+    @TearDown
+    public void deleteLog() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Opens the log and rebuilds the rooms from it.
+     */
+    @Benchmark
+    public int recover() throws IOException, InterruptedException {
+        try (ShapeLog log = ShapeLog.open(path, ShapeLog.Durability.NONE, 0)) {
+            RoomRegistry registry = new RoomRegistry(1, WireFormat.BINARY, 0, log);
+            int recovered = registry.recover();
+            registry.shutdown(1000);
+            return recovered;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package se.miun.dt176g.ebni2100.reactive.Bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.ebni2100.reactive.Client.DrawingPanel;
+import se.miun.dt176g.ebni2100.reactive.Client.Menu;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import javax.swing.SwingUtilities;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The mouse-event pipeline of the client: a press, drags and a release dispatched to the drawing panel on
+ * the event dispatching thread, through its observable of mouse-events to the shape being drawn and the
+ * parts and shapes written to the server. The server is a stream that discards what is written.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MousePipelineBenchmark {
+
+    private static final int DRAGS = 62;
+    private static final int EVENTS = DRAGS + 2;
+
+    @Param({"Freehand", "Rectangle"})
+    public String shape;
+
+    @Param({"JAVA", "BINARY"})
+    public WireFormat format;
+
+    private DrawingPanel panel;
+    private final MouseEvent[] events = new MouseEvent[EVENTS];
+
+    // A new panel for each iteration, so the strokes it waits to see echoed do not keep growing.
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        onEventThread(() -> {
+            Menu menu = new Menu();
+            panel = new DrawingPanel(menu);
+            panel.setSize(BenchShapes.WIDTH, BenchShapes.HEIGHT);
+            try {
+                panel.setShapeOutput(format.newOutput(OutputStream.nullOutputStream()));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            selectShape(menu, shape);
+        });
+        events[0] = mouseEvent(MouseEvent.MOUSE_PRESSED, 100, 100);
+        for (int i = 1; i <= DRAGS; i++) {
+            events[i] = mouseEvent(MouseEvent.MOUSE_DRAGGED, 100 + i * 3, 100 + (i % 7));
+        }
+        events[EVENTS - 1] = mouseEvent(MouseEvent.MOUSE_RELEASED, 100 + DRAGS * 3, 100);
+    }
+
+    private MouseEvent mouseEvent(int id, int x, int y) {
+        return new MouseEvent(panel, id, 0, InputEvent.BUTTON1_DOWN_MASK, x, y, 1, false, MouseEvent.BUTTON1);
+    }
+
+    static void selectShape(Menu menu, String text) {
+        for (int i = 0; i < menu.getMenuCount(); i++) {
+            JMenu item = menu.getMenu(i);
+            for (int j = 0; j < item.getItemCount(); j++) {
+                JMenuItem option = item.getItem(j);
+                if (option != null && option.getText().equals(text)) {
+                    option.doClick(0);
+                    return;
+                }
+            }
+        }
+        throw new IllegalArgumentException("No menu item " + text);
+    }
+
+    private static void onEventThread(Runnable task) throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(task);
+    }
+
+    /**
+     * Draws one shape: a press, 62 drags and a release. Reported per event.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void drawShape() throws InterruptedException, InvocationTargetException {
+        onEventThread(() -> {
+            for (MouseEvent event : events) {
+                panel.dispatchEvent(event);
+            }
+        });
+    }
+}
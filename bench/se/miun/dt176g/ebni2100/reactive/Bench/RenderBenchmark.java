@@ -0,0 +1,105 @@
+package se.miun.dt176g.ebni2100.reactive.Bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.ebni2100.reactive.Client.Drawing;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering into an off-screen image: a single freehand, a drawing rendering all its shapes when it is
+ * first painted, and a drawing copying its rendered image on later paints.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int shapes;
+
+    private final List<Shape> mixed = new ArrayList<>();
+    private Freehand freehand;
+    private Drawing rendered;
+    private BufferedImage screen;
+    private Graphics2D screenGraphics;
+
+    @Setup
+    public void setUp() {
+        BenchShapes.Kind[] kinds = BenchShapes.Kind.values();
+        for (int i = 0; i < shapes; i++) {
+            // A drawing only holds committed shapes, never parts of strokes.
+            BenchShapes.Kind kind = kinds[i % (kinds.length - 1)];
+            mixed.add(BenchShapes.create(kind, i));
+        }
+        freehand = (Freehand) BenchShapes.create(BenchShapes.Kind.FREEHAND, 0);
+        rendered = newDrawing();
+        rendered.setSize(BenchShapes.WIDTH, BenchShapes.HEIGHT);
+        screen = new BufferedImage(BenchShapes.WIDTH, BenchShapes.HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        screenGraphics = screen.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        screenGraphics.dispose();
+    }
+
+    private Drawing newDrawing() {
+        Drawing drawing = new Drawing();
+        for (Shape shape : mixed) {
+            drawing.addShape(shape);
+        }
+        return drawing;
+    }
+
+    /**
+     * Draws a freehand of 100 points. Does not depend on the number of shapes.
+     * @return the image drawn into.
+     */
+    @Benchmark
+    public BufferedImage freehandDraw() {
+        freehand.draw(screenGraphics);
+        return screen;
+    }
+
+    /**
+     * Indexes the shapes in a new drawing and renders all of them into its image, as when the drawing
+     * panel is first painted.
+     * @return the drawing.
+     */
+    @Benchmark
+    public Drawing drawingRender() {
+        Drawing drawing = newDrawing();
+        drawing.setSize(BenchShapes.WIDTH, BenchShapes.HEIGHT);
+        return drawing;
+    }
+
+    /**
+     * Copies the rendered image of a drawing, as done on every paint of the drawing panel.
+     * @return the image drawn into.
+     */
+    @Benchmark
+    public BufferedImage drawingDraw() {
+        rendered.draw(screenGraphics);
+        return screen;
+    }
+}
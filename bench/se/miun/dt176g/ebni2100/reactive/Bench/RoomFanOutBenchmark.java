@@ -0,0 +1,96 @@
+package se.miun.dt176g.ebni2100.reactive.Bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeFrame;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+import se.miun.dt176g.ebni2100.reactive.Server.ClientOutbox;
+import se.miun.dt176g.ebni2100.reactive.Server.Room;
+import se.miun.dt176g.ebni2100.reactive.Server.RoomRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out of accepted shapes in a room of the server: each shape is applied to the canvas on the room's
+ * shard, encoded once and queued on the send-queue of every client in the room, which is drained at once
+ * like by a fast client.
+ *
+ * Shapes are accepted in batches, waiting for the last of each, so the time includes the hand-over to the
+ * shard once per batch like when clients keep the shard busy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RoomFanOutBenchmark {
+
+    private static final int BATCH = 100;
+
+    @Param({"1", "10", "100"})
+    public int members;
+
+    @Param({"RECTANGLE", "STROKE_DELTA"})
+    public BenchShapes.Kind kind;
+
+    private final Shape[] shapes = new Shape[BATCH];
+    private final AtomicLong delivered = new AtomicLong();
+    private RoomRegistry registry;
+    private Room room;
+
+    @Setup
+    public void setUpShapes() {
+        for (int i = 0; i < BATCH; i++) {
+            shapes[i] = BenchShapes.create(kind, i);
+        }
+    }
+
+    // A new room for each iteration, so the canvas does not keep growing.
+    @Setup(Level.Iteration)
+    public void setUpRoom() {
+        registry = new RoomRegistry(1, WireFormat.BINARY, 1024, null);
+        room = registry.get("bench");
+        for (int i = 0; i < members; i++) {
+            ClientOutbox outbox = new ClientOutbox(1024, ClientOutbox.SlowConsumerPolicy.DROP_OLDEST,
+                    room::snapshot, this::drain, box -> {});
+            room.join(outbox, new JoinRoom("bench")).blockingGet();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownRoom() throws InterruptedException {
+        registry.shutdown(1000);
+    }
+
+    private void drain(ClientOutbox outbox) {
+        ShapeFrame frame;
+        while ((frame = outbox.poll()) != null) {
+            delivered.addAndGet(frame.getBytes().length);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int accept() {
+        for (int i = 0; i < BATCH - 1; i++) {
+            room.accept(shapes[i]).subscribe();
+        }
+        return room.accept(shapes[BATCH - 1]).blockingGet();
+    }
+}
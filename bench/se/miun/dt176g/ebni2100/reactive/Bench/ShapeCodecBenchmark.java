@@ -0,0 +1,61 @@
+package se.miun.dt176g.ebni2100.reactive.Bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.BinaryShapeCodec;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a single frame of each shape type, in both wire formats.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ShapeCodecBenchmark {
+
+    @Param({"RECTANGLE", "OVAL", "STRAIGHT_LINE", "FREEHAND", "STROKE_DELTA"})
+    public BenchShapes.Kind kind;
+
+    @Param({"JAVA", "BINARY"})
+    public WireFormat format;
+
+    private Shape shape;
+    private byte[] frame;
+    private int bodyOffset;
+
+    @Setup
+    public void setUp() throws IOException {
+        shape = BenchShapes.create(kind, 0);
+        frame = format.encodeFrame(shape);
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        BinaryShapeCodec.readFrameLength(buffer);
+        bodyOffset = buffer.position();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return format.encodeFrame(shape);
+    }
+
+    @Benchmark
+    public Shape decode() throws IOException {
+        return format.decode(ByteBuffer.wrap(frame, bodyOffset, frame.length - bodyOffset));
+    }
+}
@@ -0,0 +1,62 @@
+package se.miun.dt176g.ebni2100.reactive.Client;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Class representing the shapes of a canvas rendered into one image, as a PNG with a transparent
+ * background. Extends shape.
+ *
+ * The server sends it to a client joining a large canvas instead of the shapes it was rendered from, so
+ * the client draws one image followed by the shapes drawn since. The image is decoded when first drawn.
+ */
+public class CanvasImage extends Shape {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] png;
+    private transient BufferedImage image;
+    private transient boolean unreadable;
+
+    /**
+     * Initializes the image.
+     * @param x X-coordinate of the top left corner on the canvas.
+     * @param y Y-coordinate of the top left corner on the canvas.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param png The image encoded as PNG, must not be modified.
+     */
+    public CanvasImage(int x, int y, int width, int height, byte[] png) {
+        super(Color.WHITE, 0);
+        setPosition(x, y);
+        setSize(width, height);
+        this.png = png;
+    }
+
+    /**
+     * Gets the image encoded as PNG.
+     * @return PNG bytes, shared and must not be modified.
+     */
+    public byte[] getPng() {
+        return png;
+    }
+
+    @Override
+    public void draw(Graphics g) {
+        if (image == null && !unreadable) {
+            try {
+                image = ImageIO.read(new ByteArrayInputStream(png));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            unreadable = image == null;
+        }
+        if (image == null) {
+            return; // Not a readable image.
+        }
+        g.drawImage(image, getX(), getY(), getWidth(), getHeight(), null);
+    }
+}
@@ -15,4 +15,14 @@ public class Clear extends Shape {
     public void draw(Graphics g) {
         // Not needed.
     }
+
+    @Override
+    public Rectangle getBounds() {
+        return new Rectangle();  // Covers nothing.
+    }
+
+    @Override
+    public boolean intersects(Rectangle area) {
+        return false;
+    }
 }
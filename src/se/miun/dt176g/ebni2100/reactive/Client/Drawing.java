@@ -2,49 +2,190 @@ package se.miun.dt176g.ebni2100.reactive.Client;
 
 
 import java.awt.Graphics;
-import java.util.ArrayList;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.util.List;
 
 
 /**
  * Class that handles the drawings.
+ *
+ * Committed shapes are rendered once into an off-screen image, which is then copied to the screen on each
+ * paint. The shapes are also kept in a spatial index, to render the uncovered area when the size of the image
+ * changes. Only used on the event dispatching thread.
+ *
+ * The image shows the part of the canvas at the origin of the drawing. When the origin moves, the image is
+ * shifted and only the strips that came into view are rendered.
+ *
  * @author 	Ebba Nimér
  */
 
 public class Drawing implements Drawable {
 
-    private final List<Shape> shapes;
+    // Cell size of the spatial index in pixels.
+    private static final int GRID_CELL_SIZE = 64;
+
+    private final ShapeGrid grid;
+    private BufferedImage raster;
+    private int originX; // Point of the canvas at the top left corner of the image.
+    private int originY;
 
     public Drawing(){
-        shapes = new ArrayList<>();
+        grid = new ShapeGrid(GRID_CELL_SIZE);
     }
 
     /**
-     * Adds a shape to the list.
+     * Adds a shape to the index and renders it into the image.
      * @param s shape.
      */
     public void addShape(Shape s) {
-        shapes.add(s);
+        grid.add(s);
+        if (raster != null) {
+            rasterize(s, null);
+        }
     }
 
     /**
-     * Empties the shape list.
+     * Empties the index and the image.
      */
     public void emptyShapes(){
-        shapes.clear();
+        grid.clear();
+        if (raster != null) {
+            raster = new BufferedImage(raster.getWidth(), raster.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        }
+    }
+
+    /**
+     * Makes sure the image has the given size. The old image is kept, and only shapes in the area that was
+     * not covered before are rendered.
+     * @param width width in pixels.
+     * @param height height in pixels.
+     */
+    public void setSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (raster != null && raster.getWidth() == width && raster.getHeight() == height) {
+            return;
+        }
+        BufferedImage old = raster;
+        raster = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        if (old == null) {
+            renderArea(new Rectangle(originX, originY, width, height));
+            return;
+        }
+
+        Graphics2D g2 = raster.createGraphics();
+        g2.drawImage(old, 0, 0, null);
+        g2.dispose();
+
+        // Render the strips to the right of and below the old image.
+        if (width > old.getWidth()) {
+            renderArea(new Rectangle(originX + old.getWidth(), originY, width - old.getWidth(), height));
+        }
+        if (height > old.getHeight()) {
+            renderArea(new Rectangle(originX, originY + old.getHeight(), Math.min(width, old.getWidth()),
+                    height - old.getHeight()));
+        }
+    }
+
+    /**
+     * Moves the part of the canvas the image shows. The old image is shifted, and only shapes in the area that
+     * came into view are rendered.
+     * @param x x-coordinate of the canvas at the left edge of the image.
+     * @param y y-coordinate of the canvas at the top edge of the image.
+     */
+    public void setOrigin(int x, int y) {
+        int dx = x - originX;
+        int dy = y - originY;
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        originX = x;
+        originY = y;
+        if (raster == null) {
+            return;
+        }
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        BufferedImage old = raster;
+        raster = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        if (Math.abs(dx) >= width || Math.abs(dy) >= height) {
+            renderArea(new Rectangle(x, y, width, height));
+            return;
+        }
+
+        Graphics2D g2 = raster.createGraphics();
+        g2.drawImage(old, -dx, -dy, null);
+        g2.dispose();
+
+        // Render the strip of columns that came into view, then the rows beside it.
+        int stripWidth = Math.abs(dx);
+        if (dx != 0) {
+            renderArea(new Rectangle(dx > 0 ? x + width - dx : x, y, stripWidth, height));
+        }
+        if (dy != 0) {
+            renderArea(new Rectangle(dx > 0 ? x : x + stripWidth, dy > 0 ? y + height - dy : y,
+                    width - stripWidth, Math.abs(dy)));
+        }
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Gets the shapes that may cover any part of the area.
+     * @param area area.
+     * @return shapes in drawing order.
+     */
+    public List<Shape> getShapesIn(Rectangle area) {
+        return grid.query(area);
     }
 
     /**
-     * Draws each shape in the list using the provided graphics context.
+     * Copies the rendered shapes to the provided graphics context.
      *
      * @param g graphics context.
      */
     @Override
     public void draw(Graphics g) {
-        for (Shape shape : shapes) {
-            shape.draw(g);
+        if (raster != null) {
+            g.drawImage(raster, 0, 0, null);
         }
     }
 
-}
+    /**
+     * Renders the shapes in an area into the image, without touching the image outside the area.
+     * @param area area of the canvas.
+     */
+    private void renderArea(Rectangle area) {
+        for (Shape shape : grid.query(area)) {
+            rasterize(shape, area);
+        }
+    }
 
+    /**
+     * Renders a shape into the image.
+     * @param shape shape.
+     * @param clip area of the canvas to limit the rendering to, or null.
+     */
+    private void rasterize(Shape shape, Rectangle clip) {
+        Graphics2D g2 = raster.createGraphics();
+        try {
+            g2.translate(-originX, -originY);
+            if (clip != null) {
+                g2.setClip(clip);
+            }
+            shape.draw(g2);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+}
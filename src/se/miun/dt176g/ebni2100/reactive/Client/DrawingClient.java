@@ -1,4 +1,6 @@
 package se.miun.dt176g.ebni2100.reactive.Client;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
 import javax.swing.SwingUtilities;
 
 
@@ -6,15 +8,17 @@ import javax.swing.SwingUtilities;
  * Client program for a drawing application.
  *
  * This program initializes and starts the graphical user interface (GUI) on the
- * event dispatching thread.
+ * event dispatching thread. An optional first argument selects the wire format ("java" or "binary"),
+ * which must match the server.
  *
  * @author Ebba Nimér
  */
 public class DrawingClient {
 
     public static void main(String[] args) {
+        WireFormat wireFormat = WireFormat.parse(args.length > 0 ? args[0] : null);
 
         // Start GUI on the event dispatching thread
-        SwingUtilities.invokeLater(() -> new MainFrame().setVisible(true));
+        SwingUtilities.invokeLater(() -> new MainFrame(wireFormat).setVisible(true));
     }
 }
@@ -5,17 +5,38 @@ import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.subjects.PublishSubject;
 import se.miun.dt176g.ebni2100.reactive.Client.Shapes.*;
 import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeOutput;
 
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.swing.*;
 
 /**
  * JPanel representing the drawing panel. It holds the canvas for drawing shapes and displaying them.
+ *
+ * A freehand stroke is sent while it is drawn: a begin-part when the mouse is pressed, the new points in
+ * batches while it is dragged, and an end-part when it is released. Strokes other users are drawing are
+ * painted on top of the drawing as their parts arrive, and committed to it when they end. With the system
+ * property {@value #ECHO_PROPERTY} set to true, the round-trip of the parts of our own strokes is printed
+ * after each stroke.
+ *
+ * Drag events are coalesced to one update per display frame: a rectangle, oval or line only takes the
+ * position of the latest drag, while a freehand keeps every point. The area to repaint is collected over
+ * the frame and repainted once.
+ *
+ * The canvas has no edges, and is panned by dragging with the right mouse button. The panel sends its
+ * {@link Viewport} whenever it moves onto other tiles, and is then sent only the shapes on those tiles.
+ *
  * @author 	Ebba Nimér
  */
 
@@ -26,6 +47,7 @@ public class DrawingPanel extends JPanel {
     private Point startPoint;
 
     private Shape currentShape; // Shape being drawn.
+    private boolean drawingInProgress; // If currentShape is being drawn and not yet committed to the drawing.
     private Color currentColor; // Selected color.
     private int currentThickness; // Selected thickness.
     private ShapeType lastSelectedShape = ShapeType.RECTANGLE; // Default shape.
@@ -33,23 +55,92 @@ public class DrawingPanel extends JPanel {
     // Declare a Subject to multicast shapes
     private final PublishSubject<Shape> shapeSubject = PublishSubject.create();
 
-    private ObjectOutputStream objectOutputStream; // Used to send shapes to the server
+    private ShapeOutput shapeOutput; // Used to send shapes to the server
+
+    // Interval in milliseconds drag events are coalesced over, about one display frame.
+    private static final int FRAME_MILLIS = 16;
+
+    private final Timer frameTimer = new Timer(FRAME_MILLIS, e -> applyPendingDrag());
+    private MouseEvent pendingDrag; // Latest drag not yet applied to the shape being drawn.
+    private java.awt.Rectangle pendingDirty; // Area to repaint at the end of the frame.
+
+    // Points of a stroke are sent when this many are waiting, or when the flush-timer fires.
+    private static final int STROKE_BATCH_POINTS = 16;
+    private static final int STROKE_BATCH_MILLIS = 20;
+
+    private long strokeId; // Id of the stroke being drawn.
+    private int sentPoints; // Number of points of the stroke already sent.
+    private final Timer strokeFlushTimer = new Timer(STROKE_BATCH_MILLIS, e -> flushStroke());
+
+    // Strokes other users are drawing, by stroke-id.
+    private final Map<Long, Freehand> remoteStrokes = new LinkedHashMap<>();
+
+    // System property that turns on printing the round-trip of our own strokes.
+    public static final String ECHO_PROPERTY = "reactive.echoes";
+    private static final boolean REPORT_ECHOES = Boolean.getBoolean(ECHO_PROPERTY);
+
+    // Send-times of the parts of our own strokes not yet echoed by the server, to recognize their echoes and
+    // measure the round-trip. The send-times are only noted if the round-trip is reported.
+    private final Map<Long, ArrayDeque<Long>> ownStrokes = new HashMap<>();
+    private long echoCount;
+    private long echoTotalNanos;
+    private long echoMaxNanos;
+
+    private Point panStart; // Where the pan began on the screen, or null if not panning.
+    private int panOriginX; // Origin of the drawing when the pan began.
+    private int panOriginY;
+    private java.awt.Rectangle sentTiles; // Tiles of the viewport last sent to the server.
 
     /**
      * Initialize the drawing panel with properties and mouse events.
      * @param menu The menu for controlling drawing options.
      */
     public DrawingPanel(Menu menu) {
+        frameTimer.setRepeats(false);
         initializeProperties(menu);
         initializeMouseEvents();
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                sendViewportIfMoved();
+            }
+        });
+    }
+
+    /**
+     * Set the shape output to communicate with the server.
+     * @param shapeOutput The shape output.
+     */
+    public void setShapeOutput(ShapeOutput shapeOutput) {
+        this.shapeOutput = shapeOutput;
+    }
+
+    /**
+     * Gets the part of the canvas shown in the panel.
+     * @return viewport.
+     */
+    public Viewport getViewport() {
+        return new Viewport(drawing.getOriginX(), drawing.getOriginY(), Math.max(1, getWidth()),
+                Math.max(1, getHeight()));
+    }
+
+    /**
+     * Note the viewport sent to the server, so it is only sent again when it moves onto other tiles.
+     * @param viewport viewport sent.
+     */
+    public void setSentViewport(Viewport viewport) {
+        sentTiles = viewport.getTileArea();
     }
 
     /**
-     * Set the object output stream to communicate with the server.
-     * @param outputStream The output stream.
+     * Emit the viewport to shapeSubject if it moved onto other tiles than those last sent.
      */
-    public void setObjectOutputStream(ObjectOutputStream outputStream) {
-        this.objectOutputStream = outputStream;
+    private void sendViewportIfMoved() {
+        Viewport viewport = getViewport();
+        if (shapeOutput != null && !viewport.getTileArea().equals(sentTiles)) {
+            setSentViewport(viewport);
+            shapeSubject.onNext(viewport);
+        }
     }
 
     /**
@@ -176,11 +267,10 @@ public class DrawingPanel extends JPanel {
      * @param shape shape to send.
      */
     private void handleShapeEvent(Shape shape){
-        if (objectOutputStream != null && shape != null) {
+        if (shapeOutput != null && shape != null) {
             try {
-                // Send the shape through output-stream.
-                objectOutputStream.writeObject(shape);
-                objectOutputStream.reset();  // Reset the stream after sending shape.
+                // Send the shape through the shape output.
+                shapeOutput.write(shape);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -188,13 +278,128 @@ public class DrawingPanel extends JPanel {
     }
 
     /**
-     * Add shape to Drawing.
+     * Apply a part of a stroke received from the server. Parts of our own strokes are skipped, as the stroke
+     * is already drawn, and only used to measure the round-trip time. Must be called on the event dispatching
+     * thread.
+     * @param delta part of a stroke.
+     */
+    public void applyStrokeDelta(StrokeDelta delta) {
+        long id = delta.getStrokeId();
+        ArrayDeque<Long> sendTimes = ownStrokes.get(id);
+        if (sendTimes != null) {
+            recordEcho(sendTimes);
+            if (delta.getPhase() == StrokeDelta.Phase.END) {
+                ownStrokes.remove(id);
+                reportEchoes();
+            }
+            return;
+        }
+
+        switch (delta.getPhase()) {
+            case BEGIN: {
+                Freehand freehand = delta.toFreehand();
+                remoteStrokes.put(id, freehand);
+                repaintShape(freehand);
+                break;
+            }
+            case APPEND: {
+                Freehand freehand = remoteStrokes.get(id);
+                if (freehand == null || delta.getPointCount() == 0) {
+                    return; // Began before we joined and was not in the join-sequence, or nothing new.
+                }
+
+                // Paint the new points and the segment joining them to the stroke.
+                java.awt.Rectangle dirty = delta.getBounds();
+                int last = freehand.getPointCount() - 1;
+                if (last >= 0) {
+                    dirty = dirty.union(segmentBounds(freehand.getPointX(last), freehand.getPointY(last),
+                            delta.getPointX(0), delta.getPointY(0), freehand.getThickness()));
+                }
+                delta.appendTo(freehand);
+                repaintArea(dirty);
+                break;
+            }
+            case END: {
+                // Commit to the drawing, which looks the same so no repaint is needed.
+                Freehand freehand = remoteStrokes.remove(id);
+                if (freehand != null) {
+                    drawing.addShape(freehand);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Record the round-trip time of the oldest part of our own stroke not yet echoed.
+     * @param sendTimes send-times of the stroke's parts.
+     */
+    private void recordEcho(ArrayDeque<Long> sendTimes) {
+        Long sentAt = sendTimes.poll();
+        if (sentAt != null) {
+            long nanos = System.nanoTime() - sentAt;
+            echoCount++;
+            echoTotalNanos += nanos;
+            echoMaxNanos = Math.max(echoMaxNanos, nanos);
+        }
+    }
+
+    /**
+     * Print the round-trip times of the parts of the last stroke if enabled, and reset them.
+     */
+    private void reportEchoes() {
+        if (REPORT_ECHOES && echoCount > 0) {
+            System.out.printf("Stroke round-trip: %d parts, avg %.2f ms, max %.2f ms%n", echoCount,
+                    echoTotalNanos / (echoCount * 1e6), echoMaxNanos / 1e6);
+        }
+        echoCount = 0;
+        echoTotalNanos = 0;
+        echoMaxNanos = 0;
+    }
+
+    /**
+     * Forget our own strokes that will not be echoed any more, once the room is joined again. Strokes sent on
+     * an earlier connection were echoed before the join-reply if the server accepted them, only the stroke
+     * still being drawn may be echoed after it. Must be called on the event dispatching thread.
+     */
+    public void dropUnechoedStrokes() {
+        boolean drawingStroke = drawingInProgress && currentShape instanceof Freehand;
+        ownStrokes.keySet().removeIf(id -> !drawingStroke || id != strokeId);
+    }
+
+    /**
+     * Add shape to Drawing. Must be called on the event dispatching thread.
      * @param shape shape to be added.
      */
     public void addShape(Shape shape){
         drawing.addShape(shape);
     }
 
+    /**
+     * Repaint the area covered by a shape, for example one received from the server.
+     * @param shape shape to be repainted.
+     */
+    public void repaintShape(Shape shape){
+        repaintArea(shape.getBounds());
+    }
+
+    /**
+     * Repaint an area of the canvas, wherever it is in the panel.
+     * @param area area of the canvas.
+     */
+    private void repaintArea(java.awt.Rectangle area) {
+        repaint(area.x - drawing.getOriginX(), area.y - drawing.getOriginY(), area.width, area.height);
+    }
+
+    /**
+     * Empty the drawing and the strokes of other users, before the shapes on the tiles of a new viewport
+     * are received. Must be called on the event dispatching thread.
+     */
+    public void clearForViewport() {
+        remoteStrokes.clear();
+        clearShapes();
+    }
+
     /**
      * Clear the canvas by emptying the shape-list.
      */
@@ -227,18 +432,37 @@ public class DrawingPanel extends JPanel {
      * @param event mouse-pressed event.
      */
     private void handleMousePress(MouseEvent event) {
+        if (panStart != null || drawingInProgress) {
+            return;
+        }
+        if (SwingUtilities.isRightMouseButton(event)) {
+            panStart = new Point(event.getX(), event.getY());
+            panOriginX = drawing.getOriginX();
+            panOriginY = drawing.getOriginY();
+            return;
+        }
 
-        // Get coordinates where the mouse was pressed.
-        int startX = event.getX();
-        int startY = event.getY();
+        // Get coordinates on the canvas where the mouse was pressed.
+        int startX = event.getX() + drawing.getOriginX();
+        int startY = event.getY() + drawing.getOriginY();
 
         // Update the start-point using corresponding method, and store the shape to variable.
         updateStartPoint(new Point(startX, startY));
         currentShape = createShape(lastSelectedShape);
 
-        // Set the start-position and add the shape to the drawing.
+        // Set the start-position. The shape is painted on top of the drawing until it is released.
         currentShape.setPosition(startX, startY);
-        drawing.addShape(currentShape);
+        drawingInProgress = true;
+
+        // Begin sending a freehand stroke while it is drawn.
+        if (currentShape instanceof Freehand) {
+            strokeId = ThreadLocalRandom.current().nextLong();
+            sentPoints = 0;
+            ownStrokes.put(strokeId, new ArrayDeque<>());
+            sendStrokeDelta(new StrokeDelta(currentShape.getColor(), currentShape.getThickness(), strokeId,
+                    StrokeDelta.Phase.BEGIN, new int[0], new int[0]));
+            strokeFlushTimer.start();
+        }
 
     }
 
@@ -251,63 +475,214 @@ public class DrawingPanel extends JPanel {
     }
 
     /**
-     * When mouse is being dragged, update the current shape's properties.
+     * When mouse is being dragged, add the point to a freehand or keep the event for the next frame.
+     * The shape is updated and repainted once the frame has passed.
      * @param event mouse-drag.
      */
     private void handleMouseDrag(MouseEvent event) {
-        if (currentShape != null) {
-            if (currentShape instanceof Freehand) {
-                Freehand freehand = (Freehand) currentShape;
+        if (panStart != null) {
+            pan(event);
+            return;
+        }
+        if (currentShape == null || !drawingInProgress) {
+            return;
+        }
+        if (currentShape instanceof Freehand) {
+            Freehand freehand = (Freehand) currentShape;
+
+            // Add a new point to the line, only the new segment needs to be painted.
+            int x = event.getX() + drawing.getOriginX();
+            int y = event.getY() + drawing.getOriginY();
+            int last = freehand.getPointCount() - 1;
+            int previousX = last >= 0 ? freehand.getPointX(last) : x;
+            int previousY = last >= 0 ? freehand.getPointY(last) : y;
+            freehand.addPoint(x, y);
+            addDirty(segmentBounds(previousX, previousY, x, y, currentShape.getThickness()));
+            if (freehand.getPointCount() - sentPoints >= STROKE_BATCH_POINTS) {
+                flushStroke();
+            }
+        } else {
+            pendingDrag = event;
+        }
+
+        if (!frameTimer.isRunning()) {
+            frameTimer.start();
+        }
+    }
 
-                // Add a new point to the list.
-                freehand.addPoint(new Point(event.getX(), event.getY()));
-            } else if (currentShape instanceof StraightLine) {
+    /**
+     * Move the drawing along with a drag of the right mouse button, and send the viewport if it moved onto
+     * other tiles.
+     * @param event mouse-drag.
+     */
+    private void pan(MouseEvent event) {
+        drawing.setOrigin(panOriginX - (event.getX() - panStart.x()), panOriginY - (event.getY() - panStart.y()));
+        repaint();
+        sendViewportIfMoved();
+    }
+
+    /**
+     * Apply the latest drag to the shape being drawn, and repaint the area changed during the frame.
+     */
+    private void applyPendingDrag() {
+        if (pendingDrag != null && currentShape != null) {
+            int x = pendingDrag.getX() + drawing.getOriginX();
+            int y = pendingDrag.getY() + drawing.getOriginY();
+            pendingDrag = null;
+
+            // Area covered by the shape before the change.
+            java.awt.Rectangle dirty = currentShape.getBounds();
+
+            if (currentShape instanceof StraightLine) {
                 StraightLine straightLine = (StraightLine) currentShape;
 
                 // Set new end-points of line.
-                straightLine.setEndPoint(event.getX(), event.getY());
+                straightLine.setEndPoint(x, y);
             } else {
 
                 // If shape is oval or rectangle, set new position and size.
-                int newX = Math.min(event.getX(), startPoint.x());
-                int newY = Math.min(event.getY(), startPoint.y());
-                int newWidth = Math.abs(event.getX() - startPoint.x());
-                int newHeight = Math.abs(event.getY() - startPoint.y());
+                int newX = Math.min(x, startPoint.x());
+                int newY = Math.min(y, startPoint.y());
+                int newWidth = Math.abs(x - startPoint.x());
+                int newHeight = Math.abs(y - startPoint.y());
 
                 currentShape.setPosition(newX, newY);
                 currentShape.setSize(newWidth, newHeight);
             }
-            repaint();
+
+            // Repaint where the shape was and where it is now.
+            addDirty(dirty.union(currentShape.getBounds()));
+        }
+
+        if (pendingDirty != null) {
+            repaintArea(pendingDirty);
+            pendingDirty = null;
         }
     }
 
     /**
-     * When mouse is being released, emit the final shape to shapeSubject.
+     * Add an area to be repainted at the end of the frame.
+     * @param area area.
+     */
+    private void addDirty(java.awt.Rectangle area) {
+        pendingDirty = pendingDirty == null ? area : pendingDirty.union(area);
+    }
+
+    /**
+     * Get the area covered by a line segment, including its thickness.
+     * @param fromX x-coordinate of the start of the segment.
+     * @param fromY y-coordinate of the start of the segment.
+     * @param toX x-coordinate of the end of the segment.
+     * @param toY y-coordinate of the end of the segment.
+     * @param thickness thickness of the line.
+     * @return bounding rectangle.
+     */
+    private static java.awt.Rectangle segmentBounds(int fromX, int fromY, int toX, int toY, int thickness) {
+        int pad = thickness + 1;
+        return new java.awt.Rectangle(Math.min(fromX, toX) - pad, Math.min(fromY, toY) - pad,
+                Math.abs(fromX - toX) + 2 * pad + 1, Math.abs(fromY - toY) + 2 * pad + 1);
+    }
+
+    /**
+     * Send the points of the stroke being drawn that have not been sent yet.
+     */
+    private void flushStroke() {
+        if (!drawingInProgress || !(currentShape instanceof Freehand)) {
+            return;
+        }
+        Freehand freehand = (Freehand) currentShape;
+        int count = freehand.getPointCount() - sentPoints;
+        if (count == 0) {
+            return;
+        }
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = freehand.getPointX(sentPoints + i);
+            ys[i] = freehand.getPointY(sentPoints + i);
+        }
+        sentPoints += count;
+        sendStrokeDelta(new StrokeDelta(freehand.getColor(), freehand.getThickness(), strokeId,
+                StrokeDelta.Phase.APPEND, xs, ys));
+    }
+
+    /**
+     * Emit a part of our own stroke to shapeSubject, and note when it was sent.
+     * @param delta part of the stroke.
+     */
+    private void sendStrokeDelta(StrokeDelta delta) {
+        ArrayDeque<Long> sendTimes = ownStrokes.get(delta.getStrokeId());
+        if (sendTimes != null && REPORT_ECHOES) {
+            sendTimes.add(System.nanoTime());
+        }
+        shapeSubject.onNext(delta);
+    }
+
+    /**
+     * When mouse is being released, add the final shape to the drawing and emit it to shapeSubject.
+     * A freehand has already been sent in parts, so only the end of the stroke is emitted.
      * @param event mouse-release.
      */
     private void handleMouseRelease(MouseEvent event) {
-        shapeSubject.onNext(currentShape);
+        if (panStart != null) {
+            if (SwingUtilities.isRightMouseButton(event)) {
+                panStart = null;
+            }
+            return;
+        }
+        if (!drawingInProgress || SwingUtilities.isRightMouseButton(event)) {
+            return;
+        }
+
+        // Apply the drags of the unfinished frame first.
+        frameTimer.stop();
+        applyPendingDrag();
+
+        if (currentShape instanceof Freehand) {
+            flushStroke();
+            strokeFlushTimer.stop();
+            sendStrokeDelta(StrokeDelta.end(strokeId));
+        } else {
+            shapeSubject.onNext(currentShape);
+        }
+
+        // Commit the shape to the drawing, which renders it into its image.
+        drawingInProgress = false;
+        drawing.addShape(currentShape);
     }
 
 
     /**
-     * Draw the shapes using drawing-class.
+     * Draw the committed shapes using drawing-class, and the strokes and shape being drawn on top.
      * @param g graphics.
      */
     @Override
     protected void paintComponent(Graphics g) {
 
         super.paintComponent(g);
+        drawing.setSize(getWidth(), getHeight());
         drawing.draw(g);
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.translate(-drawing.getOriginX(), -drawing.getOriginY());
+            for (Freehand freehand : remoteStrokes.values()) {
+                freehand.draw(g2);
+            }
+            if (drawingInProgress) {
+                currentShape.draw(g2);
+            }
+        } finally {
+            g2.dispose();
+        }
 
     }
 
     /**
-     * Get the output-stream.
-     * @return output-stream.
+     * Get the shape output.
+     * @return shape output.
      */
-    public ObjectOutputStream getObjectOutputStream(){
-        return objectOutputStream;
+    public ShapeOutput getShapeOutput(){
+        return shapeOutput;
     }
 
 }
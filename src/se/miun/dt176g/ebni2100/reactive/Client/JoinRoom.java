@@ -0,0 +1,94 @@
+package se.miun.dt176g.ebni2100.reactive.Client;
+
+import java.awt.*;
+import java.util.regex.Pattern;
+
+/**
+ * Class representing the command that picks the room to draw in. Extends shape.
+ *
+ * Sent by the client as its first shape after connecting. The server then sends the canvas of the room and
+ * the shapes drawn in it. A client that starts drawing without it is put in the default room.
+ *
+ * A client that reconnects passes the epoch and sequence number of the last shape it applied, and is only
+ * sent the shapes it missed, if the server still has them. The server replies with the same command once
+ * the client is up to date, holding the epoch and sequence number the following shapes count from. The
+ * epoch changes when the server loses the history of the room, such as at a restart.
+ */
+public class JoinRoom extends Shape {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Name of the room clients draw in when they do not pick one. */
+    public static final String DEFAULT_ROOM = "default";
+
+    // Room names are written as ASCII to the shape log and the links between server nodes.
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final String room;
+    private final long epoch;
+    private final long sequence;
+
+    /**
+     * Initializes the command to join a room from scratch.
+     * @param room Name of the room, see {@link #isValidName}.
+     */
+    public JoinRoom(String room) {
+        this(room, 0, 0);
+    }
+
+    /**
+     * Initializes the command to resume a room, or the reply of the server.
+     * @param room Name of the room, see {@link #isValidName}.
+     * @param epoch Epoch of the room's history.
+     * @param sequence Sequence number of the last shape applied, or 0 to join from scratch.
+     */
+    public JoinRoom(String room, long epoch, long sequence) {
+        super(Color.WHITE, 0);
+        if (!isValidName(room)) {
+            throw new IllegalArgumentException("Invalid room name: " + room);
+        }
+        this.room = room;
+        this.epoch = epoch;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Checks if a room name may be used. Names are 1 to 64 letters, digits, '-' or '_'.
+     * @param room Name of the room.
+     * @return true if the name is valid.
+     */
+    public static boolean isValidName(String room) {
+        return room != null && NAME.matcher(room).matches();
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Gets the sequence number of the last shape applied.
+     * @return sequence number, or 0 for a join from scratch.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public void draw(Graphics g) {
+        // Not needed.
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return new Rectangle();  // Covers nothing.
+    }
+
+    @Override
+    public boolean intersects(Rectangle area) {
+        return false;
+    }
+}
@@ -4,18 +4,20 @@ package se.miun.dt176g.ebni2100.reactive.Client;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeInput;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeOutput;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
 
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.swing.*;
 
 /**
@@ -27,14 +29,35 @@ import javax.swing.*;
 public class MainFrame extends JFrame {
 
     private static final String HEADER = "Reactive Paint";
+    private static final int RECONNECT_ATTEMPTS = 10;
     private DrawingPanel drawingPanel;
     private Socket serverSocket;
-    private ObjectInputStream objectInputStream;
+    private ShapeInput shapeInput;
+    private final WireFormat wireFormat;
+    private String room = JoinRoom.DEFAULT_ROOM;
+    private volatile boolean exiting;
+
+    // Where the drawing is in the room's history, to resume it after a reconnect. Only used on the EDT.
+    private long epoch;
+    private long lastSequence;
+
+    // Tiles whose shapes the drawing holds up to the last sequence number, and tiles still being received.
+    private Rectangle heldTiles;
+    private Rectangle receivingTiles;
 
     /**
-     * Initialize the frame layout and server connection.
+     * Initialize the frame layout and server connection, using the wire format from the system property.
      */
     public MainFrame() {
+        this(WireFormat.parse(null));
+    }
+
+    /**
+     * Initialize the frame layout and server connection.
+     * @param wireFormat format used to send and receive shapes, must match the server.
+     */
+    public MainFrame(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
         initializeFrame();
         connectToServer();
     }
@@ -71,11 +94,21 @@ public class MainFrame extends JFrame {
     }
 
     /**
-     * If the socket is not initialized, establish a connection to the server.
+     * If the socket is not initialized, ask for the room to draw in and establish a connection to the server.
      * @param connectPanel The connect panel.
      */
     private void handleConnectButtonClick(JPanel connectPanel) {
         if (serverSocket == null || serverSocket.isClosed()) {
+            String picked = JOptionPane.showInputDialog(this, "Room to draw in:", room);
+            if (picked == null) {
+                return;  // Cancelled.
+            }
+            if (!JoinRoom.isValidName(picked.trim())) {
+                JOptionPane.showMessageDialog(this,
+                        "Room names are 1 to 64 letters, digits, '-' or '_'.");
+                return;
+            }
+            room = picked.trim();
             try {
                 establishConnection(connectPanel);
             } catch (IOException ex) {
@@ -87,7 +120,7 @@ public class MainFrame extends JFrame {
     }
 
     /**
-     * Establish the connection to the server.
+     * Establish the connection to the server. The room is picked when the shape output is initialized.
      * @param connectPanel The connect panel.
      * @throws IOException IO-exception.
      */
@@ -98,7 +131,7 @@ public class MainFrame extends JFrame {
                     JOptionPane.showMessageDialog(this, "Connected to the server!");
 
                     // Initialize streams and subscribe to incoming shapes.
-                    initializeObjectInputStream();
+                    initializeShapeInput();
 
                     // Invoke GUI components on the EDT.
                     SwingUtilities.invokeLater(() -> {
@@ -124,11 +157,11 @@ public class MainFrame extends JFrame {
     }
 
     /**
-     * Initialize the object input stream for the socket to receive shapes from the server.
+     * Initialize the shape input for the socket to receive shapes from the server.
      */
-    private void initializeObjectInputStream() {
+    private void initializeShapeInput() {
         try {
-            objectInputStream = new ObjectInputStream(serverSocket.getInputStream());
+            shapeInput = wireFormat.newInput(serverSocket.getInputStream());
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -157,18 +190,28 @@ public class MainFrame extends JFrame {
         drawingPanel = new DrawingPanel(menu);
         drawingPanel.setBounds(0, 0, getWidth(), getHeight());
 
-        initializeObjectOutputStream();  // initialize output-stream.
+        initializeShapeOutput();  // initialize output.
 
         this.getContentPane().add(drawingPanel, BorderLayout.CENTER);
         this.setJMenuBar(menu);
     }
 
     /**
-     * Initialize the object output stream to the drawing panel to send shapes to the server.
+     * Initialize the shape output of the drawing panel to send shapes to the server, and join the room
+     * before anything is drawn, sending the viewport first so only the shapes on its tiles are received.
+     * After a reconnect the room is resumed after the last shape applied, if the drawing holds the shapes of
+     * the tiles the viewport is on, otherwise they are received again.
      * @throws IOException IO-exception.
      */
-    private void initializeObjectOutputStream() throws IOException {
-        drawingPanel.setObjectOutputStream(new ObjectOutputStream(serverSocket.getOutputStream()));
+    private void initializeShapeOutput() throws IOException {
+        ShapeOutput shapeOutput = wireFormat.newOutput(serverSocket.getOutputStream());
+        Viewport viewport = drawingPanel.getViewport();
+        shapeOutput.write(viewport);
+        drawingPanel.setSentViewport(viewport);
+        long after = viewport.getTileArea().equals(heldTiles) ? lastSequence : 0;
+        shapeOutput.write(new JoinRoom(room, epoch, after));
+        drawingPanel.setShapeOutput(shapeOutput);
+        this.setTitle(HEADER + " - " + room);
     }
 
     /**
@@ -188,7 +231,7 @@ public class MainFrame extends JFrame {
                                 }
 
                                 // Read shape from input-stream.
-                                Shape receivedShape = (Shape) objectInputStream.readObject();
+                                Shape receivedShape = shapeInput.read();
                                 emitter.onNext(receivedShape);  // emit the received shape.
                             } catch (SocketException | EOFException e) {
                                 // Handle SocketException when the socket is closed
@@ -217,15 +260,44 @@ public class MainFrame extends JFrame {
 
     /**
      * Handle the received shape by adding it to the drawing panel (or clear if it was a clear command).
-     * @param shape Shape from the server.
+     * Parts of strokes grow the strokes other users are drawing. The reply to a viewport empties the drawing,
+     * as the shapes on its tiles follow, up to the join-reply. The sequence number of the shape, or of the
+     * join-reply, is kept once it is applied.
+     * The drawing is only changed on the event dispatching thread.
+     * @param received Shape from the server.
      */
-    private void handleReceivedShape(Shape shape) {
-        if (shape instanceof Clear){
-            drawingPanel.clearShapes();
-        } else {
-            drawingPanel.addShape(shape);
-            drawingPanel.repaint();
-        }
+    private void handleReceivedShape(Shape received) {
+        SwingUtilities.invokeLater(() -> {
+            Shape shape = received;
+            long sequence = 0;
+            if (shape instanceof Sequenced) {
+                sequence = ((Sequenced) shape).getSequence();
+                shape = ((Sequenced) shape).getShape();
+            }
+            if (shape instanceof JoinRoom) {
+                epoch = ((JoinRoom) shape).getEpoch();
+                lastSequence = ((JoinRoom) shape).getSequence();
+                if (receivingTiles != null) {
+                    heldTiles = receivingTiles;
+                    receivingTiles = null;
+                }
+                drawingPanel.dropUnechoedStrokes();
+            } else if (shape instanceof Viewport) {
+                heldTiles = null;
+                receivingTiles = ((Viewport) shape).getTileArea();
+                drawingPanel.clearForViewport();
+            } else if (shape instanceof StrokeDelta) {
+                drawingPanel.applyStrokeDelta((StrokeDelta) shape);
+            } else if (shape instanceof Clear){
+                drawingPanel.clearShapes();
+            } else {
+                drawingPanel.addShape(shape);
+                drawingPanel.repaintShape(shape);
+            }
+            if (sequence > 0) {
+                lastSequence = sequence;
+            }
+        });
     }
 
     /**
@@ -245,12 +317,12 @@ public class MainFrame extends JFrame {
     }
 
     /**
-     * Clean up any resources related to the server connection.
+     * Clean up any resources related to the server connection, and reconnect unless the client is exiting.
      */
     private void handleServerDisconnect() {
         try {
-            if (objectInputStream != null) {
-                objectInputStream.close();
+            if (shapeInput != null) {
+                shapeInput.close();
             }
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
@@ -258,18 +330,60 @@ public class MainFrame extends JFrame {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if (!exiting) {
+            reconnect();
+        }
+    }
+
+    /**
+     * Reconnect to the server and resume the room, waiting a second longer after each failed attempt.
+     */
+    private void reconnect() {
+        SwingUtilities.invokeLater(() -> this.setTitle(HEADER + " - " + room + " (reconnecting)"));
+        Disposable dp = Observable.fromCallable(() -> {
+                    serverSocket = new Socket("localhost", 12345);
+                    initializeShapeInput();
+
+                    // Join after the shapes already received are applied, so the last sequence number is known.
+                    SwingUtilities.invokeLater(() -> {
+                        try {
+                            initializeShapeOutput();
+                            subscribeToServerShapes();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    });
+                    return true;
+                })
+                .subscribeOn(Schedulers.io())
+                .retryWhen(errors -> errors
+                        .zipWith(Observable.range(1, RECONNECT_ATTEMPTS + 1), (error, attempt) -> {
+                            if (attempt > RECONNECT_ATTEMPTS) {
+                                throw error;
+                            }
+                            return attempt;
+                        })
+                        .flatMap(attempt -> Observable.timer(attempt, TimeUnit.SECONDS)))
+                .subscribe(
+                        result -> {},
+                        throwable -> SwingUtilities.invokeLater(() -> {
+                            this.setTitle(HEADER + " - " + room + " (disconnected)");
+                            JOptionPane.showMessageDialog(this, "Lost the connection to the server.");
+                        })
+                );
     }
 
     /**
      * If the client exits the application, close input and output streams and socket connection.
      */
     private void handleExit() {
+        exiting = true;
         try {
-            if (drawingPanel.getObjectOutputStream() != null) {
-                drawingPanel.getObjectOutputStream().close();
+            if (drawingPanel.getShapeOutput() != null) {
+                drawingPanel.getShapeOutput().close();
             }
-            if (objectInputStream != null) {
-                objectInputStream.close();
+            if (shapeInput != null) {
+                shapeInput.close();
             }
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
@@ -0,0 +1,52 @@
+package se.miun.dt176g.ebni2100.reactive.Client;
+
+import java.awt.*;
+
+/**
+ * Class representing a shape accepted by the server, stamped with its sequence number in the room. Extends
+ * shape.
+ *
+ * The server sends every new shape of a room like this, so a client knows the last shape it applied and
+ * can resume from it when it reconnects, see {@link JoinRoom}.
+ */
+public class Sequenced extends Shape {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long sequence;
+    private final Shape shape;
+
+    /**
+     * Initializes the stamped shape.
+     * @param sequence Sequence number of the shape in its room.
+     * @param shape The shape.
+     */
+    public Sequenced(long sequence, Shape shape) {
+        super(shape.getColor(), shape.getThickness());
+        this.sequence = sequence;
+        this.shape = shape;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    @Override
+    public void draw(Graphics g) {
+        shape.draw(g);
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return shape.getBounds();
+    }
+
+    @Override
+    public boolean intersects(Rectangle area) {
+        return shape.intersects(area);
+    }
+}
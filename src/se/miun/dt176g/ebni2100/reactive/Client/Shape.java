@@ -53,7 +53,7 @@ public abstract class Shape implements Drawable, Serializable {
      * Gets the X-coordinate of the shape's starting point.
      * @return X-coordinate.
      */
-    protected int getX(){
+    public int getX(){
         return startX;
     }
 
@@ -61,7 +61,7 @@ public abstract class Shape implements Drawable, Serializable {
      * Gets the Y-coordinate of the shape's starting point.
      * @return Y-coordinate.
      */
-    protected int getY(){
+    public int getY(){
         return startY;
     }
 
@@ -69,7 +69,7 @@ public abstract class Shape implements Drawable, Serializable {
      * Gets the width of the shape.
      * @return Width of the shape.
      */
-    protected int getWidth(){
+    public int getWidth(){
         return width;
     }
 
@@ -77,15 +77,77 @@ public abstract class Shape implements Drawable, Serializable {
      * Gets the height of the shape.
      * @return Height of the shape.
      */
-    protected int getHeight(){
+    public int getHeight(){
         return height;
     }
 
+    /**
+     * Gets the smallest x-coordinate covered by the shape, not counting the outline.
+     * @return X-coordinate.
+     */
+    protected int getMinX(){
+        return startX;
+    }
+
+    /**
+     * Gets the smallest y-coordinate covered by the shape, not counting the outline.
+     * @return Y-coordinate.
+     */
+    protected int getMinY(){
+        return startY;
+    }
+
+    /**
+     * Gets the largest x-coordinate covered by the shape, not counting the outline.
+     * @return X-coordinate.
+     */
+    protected int getMaxX(){
+        return startX + width;
+    }
+
+    /**
+     * Gets the largest y-coordinate covered by the shape, not counting the outline.
+     * @return Y-coordinate.
+     */
+    protected int getMaxY(){
+        return startY + height;
+    }
+
+    /**
+     * Gets the area covered by the shape, including its outline.
+     * @return Bounding rectangle.
+     */
+    public Rectangle getBounds(){
+        int pad = getPadding();
+        return new Rectangle(getMinX() - pad, getMinY() - pad,
+                getMaxX() - getMinX() + 2 * pad + 1, getMaxY() - getMinY() + 2 * pad + 1);
+    }
+
+    /**
+     * Checks if the shape, including its outline, may cover any part of the area. Does not allocate,
+     * so it can be used to cull shapes while painting.
+     * @param area Area to check.
+     * @return true if the bounds of the shape intersect the area.
+     */
+    public boolean intersects(Rectangle area){
+        int pad = getPadding();
+        return getMaxX() + pad >= area.x && getMinX() - pad < area.x + area.width
+                && getMaxY() + pad >= area.y && getMinY() - pad < area.y + area.height;
+    }
+
+    /**
+     * Gets the distance the outline may reach outside the coordinates of the shape.
+     * @return Padding in pixels.
+     */
+    private int getPadding(){
+        return thickness + 1;  // Generous, miter joins reach further than half the thickness.
+    }
+
     /**
      * Gets the thickness of the shape's outline.
      * @return Thickness of the outline.
      */
-    protected int getThickness(){
+    public int getThickness(){
         return thickness;
     }
 
@@ -93,7 +155,7 @@ public abstract class Shape implements Drawable, Serializable {
      * Gets the color of the shape.
      * @return Color of the shape.
      */
-    protected Color getColor(){
+    public Color getColor(){
         return color;
     }
 
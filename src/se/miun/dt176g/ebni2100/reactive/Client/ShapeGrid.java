@@ -0,0 +1,123 @@
+package se.miun.dt176g.ebni2100.reactive.Client;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial index of shapes over a uniform grid of square cells.
+ *
+ * Each shape is registered in every cell its bounds touch, so finding the shapes in an area only looks at
+ * the cells covering that area. Queries return shapes in the order they were added, which is the order
+ * they must be drawn in.
+ */
+public class ShapeGrid {
+
+    private final int cellSize;
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private int size;
+    private int queryStamp;
+
+    /**
+     * Create an empty index.
+     * @param cellSize width and height of a cell in pixels.
+     */
+    public ShapeGrid(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Adds a shape to the index, using its current bounds.
+     * @param shape shape to be added.
+     */
+    public void add(Shape shape) {
+        Entry entry = new Entry(shape, size++);
+        Rectangle bounds = shape.getBounds();
+        if (bounds.isEmpty()) {
+            return;  // Covers nothing, only counted.
+        }
+        forEachCell(bounds, key -> cells.computeIfAbsent(key, k -> new ArrayList<>()).add(entry));
+    }
+
+    /**
+     * Removes all shapes.
+     */
+    public void clear() {
+        cells.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the shapes whose bounds intersect the area.
+     * @param area area to search.
+     * @return shapes in the order they were added.
+     */
+    public List<Shape> query(Rectangle area) {
+        int stamp = ++queryStamp;
+        List<Entry> found = new ArrayList<>();
+        forEachCell(area, key -> {
+            List<Entry> cell = cells.get(key);
+            if (cell != null) {
+                for (Entry entry : cell) {
+                    if (entry.stamp != stamp && entry.shape.intersects(area)) {
+                        entry.stamp = stamp;
+                        found.add(entry);
+                    }
+                }
+            }
+        });
+        found.sort((a, b) -> Integer.compare(a.order, b.order));
+
+        List<Shape> shapes = new ArrayList<>(found.size());
+        for (Entry entry : found) {
+            shapes.add(entry.shape);
+        }
+        return shapes;
+    }
+
+    /**
+     * Gets the number of shapes added since the index was created or cleared.
+     * @return number of shapes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Run an action for the key of every cell the area touches.
+     * @param area area.
+     * @param action action receiving the cell keys.
+     */
+    private void forEachCell(Rectangle area, CellAction action) {
+        int minCellX = Math.floorDiv(area.x, cellSize);
+        int minCellY = Math.floorDiv(area.y, cellSize);
+        int maxCellX = Math.floorDiv(area.x + area.width - 1, cellSize);
+        int maxCellY = Math.floorDiv(area.y + area.height - 1, cellSize);
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                action.accept(((long) cellX << 32) | (cellY & 0xFFFFFFFFL));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface CellAction {
+        void accept(long key);
+    }
+
+    /**
+     * A shape in the index, with its position in drawing order.
+     */
+    private static class Entry {
+        private final Shape shape;
+        private final int order;
+        private int stamp; // Last query that found the entry, to report it only once.
+
+        Entry(Shape shape, int order) {
+            this.shape = shape;
+            this.order = order;
+        }
+    }
+}
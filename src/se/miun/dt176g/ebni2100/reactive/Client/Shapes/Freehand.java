@@ -2,55 +2,198 @@ package se.miun.dt176g.ebni2100.reactive.Client.Shapes;
 
 import se.miun.dt176g.ebni2100.reactive.Client.Shape;
 import se.miun.dt176g.ebni2100.reactive.Client.Point;
+import se.miun.dt176g.ebni2100.reactive.Protocol.BinaryShapeCodec;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.awt.*;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 
 /**
  * Class represents freehand. Extends Shape.
+ *
+ * The points are stored in two growable int-arrays, so adding and drawing points does not allocate any
+ * objects per point. Only the used part of the arrays is serialized.
  */
 public class Freehand extends Shape {
 
-    // Points in the line to be displayed.
-    private final List<Point> points;
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Most points a serialized freehand can hold, since each point takes eight bytes of a frame.
+    private static final int MAX_SERIALIZED_POINTS = BinaryShapeCodec.MAX_FRAME_LENGTH / (2 * Integer.BYTES);
+
+    // Coordinates of the points in the line to be displayed.
+    private transient int[] xs;
+    private transient int[] ys;
+    private int count;
+
+    // Extents of the points, updated as points are added.
+    private int minX = Integer.MAX_VALUE;
+    private int minY = Integer.MAX_VALUE;
+    private int maxX = Integer.MIN_VALUE;
+    private int maxY = Integer.MIN_VALUE;
+
+    // Stroke used to draw the line, created on first use.
+    private transient BasicStroke stroke;
 
     /**
      * Initializes a freehand shape with the given color and thickness.
-     * Initializes the list of points.
+     * Initializes the arrays of points.
      *
      * @param color Color of the shape.
      * @param thickness Thickness of the shape's outline.
      */
     public Freehand(Color color, int thickness) {
         super(color, thickness);
-        this.points = new ArrayList<>();
+        this.xs = new int[INITIAL_CAPACITY];
+        this.ys = new int[INITIAL_CAPACITY];
     }
 
     /**
-     * Adds a point to the list of points.
+     * Adds a point to the line.
      *
      * @param point Point to be added.
      */
     public void addPoint(Point point) {
-        points.add(point);
+        addPoint(point.x(), point.y());
+    }
+
+    /**
+     * Adds a point to the line.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     */
+    public void addPoint(int x, int y) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+    }
+
+    /**
+     * Gets the number of points in the line.
+     *
+     * @return Number of points.
+     */
+    public int getPointCount() {
+        return count;
+    }
+
+    /**
+     * Gets the point at the given index.
+     *
+     * @param index Index of the point.
+     * @return Point at index.
+     */
+    public Point getPoint(int index) {
+        return new Point(getPointX(index), getPointY(index));
+    }
+
+    /**
+     * Gets the x-coordinate of the point at the given index.
+     *
+     * @param index Index of the point.
+     * @return x-coordinate.
+     */
+    public int getPointX(int index) {
+        checkIndex(index);
+        return xs[index];
+    }
+
+    /**
+     * Gets the y-coordinate of the point at the given index.
+     *
+     * @param index Index of the point.
+     * @return y-coordinate.
+     */
+    public int getPointY(int index) {
+        checkIndex(index);
+        return ys[index];
+    }
+
+    @Override
+    protected int getMinX() {
+        return count == 0 ? getX() : minX;
+    }
+
+    @Override
+    protected int getMinY() {
+        return count == 0 ? getY() : minY;
+    }
+
+    @Override
+    protected int getMaxX() {
+        return count == 0 ? getX() : maxX;
+    }
+
+    @Override
+    protected int getMaxY() {
+        return count == 0 ? getY() : maxY;
     }
 
     @Override
     public void draw(Graphics g) {
         Graphics2D g2 = (Graphics2D) g;
         g2.setColor(getColor());
-        g2.setStroke(new BasicStroke(getThickness()));
+        if (stroke == null) {
+            stroke = new BasicStroke(getThickness());
+        }
+        g2.setStroke(stroke);
+
+        // Go through all points and draw a connecting line.
+        for (int i = 1; i < count; i++) {
+            g2.drawLine(xs[i - 1], ys[i - 1], xs[i], ys[i]);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+    }
 
-        // Go through all points in list and draw a connecting line.
-        if (points.size() > 1) {
-            Point prevPoint = points.get(0);
+    /**
+     * Writes the used part of the point arrays after the other fields.
+     * @param out stream to write to.
+     * @throws IOException IO-exception.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (int i = 0; i < count; i++) {
+            out.writeInt(xs[i]);
+            out.writeInt(ys[i]);
+        }
+    }
 
-            for (int i = 1; i < points.size(); i++) {
-                Point currentPoint = points.get(i);
-                g2.drawLine(prevPoint.x(), prevPoint.y(), currentPoint.x(), currentPoint.y());
-                prevPoint = currentPoint;
-            }
+    /**
+     * Reads the points written by writeObject. The point count is checked before the arrays are allocated,
+     * so a corrupt or hostile count cannot make the reader allocate more than a frame could hold.
+     * @param in stream to read from.
+     * @throws IOException IO-exception, or InvalidObjectException if the point count is out of range.
+     * @throws ClassNotFoundException if a class of a field is unknown.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (count < 0 || count > MAX_SERIALIZED_POINTS) {
+            throw new InvalidObjectException("Bad point count: " + count);
+        }
+        xs = new int[Math.max(count, INITIAL_CAPACITY)];
+        ys = new int[xs.length];
+        for (int i = 0; i < count; i++) {
+            xs[i] = in.readInt();
+            ys[i] = in.readInt();
         }
     }
 }
@@ -31,6 +31,42 @@ public class StraightLine extends Shape {
         this.endY = y;
     }
 
+    /**
+     * Gets the x-coordinate of the end-point.
+     * @return x-coordinate.
+     */
+    public int getEndX(){
+        return endX;
+    }
+
+    /**
+     * Gets the y-coordinate of the end-point.
+     * @return y-coordinate.
+     */
+    public int getEndY(){
+        return endY;
+    }
+
+    @Override
+    protected int getMinX() {
+        return Math.min(getX(), endX);
+    }
+
+    @Override
+    protected int getMinY() {
+        return Math.min(getY(), endY);
+    }
+
+    @Override
+    protected int getMaxX() {
+        return Math.max(getX(), endX);
+    }
+
+    @Override
+    protected int getMaxY() {
+        return Math.max(getY(), endY);
+    }
+
     @Override
     public void draw(Graphics g) {
         Graphics2D g2 = (Graphics2D) g;
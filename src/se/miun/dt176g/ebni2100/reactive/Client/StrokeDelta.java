@@ -0,0 +1,159 @@
+package se.miun.dt176g.ebni2100.reactive.Client;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Class representing a part of a freehand stroke that is sent while it is being drawn. Extends shape.
+ *
+ * A stroke is sent as one BEGIN, any number of APPEND and one END, all with the same stroke-id. BEGIN and
+ * APPEND carry the points added since the previous part. Receivers grow the stroke as the parts arrive,
+ * and commit it as a finished freehand at END.
+ */
+public class StrokeDelta extends Shape {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Which part of the stroke this is.
+     */
+    public enum Phase {
+        BEGIN, APPEND, END
+    }
+
+    private final long strokeId;
+    private final Phase phase;
+    private final int[] xs;
+    private final int[] ys;
+
+    /**
+     * Initializes a part of a stroke.
+     * @param color Color of the stroke.
+     * @param thickness Thickness of the stroke.
+     * @param strokeId Id of the stroke, unique for all clients.
+     * @param phase Which part of the stroke this is.
+     * @param xs x-coordinates of the points added in this part.
+     * @param ys y-coordinates of the points added in this part, same length as xs.
+     */
+    public StrokeDelta(Color color, int thickness, long strokeId, Phase phase, int[] xs, int[] ys) {
+        super(color, thickness);
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length");
+        }
+        this.strokeId = strokeId;
+        this.phase = phase;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * Creates a BEGIN part holding all points a freehand has so far, for a receiver that joins while
+     * the stroke is being drawn.
+     * @param strokeId Id of the stroke.
+     * @param freehand The stroke drawn so far.
+     * @return BEGIN part.
+     */
+    public static StrokeDelta begin(long strokeId, Freehand freehand) {
+        int count = freehand.getPointCount();
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = freehand.getPointX(i);
+            ys[i] = freehand.getPointY(i);
+        }
+        return new StrokeDelta(freehand.getColor(), freehand.getThickness(), strokeId, Phase.BEGIN, xs, ys);
+    }
+
+    /**
+     * Creates an END part.
+     * @param strokeId Id of the stroke.
+     * @return END part.
+     */
+    public static StrokeDelta end(long strokeId) {
+        return new StrokeDelta(Color.WHITE, 0, strokeId, Phase.END, new int[0], new int[0]);
+    }
+
+    /**
+     * Creates a freehand with the color, thickness and points of a BEGIN part.
+     * @return new freehand.
+     */
+    public Freehand toFreehand() {
+        Freehand freehand = new Freehand(getColor(), getThickness());
+        if (xs.length > 0) {
+            freehand.setPosition(xs[0], ys[0]);
+        }
+        appendTo(freehand);
+        return freehand;
+    }
+
+    /**
+     * Adds the points of this part to a freehand.
+     * @param freehand stroke to grow.
+     */
+    public void appendTo(Freehand freehand) {
+        for (int i = 0; i < xs.length; i++) {
+            freehand.addPoint(xs[i], ys[i]);
+        }
+    }
+
+    public long getStrokeId() {
+        return strokeId;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Gets the number of points in this part.
+     * @return number of points.
+     */
+    public int getPointCount() {
+        return xs.length;
+    }
+
+    public int getPointX(int index) {
+        return xs[index];
+    }
+
+    public int getPointY(int index) {
+        return ys[index];
+    }
+
+    @Override
+    public void draw(Graphics g) {
+        // Drawn through the freehand it is appended to.
+    }
+
+    @Override
+    protected int getMinX() {
+        return xs.length == 0 ? 0 : Arrays.stream(xs).min().getAsInt();
+    }
+
+    @Override
+    protected int getMinY() {
+        return ys.length == 0 ? 0 : Arrays.stream(ys).min().getAsInt();
+    }
+
+    @Override
+    protected int getMaxX() {
+        return xs.length == 0 ? 0 : Arrays.stream(xs).max().getAsInt();
+    }
+
+    @Override
+    protected int getMaxY() {
+        return ys.length == 0 ? 0 : Arrays.stream(ys).max().getAsInt();
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return xs.length == 0 ? new Rectangle() : super.getBounds();
+    }
+
+    @Override
+    public boolean intersects(Rectangle area) {
+        return xs.length > 0 && super.intersects(area);
+    }
+}
@@ -0,0 +1,73 @@
+package se.miun.dt176g.ebni2100.reactive.Client;
+
+import java.awt.*;
+
+/**
+ * Class representing the command that picks the part of the canvas a client is shown. Extends shape.
+ *
+ * The canvas has no edges, and is divided into square tiles of {@value #TILE_SIZE} pixels. A client that
+ * sends its viewport is subscribed to the tiles the viewport touches, and is only sent the shapes whose
+ * bounds touch those tiles. A client sends it before joining a room, and again whenever it pans or resizes
+ * onto other tiles. Clients that never send it are sent every shape.
+ *
+ * The server replies with the same command, followed by every shape and open stroke on the tiles and then the
+ * join-reply. The client then replaces its drawing with those, so it only ever holds the shapes near its
+ * viewport. A client that reconnects on the tiles it holds passes the sequence number of the last shape it
+ * applied in its join-command, and is only sent the shapes it missed on them, without the reply.
+ */
+public class Viewport extends Shape {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Width and height of a tile in pixels. */
+    public static final int TILE_SIZE = 256;
+
+    /** Upper bound of the width and height of a viewport in pixels. */
+    public static final int MAX_SIZE = 1 << 16;
+
+    /**
+     * Initializes the command.
+     * @param x X-coordinate of the top left corner of the viewport on the canvas.
+     * @param y Y-coordinate of the top left corner of the viewport on the canvas.
+     * @param width Width of the viewport, between 1 and {@value #MAX_SIZE}.
+     * @param height Height of the viewport, between 1 and {@value #MAX_SIZE}.
+     */
+    public Viewport(int x, int y, int width, int height) {
+        super(Color.WHITE, 0);
+        if (width < 1 || height < 1 || width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid viewport size: " + width + "x" + height);
+        }
+        if (x > Integer.MAX_VALUE - 2 * MAX_SIZE || y > Integer.MAX_VALUE - 2 * MAX_SIZE) {
+            throw new IllegalArgumentException("Viewport too far out: " + x + "," + y);
+        }
+        setPosition(x, y);
+        setSize(width, height);
+    }
+
+    /**
+     * Gets the area of the tiles the viewport touches.
+     * @return area on the canvas, aligned to the tiles.
+     */
+    public Rectangle getTileArea() {
+        int minX = Math.floorDiv(getX(), TILE_SIZE) * TILE_SIZE;
+        int minY = Math.floorDiv(getY(), TILE_SIZE) * TILE_SIZE;
+        int maxX = (Math.floorDiv(getX() + getWidth() - 1, TILE_SIZE) + 1) * TILE_SIZE;
+        int maxY = (Math.floorDiv(getY() + getHeight() - 1, TILE_SIZE) + 1) * TILE_SIZE;
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    @Override
+    public void draw(Graphics g) {
+        // Not needed.
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return new Rectangle();  // Covers nothing.
+    }
+
+    @Override
+    public boolean intersects(Rectangle area) {
+        return false;
+    }
+}
@@ -0,0 +1,165 @@
+package se.miun.dt176g.ebni2100.reactive.Load;
+
+import com.sun.tools.attach.VirtualMachine;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Samples the heap and the threads of a server running on the same machine. Attaches to the server process
+ * and starts its local management agent, so the server needs no extra options.
+ *
+ * Only platform threads are counted, virtual threads are not threads of the JVM's thread bean.
+ */
+public class HeapSampler implements Closeable {
+
+    private final JMXConnector connector;
+    private final MemoryMXBean memory;
+    private final List<GarbageCollectorMXBean> collectors;
+    private final ThreadMXBean threads;
+    private long lastUsed;
+    private long maxUsed;
+    private int lastThreads;
+    private int maxThreads;
+    private long startCollections;
+    private long startCollectionMillis;
+
+    private HeapSampler(JMXConnector connector, MemoryMXBean memory, List<GarbageCollectorMXBean> collectors,
+                        ThreadMXBean threads) {
+        this.connector = connector;
+        this.memory = memory;
+        this.collectors = collectors;
+        this.threads = threads;
+    }
+
+    /**
+     * Attach to a server process.
+     * @param pid process id of the server.
+     * @return sampler.
+     * @throws IOException if the process could not be attached to.
+     */
+    public static HeapSampler attach(long pid) throws IOException {
+        String address;
+        try {
+            VirtualMachine vm = VirtualMachine.attach(String.valueOf(pid));
+            try {
+                address = vm.startLocalManagementAgent();
+            } finally {
+                vm.detach();
+            }
+        } catch (Exception e) {
+            throw new IOException("Could not attach to process " + pid + ": " + e.getMessage(), e);
+        }
+        JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL(address));
+        MBeanServerConnection connection = connector.getMBeanServerConnection();
+        MemoryMXBean memory = ManagementFactory.newPlatformMXBeanProxy(connection,
+                ManagementFactory.MEMORY_MXBEAN_NAME, MemoryMXBean.class);
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getPlatformMXBeans(connection,
+                GarbageCollectorMXBean.class);
+        ThreadMXBean threads = ManagementFactory.newPlatformMXBeanProxy(connection,
+                ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class);
+        return new HeapSampler(connector, memory, collectors, threads);
+    }
+
+    /**
+     * Start counting collections from now on, and forget the heap and threads sampled so far.
+     * @throws IOException if the server could not be reached.
+     */
+    public synchronized void reset() throws IOException {
+        maxUsed = 0;
+        maxThreads = 0;
+        startCollections = collections();
+        startCollectionMillis = collectionMillis();
+        sample();
+    }
+
+    /**
+     * Sample the heap in use and the live threads.
+     * @return bytes in use.
+     * @throws IOException if the server could not be reached.
+     */
+    public synchronized long sample() throws IOException {
+        try {
+            lastUsed = memory.getHeapMemoryUsage().getUsed();
+            lastThreads = threads.getThreadCount();
+        } catch (RuntimeException e) {
+            // Proxies wrap the failures of the connection.
+            throw new IOException("Could not sample the heap: " + e.getMessage(), e);
+        }
+        maxUsed = Math.max(maxUsed, lastUsed);
+        maxThreads = Math.max(maxThreads, lastThreads);
+        return lastUsed;
+    }
+
+    public synchronized long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Gets the most heap in use at a sample since the last reset.
+     * @return bytes in use.
+     */
+    public synchronized long getMaxUsed() {
+        return maxUsed;
+    }
+
+    public synchronized int getLastThreads() {
+        return lastThreads;
+    }
+
+    /**
+     * Gets the most live platform threads at a sample since the last reset.
+     * @return number of threads.
+     */
+    public synchronized int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Gets the number of collections since the last reset.
+     * @return number of collections.
+     * @throws IOException if the server could not be reached.
+     */
+    public synchronized long getCollections() throws IOException {
+        return collections() - startCollections;
+    }
+
+    /**
+     * Gets the time spent collecting since the last reset.
+     * @return milliseconds.
+     * @throws IOException if the server could not be reached.
+     */
+    public synchronized long getCollectionMillis() throws IOException {
+        return collectionMillis() - startCollectionMillis;
+    }
+
+    private long collections() throws IOException {
+        try {
+            return collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        } catch (RuntimeException e) {
+            throw new IOException("Could not read the collections: " + e.getMessage(), e);
+        }
+    }
+
+    private long collectionMillis() throws IOException {
+        try {
+            return collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+        } catch (RuntimeException e) {
+            throw new IOException("Could not read the collections: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        connector.close();
+    }
+}
@@ -0,0 +1,98 @@
+package se.miun.dt176g.ebni2100.reactive.Load;
+
+/**
+ * Histogram of latencies in microseconds, with buckets that grow with the value so every recorded value
+ * is off by at most 1/64 of it. Recording does not allocate. Not thread-safe, each event loop records into
+ * its own histogram and they are added up at the end of the run.
+ */
+public class LatencyHistogram {
+
+    // Values below this are counted exactly, above it in 64 buckets per power of two.
+    private static final int LINEAR = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int MAX_SHIFT = 40;
+
+    private final long[] counts = new long[LINEAR + MAX_SHIFT * SUB_BUCKETS];
+    private long count;
+    private long max;
+    private long sum;
+
+    /**
+     * Records a latency.
+     * @param micros latency in microseconds, negative values count as 0.
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the latencies of another histogram to this one.
+     * @param other histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Gets the latency that a share of the recorded latencies do not exceed.
+     * @param quantile share between 0 and 1, like 0.99.
+     * @return highest latency of the bucket holding the quantile, in microseconds, or 0 if empty.
+     */
+    public long percentile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highestOf(i));
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the mean latency.
+     * @return mean in microseconds, or 0 if empty.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = Math.min(MAX_SHIFT, 63 - Long.numberOfLeadingZeros(value) - 6);
+        long sub = Math.min(2 * SUB_BUCKETS - 1, value >>> shift);
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (sub - SUB_BUCKETS);
+    }
+
+    private static long highestOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,205 @@
+package se.miun.dt176g.ebni2100.reactive.Load;
+
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Holds the load generator settings, parsed from command-line arguments of the form "--name=value".
+ * A single argument without a name selects the wire format, which must match the server.
+ */
+public class LoadConfig {
+
+    private String host = "localhost";
+    private int port = 12345;
+    private WireFormat wireFormat = WireFormat.parse(null);
+    private int clients = 1000;
+    private int rooms = 100;
+    private int drawers = 2;
+    private double rate = 5;
+    private int warmupSeconds = 5;
+    private int durationSeconds = 30;
+    private int loops = Runtime.getRuntime().availableProcessors();
+    private Path recording;
+    private long serverPid;
+
+    /**
+     * Parse the command-line arguments.
+     * @param args command-line arguments.
+     * @return parsed settings.
+     * @throws IllegalArgumentException if an argument is unknown or has an invalid value.
+     */
+    public static LoadConfig parse(String[] args) {
+        LoadConfig config = new LoadConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                config.wireFormat = WireFormat.parse(arg);
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Missing value: " + arg);
+            }
+            config.set(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        config.validate();
+        return config;
+    }
+
+    /**
+     * Set a single named option.
+     * @param name name of the option.
+     * @param value value of the option.
+     */
+    private void set(String name, String value) {
+        switch (name) {
+            case "host":
+                host = value;
+                break;
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "wire":
+                wireFormat = WireFormat.parse(value);
+                break;
+            case "clients":
+                clients = Integer.parseInt(value);
+                break;
+            case "rooms":
+                rooms = Integer.parseInt(value);
+                break;
+            case "drawers":
+                drawers = Integer.parseInt(value);
+                break;
+            case "rate":
+                rate = Double.parseDouble(value);
+                break;
+            case "warmup":
+                warmupSeconds = Integer.parseInt(value);
+                break;
+            case "duration":
+                durationSeconds = Integer.parseInt(value);
+                break;
+            case "loops":
+                loops = Integer.parseInt(value);
+                break;
+            case "replay":
+                recording = Paths.get(value);
+                break;
+            case "server-pid":
+                serverPid = Long.parseLong(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+    /**
+     * Check that the combination of options is supported.
+     */
+    private void validate() {
+        if (clients < 1) {
+            throw new IllegalArgumentException("--clients must be at least 1");
+        }
+        if (rooms < 1 || rooms > clients) {
+            throw new IllegalArgumentException("--rooms must be between 1 and the number of clients");
+        }
+        if (drawers < 0 || drawers > clients / rooms) {
+            throw new IllegalArgumentException("--drawers must be between 0 and the number of clients per room");
+        }
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("--rate must be positive");
+        }
+        if (warmupSeconds < 0 || durationSeconds < 1) {
+            throw new IllegalArgumentException("--warmup must not be negative and --duration at least 1");
+        }
+        if (loops < 1) {
+            throw new IllegalArgumentException("--loops must be at least 1");
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * Gets the number of connections to open.
+     * @return number of clients.
+     */
+    public int getClients() {
+        return clients;
+    }
+
+    /**
+     * Gets the number of rooms the clients are spread over.
+     * @return number of rooms.
+     */
+    public int getRooms() {
+        return rooms;
+    }
+
+    /**
+     * Gets the number of clients in each room that draw, the others only receive.
+     * @return number of drawing clients per room.
+     */
+    public int getDrawers() {
+        return drawers;
+    }
+
+    /**
+     * Gets the rate each drawing client sends shapes at.
+     * @return shapes per second.
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Gets the time shapes are sent before they are measured.
+     * @return seconds.
+     */
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    /**
+     * Gets the time shapes are measured.
+     * @return seconds.
+     */
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * Gets the number of selector threads serving the clients.
+     * @return number of threads.
+     */
+    public int getLoops() {
+        return loops;
+    }
+
+    /**
+     * Gets the shape log replayed by the drawing clients.
+     * @return path of the log, or null to draw synthetic shapes.
+     */
+    public Path getRecording() {
+        return recording;
+    }
+
+    /**
+     * Gets the process id of the server, whose heap is sampled during the run.
+     * @return process id, or 0 if the heap is not sampled.
+     */
+    public long getServerPid() {
+        return serverPid;
+    }
+}
@@ -0,0 +1,276 @@
+package se.miun.dt176g.ebni2100.reactive.Load;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless load generator for the drawing server. Opens many client connections spread over rooms, lets
+ * some clients in each room draw at a fixed rate, and reports the broadcast latency, the throughput and the
+ * heap and threads of the server. Uses the shapes and wire formats of the client, but no Swing.
+ *
+ * Each shape is sent in a color that identifies the drawing client and its count of sent shapes, so the
+ * time it was sent is found when any client in the room receives it. Every client runs in this process,
+ * so one clock measures the whole trip through the server. Shapes sent while warming up are not measured,
+ * and the run waits a few seconds after it for the last measured shapes to arrive.
+ *
+ * Run against a server on the same machine, for example:
+ * java -cp ... se.miun.dt176g.ebni2100.reactive.Load.LoadGenerator binary --clients=5000 --rooms=500
+ * --drawers=2 --rate=5 --server-pid=1234
+ */
+public class LoadGenerator {
+
+    // Send times are kept for the last 1024 shapes of every drawing client.
+    private static final int RING_BITS = 10;
+    private static final int RING_MASK = (1 << RING_BITS) - 1;
+    private static final long JOIN_TIMEOUT_MILLIS = 60_000;
+    private static final long DRAIN_MILLIS = 5_000;
+
+    private final LoadConfig config;
+    private final Workload workload;
+    private final LoadLoop[] loops;
+    private final int slots;
+    private final AtomicLongArray sendTimes;
+
+    private volatile boolean sending;
+    private volatile long windowStart = Long.MAX_VALUE;
+    private volatile long windowEnd = Long.MAX_VALUE;
+    private final AtomicInteger joined = new AtomicInteger();
+    private final AtomicInteger disconnected = new AtomicInteger();
+    private volatile String firstFailure = "closed by the server";
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder expected = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    /**
+     * Create a generator.
+     * @param config settings of the run.
+     * @param workload shapes sent by the drawing clients.
+     * @throws IOException if the selectors could not be opened.
+     */
+    public LoadGenerator(LoadConfig config, Workload workload) throws IOException {
+        this.config = config;
+        this.workload = workload;
+        this.slots = config.getDrawers() * config.getRooms();
+        this.sendTimes = new AtomicLongArray(slots << RING_BITS);
+        this.loops = new LoadLoop[config.getLoops()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new LoadLoop("load-loop-" + i, this, config.getWireFormat(), config.getRate());
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            LoadConfig config = LoadConfig.parse(args);
+            Workload workload = config.getRecording() == null
+                    ? Workload.synthetic()
+                    : Workload.recorded(config.getRecording());
+            new LoadGenerator(config, workload).run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Connect the clients, run the load and print the report.
+     * @throws IOException if the clients could not connect.
+     * @throws InterruptedException if interrupted during the run.
+     */
+    public void run() throws IOException, InterruptedException {
+        for (LoadLoop loop : loops) {
+            loop.start();
+        }
+        System.out.println("Load: " + config.getClients() + " clients in " + config.getRooms() + " rooms, "
+                + slots + " drawing " + config.getRate() + " shapes/s each, " + workload.describe() + ", "
+                + config.getWireFormat().name().toLowerCase() + " format.");
+        connect();
+
+        HeapSampler heap = null;
+        if (config.getServerPid() > 0) {
+            try {
+                heap = HeapSampler.attach(config.getServerPid());
+            } catch (IOException e) {
+                System.out.println("Server heap not sampled: " + e.getMessage());
+            }
+        }
+
+        try {
+            sending = true;
+            Thread.sleep(config.getWarmupSeconds() * 1000L);
+            if (heap != null) {
+                heap.reset();
+            }
+            long start = System.nanoTime();
+            windowStart = start;
+            for (int second = 1; second <= config.getDurationSeconds(); second++) {
+                Thread.sleep(1000);
+                String heapUsed = heap != null ? ", heap " + megabytes(heap.sample()) + " MB" : "";
+                System.out.println(second + "s: sent " + sent.sum() + ", delivered " + delivered.sum() + " of "
+                        + expected.sum() + heapUsed);
+            }
+            long end = System.nanoTime();
+            windowEnd = end;
+
+            // Keep the load while the last measured shapes arrive.
+            long drainUntil = System.currentTimeMillis() + DRAIN_MILLIS;
+            while (delivered.sum() < expected.sum() && System.currentTimeMillis() < drainUntil) {
+                Thread.sleep(50);
+            }
+            sending = false;
+            for (LoadLoop loop : loops) {
+                loop.shutdown();
+            }
+            report((end - start) / 1e9, heap);
+        } finally {
+            if (heap != null) {
+                heap.close();
+            }
+        }
+    }
+
+    /**
+     * Open the connections and wait until every client joined its room. The drawing clients are spread
+     * evenly over the rooms.
+     * @throws IOException if a client could not connect, or not all clients joined in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void connect() throws IOException, InterruptedException {
+        int clients = config.getClients();
+        int rooms = config.getRooms();
+        InetSocketAddress address = new InetSocketAddress(config.getHost(), config.getPort());
+        for (int i = 0; i < clients; i++) {
+            int room = i % rooms;
+            int rank = i / rooms;
+            int roomSize = clients / rooms + (room < clients % rooms ? 1 : 0);
+            boolean drawing = rank < config.getDrawers();
+            SimulatedClient client = new SimulatedClient(SocketChannel.open(address), "load-" + room, roomSize,
+                    drawing ? rank * rooms + room : -1, drawing ? workload.newStream(i) : null);
+            loops[i % loops.length].register(client);
+            if ((i + 1) % 1000 == 0) {
+                System.out.println("Connected " + (i + 1) + " clients.");
+            }
+        }
+
+        long timeout = System.currentTimeMillis() + JOIN_TIMEOUT_MILLIS;
+        while (joined.get() + disconnected.get() < clients) {
+            if (System.currentTimeMillis() > timeout) {
+                throw new IOException("Only " + joined.get() + " of " + clients + " clients joined their room");
+            }
+            Thread.sleep(10);
+        }
+        if (disconnected.get() > 0) {
+            throw new IOException(disconnected.get() + " clients were disconnected before joining, the first "
+                    + firstFailure);
+        }
+        System.out.println("All " + clients + " clients joined.");
+    }
+
+    private void report(double seconds, HeapSampler heap) throws IOException {
+        LatencyHistogram latency = new LatencyHistogram();
+        for (LoadLoop loop : loops) {
+            latency.add(loop.getHistogram());
+        }
+        System.out.println();
+        System.out.printf("Sent:        %d shapes, %.1f/s%n", sent.sum(), sent.sum() / seconds);
+        System.out.printf("Delivered:   %d of %d, %.1f/s, %.1f MB/s received%n", delivered.sum(), expected.sum(),
+                delivered.sum() / seconds, bytesReceived.sum() / seconds / (1024 * 1024));
+        System.out.printf("Latency:     p50 %s, p99 %s, p999 %s, max %s, mean %s%n",
+                millis(latency.percentile(0.50)), millis(latency.percentile(0.99)),
+                millis(latency.percentile(0.999)), millis(latency.getMax()), millis((long) latency.getMean()));
+        if (heap != null) {
+            System.out.printf("Server heap: %d MB at the end, %d MB at most, %d collections taking %d ms%n",
+                    megabytes(heap.getLastUsed()), megabytes(heap.getMaxUsed()), heap.getCollections(),
+                    heap.getCollectionMillis());
+            System.out.printf("Server threads: %d at the end, %d at most%n", heap.getLastThreads(),
+                    heap.getMaxThreads());
+        }
+        if (disconnected.get() > 0) {
+            System.out.println("Disconnected: " + disconnected.get() + " clients");
+        }
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f ms", micros / 1000.0);
+    }
+
+    private static long megabytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    boolean isSending() {
+        return sending;
+    }
+
+    /**
+     * Gets the identity of a sent shape, which is used as its color.
+     * @param slot index of the drawing client.
+     * @param count number of shapes the client sent before.
+     * @return identity of the shape.
+     */
+    int probeOf(int slot, int count) {
+        return (slot << RING_BITS) | (count & RING_MASK);
+    }
+
+    /**
+     * Called by the loops when a shape is sent.
+     * @param probe identity of the shape.
+     * @param now time it was sent.
+     * @param roomSize number of clients that receive it.
+     */
+    void onSent(int probe, long now, int roomSize) {
+        sendTimes.set(probe, now);
+        if (now >= windowStart && now < windowEnd) {
+            sent.increment();
+            expected.add(roomSize);
+        }
+    }
+
+    /**
+     * Called by the loops when a shape was received. Records its latency if it was sent while measuring.
+     * @param probe color of the shape.
+     * @param now time it was received.
+     * @param histogram histogram of the receiving loop.
+     */
+    void onDelivered(int probe, long now, LatencyHistogram histogram) {
+        int slot = probe >>> RING_BITS;
+        if (slot >= slots) {
+            return; // Not sent by this run.
+        }
+        long sentAt = sendTimes.get(probe);
+        if (sentAt >= windowStart && sentAt < windowEnd) {
+            histogram.record((now - sentAt) / 1000);
+            delivered.increment();
+        }
+    }
+
+    void onReceived(int bytes, long now) {
+        if (now >= windowStart && now < windowEnd) {
+            bytesReceived.add(bytes);
+        }
+    }
+
+    void onJoined() {
+        joined.incrementAndGet();
+    }
+
+    void onDisconnected(SimulatedClient client, IOException e) {
+        if (disconnected.incrementAndGet() == 1 && e != null) {
+            firstFailure = "with " + e;
+        }
+        if (sending) {
+            System.out.println("Client in " + client.room + " disconnected"
+                    + (e != null ? ": " + e.getMessage() : ""));
+        }
+    }
+}
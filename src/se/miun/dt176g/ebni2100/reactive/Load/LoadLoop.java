@@ -0,0 +1,261 @@
+package se.miun.dt176g.ebni2100.reactive.Load;
+
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Sequenced;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.BinaryShapeCodec;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A single selector thread serving many simulated clients, like the event loops of the server. Sends the
+ * shapes of its drawing clients at their rate and records the latency of every shape broadcast back.
+ */
+class LoadLoop implements Runnable {
+
+    private static final long TICK_MILLIS = 2;
+
+    private final LoadGenerator generator;
+    private final WireFormat wireFormat;
+    private final long intervalNanos;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Only used on the loop.
+    private final List<SimulatedClient> clients = new ArrayList<>();
+    private final List<SimulatedClient> drawing = new ArrayList<>();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    LoadLoop(String name, LoadGenerator generator, WireFormat wireFormat, double rate) throws IOException {
+        this.generator = generator;
+        this.wireFormat = wireFormat;
+        this.intervalNanos = (long) (1_000_000_000L / rate);
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Hand over a connected client, which then joins its room.
+     * @param client the client.
+     */
+    void register(SimulatedClient client) {
+        tasks.add(() -> {
+            try {
+                client.channel.configureBlocking(false);
+                client.channel.socket().setTcpNoDelay(true);
+                client.key = client.channel.register(selector, SelectionKey.OP_READ, client);
+                clients.add(client);
+                if (client.isDrawing()) {
+                    drawing.add(client);
+                }
+                write(client, wireFormat.header());
+                write(client, wireFormat.encodeFrame(new JoinRoom(client.room)));
+            } catch (IOException e) {
+                fail(client, e);
+            }
+        });
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(TICK_MILLIS);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handleKey(key);
+                }
+                selector.selectedKeys().clear();
+                if (generator.isSending()) {
+                    sendDue(System.nanoTime());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        for (SimulatedClient client : clients) {
+            try {
+                client.channel.close();
+            } catch (IOException ignored) {
+                // Closing anyway.
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        SimulatedClient client = (SimulatedClient) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable() && !onReadable(client)) {
+                fail(client, null);
+                return;
+            }
+            if (key.isValid() && key.isWritable()) {
+                onWritable(client);
+            }
+        } catch (IOException e) {
+            fail(client, e);
+        }
+    }
+
+    /**
+     * Send the shapes that are due. Clients that fell behind catch up, so the offered load does not drop
+     * when the server is slow.
+     * @param now current time.
+     */
+    private void sendDue(long now) {
+        for (SimulatedClient client : drawing) {
+            if (!client.key.isValid()) {
+                continue;
+            }
+            if (client.nextSend == 0) {
+                client.nextSend = now + ThreadLocalRandom.current().nextLong(intervalNanos);
+            }
+            while (client.nextSend <= now) {
+                client.nextSend += intervalNanos;
+                int probe = generator.probeOf(client.slot, client.sent++);
+                Shape shape = client.stream.next(new Color(probe, true));
+                generator.onSent(probe, System.nanoTime(), client.roomSize);
+                try {
+                    write(client, wireFormat.encodeFrame(shape));
+                } catch (IOException e) {
+                    fail(client, e);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void write(SimulatedClient client, byte[] frame) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        if (client.outbound.isEmpty()) {
+            client.channel.write(buffer);
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+            client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        client.outbound.add(buffer);
+    }
+
+    private void onWritable(SimulatedClient client) throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = client.outbound.peek()) != null) {
+            client.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            client.outbound.poll();
+        }
+        client.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Read what is available and handle complete frames.
+     * @param client the client.
+     * @return false if the server closed the connection.
+     * @throws IOException if the channel failed or the data was malformed.
+     */
+    private boolean onReadable(SimulatedClient client) throws IOException {
+        ByteBuffer readBuffer = client.readBuffer;
+        int read = client.channel.read(readBuffer);
+        if (read < 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        generator.onReceived(read, now);
+
+        readBuffer.flip();
+        if (!client.headerReceived) {
+            if (readBuffer.remaining() < wireFormat.header().length) {
+                readBuffer.compact();
+                return true;
+            }
+            wireFormat.readHeader(readBuffer);
+            client.headerReceived = true;
+        }
+
+        int length;
+        while ((length = BinaryShapeCodec.readFrameLength(readBuffer)) >= 0) {
+            int end = readBuffer.position() + length;
+            int limit = readBuffer.limit();
+            readBuffer.limit(end);
+            Shape shape = wireFormat.decode(readBuffer);
+            readBuffer.limit(limit);
+            readBuffer.position(end);
+            onShape(client, shape, now);
+        }
+        readBuffer.compact();
+
+        // Grow the buffer if a frame does not fit.
+        if (!readBuffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            larger.put(readBuffer);
+            client.readBuffer = larger;
+        }
+        return true;
+    }
+
+    /**
+     * Handle a shape from the server. Only new shapes of the room are stamped, so the canvas sent when
+     * joining is not measured.
+     */
+    private void onShape(SimulatedClient client, Shape shape, long now) {
+        if (shape instanceof Sequenced) {
+            generator.onDelivered(((Sequenced) shape).getShape().getColor().getRGB(), now, histogram);
+        } else if (shape instanceof JoinRoom && !client.joined) {
+            client.joined = true;
+            generator.onJoined();
+        }
+    }
+
+    private void fail(SimulatedClient client, IOException e) {
+        if (client.key != null) {
+            client.key.cancel();
+        }
+        try {
+            client.channel.close();
+        } catch (IOException ignored) {
+            // Already failing.
+        }
+        generator.onDisconnected(client, e);
+    }
+
+    /**
+     * Stop the loop and close its clients.
+     * @throws InterruptedException if interrupted while waiting for the loop.
+     */
+    void shutdown() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join();
+    }
+
+    /**
+     * Gets the latencies recorded by this loop. Only called after {@link #shutdown}.
+     * @return histogram.
+     */
+    LatencyHistogram getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,46 @@
+package se.miun.dt176g.ebni2100.reactive.Load;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * A connection of the load generator, acting as one client in one room. Only used by its {@link LoadLoop}.
+ */
+class SimulatedClient {
+
+    final SocketChannel channel;
+    final String room;
+    final int roomSize;
+    final int slot; // Index of the drawing client, or -1 if it only receives.
+    final Workload.Stream stream;
+
+    SelectionKey key;
+    ByteBuffer readBuffer = ByteBuffer.allocate(1024); // Kept in write-mode between reads.
+    boolean headerReceived;
+    final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+    boolean joined;
+    long nextSend;
+    int sent;
+
+    /**
+     * Create a client.
+     * @param channel connected channel.
+     * @param room name of the room to join.
+     * @param roomSize number of clients of the run in the room.
+     * @param slot index of the drawing client, or -1 if it only receives.
+     * @param stream shapes to send, or null if it only receives.
+     */
+    SimulatedClient(SocketChannel channel, String room, int roomSize, int slot, Workload.Stream stream) {
+        this.channel = channel;
+        this.room = room;
+        this.roomSize = roomSize;
+        this.slot = slot;
+        this.stream = stream;
+    }
+
+    boolean isDrawing() {
+        return slot >= 0;
+    }
+}
@@ -0,0 +1,195 @@
+package se.miun.dt176g.ebni2100.reactive.Load;
+
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Oval;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.StraightLine;
+import se.miun.dt176g.ebni2100.reactive.Protocol.BinaryShapeCodec;
+import se.miun.dt176g.ebni2100.reactive.Server.ShapeLog;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The shapes the drawing clients send, either synthetic or replayed from a shape log recorded by a server.
+ *
+ * Every shape is sent in the color given by the caller, which the load generator uses to recognize it when
+ * it is broadcast back, so the colors of a recording are not kept.
+ */
+public abstract class Workload {
+
+    private static final int CANVAS_WIDTH = 1000;
+    private static final int CANVAS_HEIGHT = 800;
+    private static final int STROKE_PARTS = 20;
+
+    /**
+     * The shapes of a single drawing client.
+     */
+    public interface Stream {
+        /**
+         * Gets the next shape to send.
+         * @param color color of the shape.
+         * @return the shape.
+         */
+        Shape next(Color color);
+    }
+
+    /**
+     * Creates the stream of a drawing client.
+     * @param clientId index of the client, unique in the run.
+     * @return stream of shapes.
+     */
+    public abstract Stream newStream(int clientId);
+
+    /**
+     * Gets a description of the workload for the report.
+     * @return description.
+     */
+    public abstract String describe();
+
+    /**
+     * Creates a workload of random rectangles, ovals and lines, and freehand strokes sent part by part
+     * like the drawing panel does while the mouse is dragged.
+     * @return synthetic workload.
+     */
+    public static Workload synthetic() {
+        return new Workload() {
+            @Override
+            public Stream newStream(int clientId) {
+                return new SyntheticStream(clientId);
+            }
+
+            @Override
+            public String describe() {
+                return "synthetic shapes and strokes";
+            }
+        };
+    }
+
+    /**
+     * Creates a workload replaying the shapes of a shape log. Each client starts at a different shape and
+     * wraps around at the end.
+     * @param path path of the log, see the --log option of the server.
+     * @return recorded workload.
+     * @throws IOException if the log could not be read or holds no shapes.
+     */
+    public static Workload recorded(Path path) throws IOException {
+        List<byte[]> bodies = new ArrayList<>();
+        ShapeLog.read(path, shape -> {
+            if (!(shape instanceof JoinRoom)) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream(32);
+                BinaryShapeCodec.encode(shape, body);
+                bodies.add(body.toByteArray());
+            }
+        });
+        if (bodies.isEmpty()) {
+            throw new IOException("No shapes to replay in " + path);
+        }
+        return new Workload() {
+            @Override
+            public Stream newStream(int clientId) {
+                int[] next = {(int) ((clientId * 7919L) % bodies.size())};
+                return color -> {
+                    byte[] body = bodies.get(next[0]);
+                    next[0] = (next[0] + 1) % bodies.size();
+                    return recolor(body, color);
+                };
+            }
+
+            @Override
+            public String describe() {
+                return bodies.size() + " shapes replayed from " + path;
+            }
+        };
+    }
+
+    /**
+     * Decodes a shape with another color.
+     * @param body binary body of the shape, which starts with the tag followed by the color.
+     * @param color new color.
+     * @return decoded shape.
+     */
+    private static Shape recolor(byte[] body, Color color) {
+        ByteBuffer buffer = ByteBuffer.wrap(body.clone());
+        buffer.putInt(1, color.getRGB());
+        try {
+            return BinaryShapeCodec.decode(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Recorded shape could not be decoded", e);
+        }
+    }
+
+    /**
+     * Random shapes of one client. A third of the shapes sent are parts of freehand strokes.
+     */
+    private static class SyntheticStream implements Stream {
+
+        private final Random random;
+        private final long strokeIdBase;
+        private long strokes;
+        private int partsLeft;
+        private int x;
+        private int y;
+
+        SyntheticStream(int clientId) {
+            this.random = new Random(clientId);
+            this.strokeIdBase = (long) clientId << 32;
+        }
+
+        @Override
+        public Shape next(Color color) {
+            if (partsLeft > 0) {
+                return nextStrokePart(color);
+            }
+            int kind = random.nextInt(6);
+            if (kind < 2) {
+                partsLeft = STROKE_PARTS;
+                x = random.nextInt(CANVAS_WIDTH);
+                y = random.nextInt(CANVAS_HEIGHT);
+                strokes++;
+                return new StrokeDelta(color, 2, strokeIdBase | strokes, StrokeDelta.Phase.BEGIN,
+                        new int[] {x}, new int[] {y});
+            }
+            if (kind == 2) {
+                StraightLine line = new StraightLine(color, 2);
+                line.setPosition(random.nextInt(CANVAS_WIDTH), random.nextInt(CANVAS_HEIGHT));
+                line.setEndPoint(random.nextInt(CANVAS_WIDTH), random.nextInt(CANVAS_HEIGHT));
+                return line;
+            }
+            Shape shape = kind == 3 ? new Oval(color, 2) : new Rectangle(color, 2);
+            shape.setPosition(random.nextInt(CANVAS_WIDTH), random.nextInt(CANVAS_HEIGHT));
+            shape.setSize(1 + random.nextInt(200), 1 + random.nextInt(200));
+            return shape;
+        }
+
+        /**
+         * Gets the next part of the current stroke: a few points close to the previous ones, or the end.
+         * @param color color of the part.
+         * @return part of the stroke.
+         */
+        private Shape nextStrokePart(Color color) {
+            partsLeft--;
+            long strokeId = strokeIdBase | strokes;
+            if (partsLeft == 0) {
+                return new StrokeDelta(color, 0, strokeId, StrokeDelta.Phase.END, new int[0], new int[0]);
+            }
+            int[] xs = new int[4];
+            int[] ys = new int[4];
+            for (int i = 0; i < xs.length; i++) {
+                x = Math.max(0, Math.min(CANVAS_WIDTH, x + random.nextInt(11) - 5));
+                y = Math.max(0, Math.min(CANVAS_HEIGHT, y + random.nextInt(11) - 5));
+                xs[i] = x;
+                ys[i] = y;
+            }
+            return new StrokeDelta(color, 2, strokeId, StrokeDelta.Phase.APPEND, xs, ys);
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import se.miun.dt176g.ebni2100.reactive.Client.CanvasImage;
+import se.miun.dt176g.ebni2100.reactive.Client.Clear;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Sequenced;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Viewport;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Oval;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.StraightLine;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of shapes.
+ *
+ * A stream starts with a header of two magic bytes and a version byte. Every shape is then sent as a
+ * frame: the length of the body as a varint, followed by the body. The body holds a type tag, the color
+ * packed as four ARGB bytes, the thickness and the coordinates of the shape. Coordinates are zigzag-encoded
+ * varints, and the points of a freehand are stored as deltas to the previous point. A part of a stroke holds
+ * its phase and stroke-id before the points, which are encoded like those of a freehand. A join-room command
+ * holds the length of the room name followed by its ASCII bytes, the epoch as eight bytes and the sequence
+ * number as a varint. A stamped shape holds its sequence number as a varint followed by the body of the shape.
+ * A canvas image holds its position and size like a rectangle, followed by the length of the PNG as a varint
+ * and the PNG bytes. A viewport holds its position and size like a rectangle.
+ */
+public final class BinaryShapeCodec {
+
+    static final byte MAGIC_0 = 'R';
+    static final byte MAGIC_1 = 'P';
+    static final byte VERSION = 1;
+
+    // Upper bound of a frame, guards against allocating huge buffers on corrupt input.
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    // Type tags.
+    static final byte TAG_RECTANGLE = 1;
+    static final byte TAG_OVAL = 2;
+    static final byte TAG_STRAIGHT_LINE = 3;
+    static final byte TAG_FREEHAND = 4;
+    static final byte TAG_CLEAR = 5;
+    static final byte TAG_STROKE_DELTA = 6;
+    static final byte TAG_JOIN_ROOM = 7;
+    static final byte TAG_SEQUENCED = 8;
+    static final byte TAG_CANVAS_IMAGE = 9;
+    static final byte TAG_VIEWPORT = 10;
+
+    private BinaryShapeCodec() {
+    }
+
+    /**
+     * Writes the stream header.
+     * @param out stream to write to.
+     * @throws IOException IO-exception.
+     */
+    public static void writeHeader(OutputStream out) throws IOException {
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(VERSION);
+    }
+
+    /**
+     * Reads and verifies the stream header.
+     * @param in stream to read from.
+     * @throws IOException if the header is missing or of an unsupported version.
+     */
+    public static void readHeader(InputStream in) throws IOException {
+        int m0 = in.read();
+        int m1 = in.read();
+        int version = in.read();
+        if (version < 0) {
+            throw new EOFException("Stream closed before header");
+        }
+        if (m0 != MAGIC_0 || m1 != MAGIC_1) {
+            throw new StreamCorruptedException("Not a shape stream");
+        }
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported shape stream version: " + version);
+        }
+    }
+
+    /**
+     * Encodes the body of a shape, without the length prefix.
+     * @param shape shape to encode.
+     * @param out buffer to append to.
+     */
+    public static void encode(Shape shape, ByteArrayOutputStream out) {
+        out.write(tagOf(shape));
+        int argb = shape.getColor().getRGB();
+        out.write(argb >>> 24);
+        out.write(argb >>> 16);
+        out.write(argb >>> 8);
+        out.write(argb);
+        writeVarInt(out, shape.getThickness());
+
+        if (shape instanceof StrokeDelta) {
+            StrokeDelta delta = (StrokeDelta) shape;
+            out.write(delta.getPhase().ordinal());
+            long id = delta.getStrokeId();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (id >>> shift));
+            }
+            int count = delta.getPointCount();
+            writeVarInt(out, count);
+            int prevX = 0;
+            int prevY = 0;
+            for (int i = 0; i < count; i++) {
+                int x = delta.getPointX(i);
+                int y = delta.getPointY(i);
+                writeSignedVarInt(out, x - prevX);
+                writeSignedVarInt(out, y - prevY);
+                prevX = x;
+                prevY = y;
+            }
+        } else if (shape instanceof JoinRoom) {
+            JoinRoom join = (JoinRoom) shape;
+            byte[] room = join.getRoom().getBytes(StandardCharsets.US_ASCII);
+            writeVarInt(out, room.length);
+            out.write(room, 0, room.length);
+            long epoch = join.getEpoch();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (epoch >>> shift));
+            }
+            writeVarLong(out, join.getSequence());
+        } else if (shape instanceof Sequenced) {
+            Sequenced sequenced = (Sequenced) shape;
+            writeVarLong(out, sequenced.getSequence());
+            encode(sequenced.getShape(), out);
+        } else if (shape instanceof Freehand) {
+            Freehand freehand = (Freehand) shape;
+            int count = freehand.getPointCount();
+            writeVarInt(out, count);
+            int prevX = 0;
+            int prevY = 0;
+            for (int i = 0; i < count; i++) {
+                int x = freehand.getPointX(i);
+                int y = freehand.getPointY(i);
+                writeSignedVarInt(out, x - prevX);
+                writeSignedVarInt(out, y - prevY);
+                prevX = x;
+                prevY = y;
+            }
+        } else if (shape instanceof StraightLine) {
+            StraightLine line = (StraightLine) shape;
+            writeSignedVarInt(out, line.getX());
+            writeSignedVarInt(out, line.getY());
+            writeSignedVarInt(out, line.getEndX());
+            writeSignedVarInt(out, line.getEndY());
+        } else if (!(shape instanceof Clear)) {
+            writeSignedVarInt(out, shape.getX());
+            writeSignedVarInt(out, shape.getY());
+            writeVarInt(out, shape.getWidth());
+            writeVarInt(out, shape.getHeight());
+            if (shape instanceof CanvasImage) {
+                byte[] png = ((CanvasImage) shape).getPng();
+                writeVarInt(out, png.length);
+                out.write(png, 0, png.length);
+            }
+        }
+    }
+
+    /**
+     * Encodes a shape as a complete frame, including the length prefix.
+     * @param shape shape to encode.
+     * @return frame bytes.
+     */
+    public static byte[] encodeFrame(Shape shape) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(32);
+        encode(shape, body);
+        byte[] bodyBytes = body.toByteArray();
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(bodyBytes.length + 5);
+        writeVarInt(frame, bodyBytes.length);
+        frame.write(bodyBytes, 0, bodyBytes.length);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Decodes the body of a shape.
+     * @param buffer buffer positioned at the start of the body, limited to its end.
+     * @return decoded shape.
+     * @throws StreamCorruptedException if the body is malformed.
+     */
+    public static Shape decode(ByteBuffer buffer) throws StreamCorruptedException {
+        try {
+            byte tag = buffer.get();
+            Color color = new Color(buffer.getInt(), true);
+            int thickness = readVarInt(buffer);
+
+            switch (tag) {
+                case TAG_RECTANGLE:
+                case TAG_OVAL: {
+                    Shape shape = tag == TAG_RECTANGLE
+                            ? new Rectangle(color, thickness)
+                            : new Oval(color, thickness);
+                    shape.setPosition(readSignedVarInt(buffer), readSignedVarInt(buffer));
+                    shape.setSize(readVarInt(buffer), readVarInt(buffer));
+                    return shape;
+                }
+                case TAG_STRAIGHT_LINE: {
+                    StraightLine line = new StraightLine(color, thickness);
+                    line.setPosition(readSignedVarInt(buffer), readSignedVarInt(buffer));
+                    line.setEndPoint(readSignedVarInt(buffer), readSignedVarInt(buffer));
+                    return line;
+                }
+                case TAG_FREEHAND: {
+                    Freehand freehand = new Freehand(color, thickness);
+                    int count = readVarInt(buffer);
+                    int x = 0;
+                    int y = 0;
+                    for (int i = 0; i < count; i++) {
+                        x += readSignedVarInt(buffer);
+                        y += readSignedVarInt(buffer);
+                        freehand.addPoint(x, y);
+                    }
+                    return freehand;
+                }
+                case TAG_CLEAR:
+                    return new Clear(color, thickness);
+                case TAG_STROKE_DELTA: {
+                    int phase = buffer.get();
+                    if (phase < 0 || phase >= StrokeDelta.Phase.values().length) {
+                        throw new StreamCorruptedException("Unknown stroke phase: " + phase);
+                    }
+                    long id = buffer.getLong();
+                    int count = readVarInt(buffer);
+                    if (count < 0 || count > buffer.remaining() / 2) {
+                        throw new StreamCorruptedException("Bad point count: " + count);
+                    }
+                    int[] xs = new int[count];
+                    int[] ys = new int[count];
+                    int x = 0;
+                    int y = 0;
+                    for (int i = 0; i < count; i++) {
+                        x += readSignedVarInt(buffer);
+                        y += readSignedVarInt(buffer);
+                        xs[i] = x;
+                        ys[i] = y;
+                    }
+                    return new StrokeDelta(color, thickness, id, StrokeDelta.Phase.values()[phase], xs, ys);
+                }
+                case TAG_JOIN_ROOM: {
+                    int length = readVarInt(buffer);
+                    if (length < 0 || length > buffer.remaining()) {
+                        throw new StreamCorruptedException("Bad room name length: " + length);
+                    }
+                    byte[] room = new byte[length];
+                    buffer.get(room);
+                    String name = new String(room, StandardCharsets.US_ASCII);
+                    if (!JoinRoom.isValidName(name)) {
+                        throw new StreamCorruptedException("Invalid room name: " + name);
+                    }
+                    long epoch = buffer.getLong();
+                    return new JoinRoom(name, epoch, readVarLong(buffer));
+                }
+                case TAG_SEQUENCED: {
+                    long sequence = readVarLong(buffer);
+                    // Checked before decoding the inner shape, so nested stamps cannot recurse.
+                    if (buffer.hasRemaining() && buffer.get(buffer.position()) == TAG_SEQUENCED) {
+                        throw new StreamCorruptedException("Nested sequence number");
+                    }
+                    return new Sequenced(sequence, decode(buffer));
+                }
+                case TAG_CANVAS_IMAGE: {
+                    int x = readSignedVarInt(buffer);
+                    int y = readSignedVarInt(buffer);
+                    int width = readVarInt(buffer);
+                    int height = readVarInt(buffer);
+                    int length = readVarInt(buffer);
+                    if (length < 0 || length > buffer.remaining()) {
+                        throw new StreamCorruptedException("Bad image length: " + length);
+                    }
+                    byte[] png = new byte[length];
+                    buffer.get(png);
+                    return new CanvasImage(x, y, width, height, png);
+                }
+                case TAG_VIEWPORT: {
+                    int x = readSignedVarInt(buffer);
+                    int y = readSignedVarInt(buffer);
+                    int width = readVarInt(buffer);
+                    int height = readVarInt(buffer);
+                    try {
+                        return new Viewport(x, y, width, height);
+                    } catch (IllegalArgumentException e) {
+                        throw new StreamCorruptedException(e.getMessage());
+                    }
+                }
+                default:
+                    throw new StreamCorruptedException("Unknown shape tag: " + tag);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new StreamCorruptedException("Truncated shape");
+        }
+    }
+
+    /**
+     * Reads the length prefix of the next frame from a buffer that may hold a partial frame.
+     * The position is only advanced when both the prefix and the whole body are available.
+     * @param buffer buffer in read-mode.
+     * @return length of the body, or -1 if the frame is not complete yet.
+     * @throws StreamCorruptedException if the length prefix is malformed.
+     */
+    public static int readFrameLength(ByteBuffer buffer) throws StreamCorruptedException {
+        int start = buffer.position();
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                buffer.position(start);
+                return -1;
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0 || value > MAX_FRAME_LENGTH) {
+                    throw new StreamCorruptedException("Frame too large: " + value);
+                }
+                if (buffer.remaining() < value) {
+                    buffer.position(start);
+                    return -1;
+                }
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    /**
+     * Gets the stream header as bytes.
+     * @return header bytes.
+     */
+    public static byte[] header() {
+        return new byte[] {MAGIC_0, MAGIC_1, VERSION};
+    }
+
+    /**
+     * Verifies the stream header in a buffer.
+     * @param buffer buffer holding at least three bytes.
+     * @throws StreamCorruptedException if the header is wrong.
+     */
+    public static void readHeader(ByteBuffer buffer) throws StreamCorruptedException {
+        byte m0 = buffer.get();
+        byte m1 = buffer.get();
+        byte version = buffer.get();
+        if (m0 != MAGIC_0 || m1 != MAGIC_1) {
+            throw new StreamCorruptedException("Not a shape stream");
+        }
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported shape stream version: " + version);
+        }
+    }
+
+    /**
+     * Gets the type tag of a shape.
+     * @param shape shape.
+     * @return type tag.
+     */
+    private static byte tagOf(Shape shape) {
+        if (shape instanceof Sequenced) {
+            return TAG_SEQUENCED;
+        } else if (shape instanceof StrokeDelta) {
+            return TAG_STROKE_DELTA;
+        } else if (shape instanceof Rectangle) {
+            return TAG_RECTANGLE;
+        } else if (shape instanceof Oval) {
+            return TAG_OVAL;
+        } else if (shape instanceof StraightLine) {
+            return TAG_STRAIGHT_LINE;
+        } else if (shape instanceof Freehand) {
+            return TAG_FREEHAND;
+        } else if (shape instanceof Clear) {
+            return TAG_CLEAR;
+        } else if (shape instanceof JoinRoom) {
+            return TAG_JOIN_ROOM;
+        } else if (shape instanceof CanvasImage) {
+            return TAG_CANVAS_IMAGE;
+        } else if (shape instanceof Viewport) {
+            return TAG_VIEWPORT;
+        }
+        throw new IllegalArgumentException("Unsupported shape: " + shape.getClass().getName());
+    }
+
+    /**
+     * Writes an unsigned varint, seven bits per byte with the high bit set on all but the last byte.
+     * @param out buffer to append to.
+     * @param value value, treated as unsigned.
+     */
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Writes an unsigned varint of a long, like {@link #writeVarInt}.
+     * @param out buffer to append to.
+     * @param value value, treated as unsigned.
+     */
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Writes a signed varint using zigzag-encoding, so that small negative values stay small.
+     * @param out buffer to append to.
+     * @param value value.
+     */
+    static void writeSignedVarInt(ByteArrayOutputStream out, int value) {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads an unsigned varint.
+     * @param buffer buffer to read from.
+     * @return value.
+     * @throws StreamCorruptedException if the varint is longer than five bytes.
+     */
+    static int readVarInt(ByteBuffer buffer) throws StreamCorruptedException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    /**
+     * Reads an unsigned varint of a long.
+     * @param buffer buffer to read from.
+     * @return value.
+     * @throws StreamCorruptedException if the varint is longer than ten bytes.
+     */
+    static long readVarLong(ByteBuffer buffer) throws StreamCorruptedException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    /**
+     * Reads a zigzag-encoded signed varint.
+     * @param buffer buffer to read from.
+     * @return value.
+     * @throws StreamCorruptedException if the varint is malformed.
+     */
+    static int readSignedVarInt(ByteBuffer buffer) throws StreamCorruptedException {
+        int raw = readVarInt(buffer);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Reads an unsigned varint from a stream.
+     * @param in stream to read from.
+     * @return value, or -1 if the stream ended before the first byte.
+     * @throws IOException if the stream ended in the middle of the varint, or it is malformed.
+     */
+    static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new EOFException("Stream closed in the middle of a frame");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+}
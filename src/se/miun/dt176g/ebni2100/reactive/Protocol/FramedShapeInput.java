@@ -0,0 +1,48 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Shape-input reading length-prefixed frames in the given wire format.
+ */
+class FramedShapeInput implements ShapeInput {
+
+    private final DataInputStream inputStream;
+    private final WireFormat format;
+    private byte[] frame = new byte[256];
+
+    FramedShapeInput(InputStream inputStream, WireFormat format) throws IOException {
+        this.inputStream = new DataInputStream(new BufferedInputStream(inputStream));
+        this.format = format;
+        format.readHeader(this.inputStream);
+    }
+
+    @Override
+    public Shape read() throws IOException {
+        int length = BinaryShapeCodec.readVarInt(inputStream);
+        if (length < 0) {
+            throw new EOFException();
+        }
+        if (length > BinaryShapeCodec.MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("Frame too large: " + length);
+        }
+        if (length > frame.length) {
+            frame = new byte[Math.max(length, frame.length * 2)];
+        }
+        inputStream.readFully(frame, 0, length);
+        return format.decode(ByteBuffer.wrap(frame, 0, length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
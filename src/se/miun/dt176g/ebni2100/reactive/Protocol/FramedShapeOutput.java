@@ -0,0 +1,40 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Shape-output writing length-prefixed frames in the given wire format.
+ */
+class FramedShapeOutput implements ShapeOutput {
+
+    private final OutputStream outputStream;
+    private final WireFormat format;
+
+    FramedShapeOutput(OutputStream outputStream, WireFormat format) throws IOException {
+        this.outputStream = new BufferedOutputStream(outputStream);
+        this.format = format;
+        this.outputStream.write(format.header());
+        this.outputStream.flush();
+    }
+
+    @Override
+    public void write(Shape shape) throws IOException {
+        outputStream.write(format.encodeFrame(shape));
+        outputStream.flush();
+    }
+
+    @Override
+    public void write(ShapeFrame frame) throws IOException {
+        outputStream.write(frame.getFormat() == format ? frame.getBytes() : format.encodeFrame(frame.getShape()));
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+}
@@ -0,0 +1,130 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Framed encoding of shapes using Java serialization.
+ *
+ * A stream starts with the header of an object-stream. Every shape is then sent as a frame: the length of
+ * the body as a varint, followed by the body, which is what an object-stream writes for the shape right
+ * after its header. Each frame is serialized by its own object-stream, so no handles or class descriptors
+ * are shared between frames. Neither side keeps state between shapes, and the same frame can be sent on
+ * any stream.
+ */
+public final class JavaShapeCodec {
+
+    private static final byte[] HEADER = {
+            (byte) (ObjectStreamConstants.STREAM_MAGIC >>> 8), (byte) ObjectStreamConstants.STREAM_MAGIC,
+            (byte) (ObjectStreamConstants.STREAM_VERSION >>> 8), (byte) ObjectStreamConstants.STREAM_VERSION
+    };
+
+    private JavaShapeCodec() {
+    }
+
+    /**
+     * Gets the stream header as bytes.
+     * @return header bytes.
+     */
+    public static byte[] header() {
+        return HEADER.clone();
+    }
+
+    /**
+     * Writes the stream header.
+     * @param out stream to write to.
+     * @throws IOException IO-exception.
+     */
+    public static void writeHeader(OutputStream out) throws IOException {
+        out.write(HEADER);
+    }
+
+    /**
+     * Reads and verifies the stream header.
+     * @param in stream to read from.
+     * @throws IOException if the header is missing or wrong.
+     */
+    public static void readHeader(InputStream in) throws IOException {
+        for (byte expected : HEADER) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Stream closed before header");
+            }
+            if ((byte) b != expected) {
+                throw new StreamCorruptedException("Not a framed object-stream");
+            }
+        }
+    }
+
+    /**
+     * Verifies the stream header in a buffer.
+     * @param buffer buffer holding at least four bytes.
+     * @throws StreamCorruptedException if the header is wrong.
+     */
+    public static void readHeader(ByteBuffer buffer) throws StreamCorruptedException {
+        for (byte expected : HEADER) {
+            if (buffer.get() != expected) {
+                throw new StreamCorruptedException("Not a framed object-stream");
+            }
+        }
+    }
+
+    /**
+     * Serializes a shape as a complete frame, including the length prefix.
+     * @param shape shape to encode.
+     * @return frame bytes.
+     * @throws UncheckedIOException if the shape could not be serialized.
+     */
+    public static byte[] encodeFrame(Shape shape) {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(serialized)) {
+            objectOutputStream.writeObject(shape);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shape could not be serialized", e);
+        }
+        byte[] bytes = serialized.toByteArray();
+        int bodyLength = bytes.length - HEADER.length;
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(bodyLength + 5);
+        BinaryShapeCodec.writeVarInt(frame, bodyLength);
+        frame.write(bytes, HEADER.length, bodyLength);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Deserializes the body of a frame.
+     * @param buffer heap buffer positioned at the start of the body, limited to its end. The position is
+     *               moved to the limit.
+     * @return decoded shape.
+     * @throws IOException if the body is malformed or not a known shape.
+     */
+    public static Shape decode(ByteBuffer buffer) throws IOException {
+        InputStream body = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                buffer.remaining());
+        buffer.position(buffer.limit());
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(HEADER), body))) {
+            Object object = objectInputStream.readObject();
+            if (!(object instanceof Shape)) {
+                throw new InvalidClassException(object == null ? "null" : object.getClass().getName(),
+                        "Not a shape");
+            }
+            return (Shape) object;
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage(), "Unknown class");
+        }
+    }
+}
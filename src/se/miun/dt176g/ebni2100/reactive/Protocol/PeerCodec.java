@@ -0,0 +1,148 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of the messages between server nodes. Always binary, whatever format the clients use.
+ *
+ * A link starts with a header of two magic bytes and a version byte. Every message is then sent as a frame
+ * like a shape in {@link BinaryShapeCodec}: the length of the body as a varint, followed by the body. The body
+ * holds the type, the room name as a varint length and ASCII bytes, and for events and syncs the sequence
+ * number as eight bytes. A forwarded or accepted shape, or a shape of a synced room, follows as a shape body,
+ * while a sync holds the epoch as eight bytes. The end of a sync holds nothing more.
+ */
+public final class PeerCodec {
+
+    static final byte MAGIC_0 = 'R';
+    static final byte MAGIC_1 = 'N';
+    static final byte VERSION = 3;
+
+    private PeerCodec() {
+    }
+
+    /**
+     * Writes the link header.
+     * @param out stream to write to.
+     * @throws IOException if the stream failed.
+     */
+    public static void writeHeader(OutputStream out) throws IOException {
+        out.write(new byte[] {MAGIC_0, MAGIC_1, VERSION});
+    }
+
+    /**
+     * Reads and checks the link header.
+     * @param in stream to read from.
+     * @throws IOException if the stream failed or is not a link between server nodes.
+     */
+    public static void readHeader(InputStream in) throws IOException {
+        byte[] header = new byte[3];
+        new DataInputStream(in).readFully(header);
+        if (header[0] != MAGIC_0 || header[1] != MAGIC_1) {
+            throw new StreamCorruptedException("Not a link between server nodes");
+        }
+        if (header[2] != VERSION) {
+            throw new StreamCorruptedException("Unsupported peer version: " + header[2]);
+        }
+    }
+
+    /**
+     * Encodes a message as a complete frame, including the length prefix.
+     * @param message message to encode.
+     * @return frame bytes.
+     */
+    public static byte[] encodeFrame(PeerMessage message) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        body.write(message.getType().ordinal());
+        byte[] room = message.getRoom().getBytes(StandardCharsets.US_ASCII);
+        BinaryShapeCodec.writeVarInt(body, room.length);
+        body.write(room, 0, room.length);
+        if (message.getType() == PeerMessage.Type.EVENT || message.getType() == PeerMessage.Type.SYNC) {
+            long sequence = message.getSequence();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                body.write((int) (sequence >>> shift));
+            }
+        }
+        if (message.getType() == PeerMessage.Type.SYNC) {
+            long epoch = message.getEpoch();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                body.write((int) (epoch >>> shift));
+            }
+        } else if (message.getType() != PeerMessage.Type.SYNC_END) {
+            BinaryShapeCodec.encode(message.getShape(), body);
+        }
+
+        byte[] bodyBytes = body.toByteArray();
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(bodyBytes.length + 5);
+        BinaryShapeCodec.writeVarInt(frame, bodyBytes.length);
+        frame.write(bodyBytes, 0, bodyBytes.length);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Reads the next message from a link.
+     * @param in stream positioned at the start of a frame.
+     * @return the message.
+     * @throws EOFException if the link was closed.
+     * @throws IOException if the stream failed or the frame is malformed.
+     */
+    public static PeerMessage read(DataInputStream in) throws IOException {
+        int length = BinaryShapeCodec.readVarInt(in);
+        if (length < 0) {
+            throw new EOFException();
+        }
+        if (length > BinaryShapeCodec.MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("Frame too large: " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return decode(ByteBuffer.wrap(frame));
+    }
+
+    /**
+     * Decodes the body of a message.
+     * @param buffer buffer positioned at the start of the body, limited to its end.
+     * @return decoded message.
+     * @throws StreamCorruptedException if the body is malformed.
+     */
+    public static PeerMessage decode(ByteBuffer buffer) throws StreamCorruptedException {
+        try {
+            int type = buffer.get();
+            if (type < 0 || type >= PeerMessage.Type.values().length) {
+                throw new StreamCorruptedException("Unknown peer message: " + type);
+            }
+            int roomLength = BinaryShapeCodec.readVarInt(buffer);
+            if (roomLength < 0 || roomLength > buffer.remaining()) {
+                throw new StreamCorruptedException("Bad room name length: " + roomLength);
+            }
+            byte[] room = new byte[roomLength];
+            buffer.get(room);
+            String name = new String(room, StandardCharsets.US_ASCII);
+
+            switch (PeerMessage.Type.values()[type]) {
+                case FORWARD:
+                    return PeerMessage.forward(name, BinaryShapeCodec.decode(buffer));
+                case EVENT:
+                    return PeerMessage.event(name, buffer.getLong(), BinaryShapeCodec.decode(buffer));
+                case SYNC: {
+                    long sequence = buffer.getLong();
+                    return PeerMessage.sync(name, buffer.getLong(), sequence);
+                }
+                case SYNC_SHAPE:
+                    return PeerMessage.syncShape(name, BinaryShapeCodec.decode(buffer));
+                default:
+                    return PeerMessage.syncEnd(name);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new StreamCorruptedException("Truncated peer message");
+        }
+    }
+}
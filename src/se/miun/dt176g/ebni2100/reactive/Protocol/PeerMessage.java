@@ -0,0 +1,128 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+
+/**
+ * A message on the link between two server nodes, see {@link PeerCodec}.
+ *
+ * A follower forwards the shapes of its clients to the leader, which accepts them in one order per room and
+ * sends each as an event with the next sequence number of the room to every follower. When a follower
+ * links up, or a room is created, the leader syncs the follower with the whole state of the room: a sync,
+ * followed by one message per shape and open stroke of the room and the end of the sync. Each message is a
+ * frame of its own, so a room of any size can be synced.
+ */
+public final class PeerMessage {
+
+    /**
+     * Kinds of messages.
+     */
+    public enum Type {
+        /** A shape drawn by a client of a follower, sent to the leader. */
+        FORWARD,
+        /** A shape accepted by the leader, sent to the followers with its sequence number. */
+        EVENT,
+        /** The start of the state of a room up to a sequence number, sent to a follower. */
+        SYNC,
+        /** A shape or open stroke of the room being synced. */
+        SYNC_SHAPE,
+        /** The end of the state of the room being synced. */
+        SYNC_END
+    }
+
+    private final Type type;
+    private final String room;
+    private final long epoch;
+    private final long sequence;
+    private final Shape shape;
+
+    private PeerMessage(Type type, String room, long epoch, long sequence, Shape shape) {
+        this.type = type;
+        this.room = room;
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.shape = shape;
+    }
+
+    /**
+     * Creates a forwarded shape.
+     * @param room name of the room the shape was drawn in.
+     * @param shape the shape.
+     * @return message.
+     */
+    public static PeerMessage forward(String room, Shape shape) {
+        return new PeerMessage(Type.FORWARD, room, 0, 0, shape);
+    }
+
+    /**
+     * Creates an accepted shape.
+     * @param room name of the room.
+     * @param sequence sequence number of the shape in the room.
+     * @param shape the shape.
+     * @return message.
+     */
+    public static PeerMessage event(String room, long sequence, Shape shape) {
+        return new PeerMessage(Type.EVENT, room, 0, sequence, shape);
+    }
+
+    /**
+     * Creates the start of the state of a room.
+     * @param room name of the room.
+     * @param epoch epoch of the room's history.
+     * @param sequence sequence number of the last shape accepted in the room.
+     * @return message.
+     */
+    public static PeerMessage sync(String room, long epoch, long sequence) {
+        return new PeerMessage(Type.SYNC, room, epoch, sequence, null);
+    }
+
+    /**
+     * Creates a shape of the state of a room.
+     * @param room name of the room.
+     * @param shape shape of the join sequence of the room, see CanvasState.
+     * @return message.
+     */
+    public static PeerMessage syncShape(String room, Shape shape) {
+        return new PeerMessage(Type.SYNC_SHAPE, room, 0, 0, shape);
+    }
+
+    /**
+     * Creates the end of the state of a room.
+     * @param room name of the room.
+     * @return message.
+     */
+    public static PeerMessage syncEnd(String room) {
+        return new PeerMessage(Type.SYNC_END, room, 0, 0, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * Gets the epoch of the room's history.
+     * @return epoch, or 0 if not a sync.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Gets the sequence number.
+     * @return sequence number, or 0 if not an event or a sync.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the shape of a forwarded or accepted shape, or of a synced room.
+     * @return the shape, or null for the start and the end of a sync.
+     */
+    public Shape getShape() {
+        return shape;
+    }
+}
@@ -0,0 +1,97 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Sequenced;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+
+/**
+ * A shape together with its encoded frame in a wire format, so that a shape sent to many connections is
+ * only encoded once. The frame is encoded on first use and then shared, and must not be modified.
+ *
+ * A shape accepted in a room carries its sequence number in the room and the time it was accepted, shapes sent
+ * to a joining client do not.
+ */
+public final class ShapeFrame {
+
+    private final Shape shape;
+    private final WireFormat format;
+    private final long sequence;
+    private final long acceptedNanos;
+    private volatile byte[] bytes;
+
+    private ShapeFrame(Shape shape, WireFormat format, long sequence, byte[] bytes) {
+        this.shape = shape;
+        this.format = format;
+        this.sequence = sequence;
+        this.acceptedNanos = sequence > 0 ? System.nanoTime() : 0;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Wrap a shape, its frame is encoded when first needed.
+     * @param shape shape.
+     * @param format format of the frame.
+     * @return shape-frame.
+     */
+    public static ShapeFrame of(Shape shape, WireFormat format) {
+        return new ShapeFrame(shape, format, 0, null);
+    }
+
+    /**
+     * Wrap a shape and encode its frame right away.
+     * @param shape shape.
+     * @param format format of the frame.
+     * @return shape-frame.
+     */
+    public static ShapeFrame encode(Shape shape, WireFormat format) {
+        return encode(shape, format, 0);
+    }
+
+    /**
+     * Wrap a shape accepted in a room and encode its frame right away, stamped with its sequence number.
+     * @param shape shape.
+     * @param format format of the frame.
+     * @param sequence sequence number of the shape in its room.
+     * @return shape-frame.
+     */
+    public static ShapeFrame encode(Shape shape, WireFormat format, long sequence) {
+        Shape stamped = sequence > 0 ? new Sequenced(sequence, shape) : shape;
+        return new ShapeFrame(shape, format, sequence, format.encodeFrame(stamped));
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the sequence number of the shape in its room.
+     * @return sequence number, or 0 if the shape was not accepted as a new shape.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the time the shape was accepted in its room.
+     * @return time from {@link System#nanoTime()}, or 0 if the shape was not accepted as a new shape.
+     */
+    public long getAcceptedNanos() {
+        return acceptedNanos;
+    }
+
+    /**
+     * Gets the frame of the shape, including the length prefix and the sequence number.
+     * @return frame bytes, shared by all callers.
+     */
+    public byte[] getBytes() {
+        byte[] frame = bytes;
+        if (frame == null) {
+            frame = format.encodeFrame(shape);
+            bytes = frame;
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,22 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads shapes from a connection using a specific wire format.
+ */
+public interface ShapeInput extends Closeable {
+
+    /**
+     * Blocks until the next shape has been received.
+     *
+     * @return The received shape.
+     * @throws IOException If the stream was closed or the data could not be read.
+     *                     An EOFException indicates that the other side closed the connection.
+     * @throws ClassNotFoundException If the received shape-class is unknown.
+     */
+    Shape read() throws IOException, ClassNotFoundException;
+}
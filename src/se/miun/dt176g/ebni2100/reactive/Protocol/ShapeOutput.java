@@ -0,0 +1,31 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes shapes to a connection using a specific wire format.
+ */
+public interface ShapeOutput extends Closeable {
+
+    /**
+     * Writes a shape and flushes it to the underlying stream.
+     *
+     * @param shape Shape to be sent.
+     * @throws IOException If the shape could not be written.
+     */
+    void write(Shape shape) throws IOException;
+
+    /**
+     * Writes a shape that may already be encoded, and flushes it to the underlying stream. Outputs whose
+     * format matches the encoding write the shared bytes instead of encoding the shape again.
+     *
+     * @param frame Shape to be sent.
+     * @throws IOException If the shape could not be written.
+     */
+    default void write(ShapeFrame frame) throws IOException {
+        write(frame.getShape());
+    }
+}
@@ -0,0 +1,112 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Enum containing the available wire formats. Client and server must use the same format.
+ *
+ * Both formats send a header followed by length-prefixed frames, one per shape, so they can be read by the
+ * blocking and the non-blocking server alike.
+ */
+public enum WireFormat {
+
+    /** Java serialization of the shape objects, one object-stream per frame, see {@link JavaShapeCodec}. */
+    JAVA,
+
+    /** Compact, versioned binary encoding, see {@link BinaryShapeCodec}. */
+    BINARY;
+
+    // System property used to select the format when none is given explicitly.
+    public static final String PROPERTY = "reactive.wire";
+
+    /**
+     * Opens a shape-output for the given stream, and writes the stream header.
+     * @param outputStream stream to write to.
+     * @return shape-output.
+     * @throws IOException if the stream header could not be written.
+     */
+    public ShapeOutput newOutput(OutputStream outputStream) throws IOException {
+        return new FramedShapeOutput(outputStream, this);
+    }
+
+    /**
+     * Opens a shape-input for the given stream. Blocks until the stream header has been read.
+     * @param inputStream stream to read from.
+     * @return shape-input.
+     * @throws IOException if the stream header could not be read.
+     */
+    public ShapeInput newInput(InputStream inputStream) throws IOException {
+        return new FramedShapeInput(inputStream, this);
+    }
+
+    /**
+     * Gets the stream header.
+     * @return header bytes.
+     */
+    public byte[] header() {
+        return this == BINARY ? BinaryShapeCodec.header() : JavaShapeCodec.header();
+    }
+
+    /**
+     * Reads and verifies the stream header.
+     * @param in stream to read from.
+     * @throws IOException if the header is missing or wrong.
+     */
+    public void readHeader(InputStream in) throws IOException {
+        if (this == BINARY) {
+            BinaryShapeCodec.readHeader(in);
+        } else {
+            JavaShapeCodec.readHeader(in);
+        }
+    }
+
+    /**
+     * Verifies the stream header in a buffer.
+     * @param buffer buffer holding at least the length of the header.
+     * @throws StreamCorruptedException if the header is wrong.
+     */
+    public void readHeader(ByteBuffer buffer) throws StreamCorruptedException {
+        if (this == BINARY) {
+            BinaryShapeCodec.readHeader(buffer);
+        } else {
+            JavaShapeCodec.readHeader(buffer);
+        }
+    }
+
+    /**
+     * Encodes a shape as a complete frame, including the length prefix.
+     * @param shape shape to encode.
+     * @return frame bytes.
+     */
+    public byte[] encodeFrame(Shape shape) {
+        return this == BINARY ? BinaryShapeCodec.encodeFrame(shape) : JavaShapeCodec.encodeFrame(shape);
+    }
+
+    /**
+     * Decodes the body of a frame.
+     * @param buffer heap buffer positioned at the start of the body, limited to its end.
+     * @return decoded shape.
+     * @throws IOException if the body is malformed.
+     */
+    public Shape decode(ByteBuffer buffer) throws IOException {
+        return this == BINARY ? BinaryShapeCodec.decode(buffer) : JavaShapeCodec.decode(buffer);
+    }
+
+    /**
+     * Parse a format-name, case-insensitive.
+     * @param name name of the format, or null.
+     * @return matching format, or the format from the system property if name is null.
+     */
+    public static WireFormat parse(String name) {
+        if (name == null) {
+            name = System.getProperty(PROPERTY, JAVA.name());
+        }
+        return valueOf(name.trim().toUpperCase());
+    }
+}
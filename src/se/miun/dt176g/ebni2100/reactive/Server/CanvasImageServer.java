@@ -0,0 +1,125 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves images of the canvases of the rooms over HTTP, rendered by the {@link CanvasRaster} of each room,
+ * so the board can be seen without a client or a server frame:
+ *
+ * <pre>
+ * GET /rooms                                  names of the rooms and the number of shapes on each canvas
+ * GET /rooms/{room}.png                       the 1000x800 canvas
+ * GET /rooms/{room}/tiles/{zoom}/{x}/{y}.png  a 256x256 tile of it, zoom 2 is a thumbnail of the canvas
+ * </pre>
+ *
+ * The images only cover the {@link CanvasRaster#WIDTH} by {@link CanvasRaster#HEIGHT} canvas of the client
+ * window. Shapes drawn outside it, at negative coordinates or past the edges, are clipped, and tiles
+ * outside it are not found.
+ *
+ * Requests are served one at a time, and only rooms that clients have joined are shown.
+ */
+public class CanvasImageServer {
+
+    private static final Pattern CANVAS = Pattern.compile("/rooms/([^/]+)\\.png");
+    private static final Pattern TILE = Pattern.compile("/rooms/([^/]+)/tiles/(\\d{1,2})/(\\d{1,4})/(\\d{1,4})\\.png");
+
+    private final RoomRegistry rooms;
+    private final HttpServer server;
+
+    /**
+     * Create the server.
+     * @param rooms rooms of the server.
+     * @param port port to listen on.
+     * @throws IOException if the port could not be bound.
+     */
+    public CanvasImageServer(RoomRegistry rooms, int port) throws IOException {
+        this.rooms = rooms;
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/rooms", this::handle);
+    }
+
+    /**
+     * Start serving requests on a thread of the server.
+     */
+    public void start() {
+        server.start();
+        System.out.println("Serving canvas images on port " + server.getAddress().getPort());
+    }
+
+    /**
+     * Stop serving, waiting at most a second for requests being served.
+     */
+    public void close() {
+        server.stop(1);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respondText(exchange, 405, "Only GET is supported");
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/rooms") || path.equals("/rooms/")) {
+                StringBuilder list = new StringBuilder();
+                for (Room room : rooms.getRooms()) {
+                    if (list.length() > 0) {
+                        list.append('\n');
+                    }
+                    list.append(room.getName()).append(' ').append(room.size());
+                }
+                respondText(exchange, 200, list.toString());
+                return;
+            }
+            Matcher canvas = CANVAS.matcher(path);
+            Matcher tile = TILE.matcher(path);
+            Room room = canvas.matches() ? rooms.find(canvas.group(1))
+                    : tile.matches() ? rooms.find(tile.group(1))
+                    : null;
+            if (room == null) {
+                respondText(exchange, 404, "No image at " + path);
+                return;
+            }
+            byte[] png;
+            if (canvas.matches()) {
+                png = room.getRaster().png().blockingGet();
+            } else {
+                try {
+                    png = room.getRaster().tile(Integer.parseInt(tile.group(2)), Integer.parseInt(tile.group(3)),
+                            Integer.parseInt(tile.group(4))).blockingGet();
+                } catch (IllegalArgumentException e) {
+                    respondText(exchange, 404, e.getMessage());
+                    return;
+                }
+            }
+            respond(exchange, 200, "image/png", png);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            respondText(exchange, 500, "Could not render the canvas");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respondText(HttpExchange exchange, int status, String text) throws IOException {
+        respond(exchange, status, "text/plain", (text + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import se.miun.dt176g.ebni2100.reactive.Client.CanvasImage;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeFrame;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * The canvas of a room rendered into an image with the same drawing code as the clients, without Swing.
+ *
+ * The image is brought up to date incrementally: the shapes of a canvas are only ever appended until it is
+ * cleared, so only the shapes added since the last render are drawn, and the image is only redrawn from
+ * scratch after a clear. Rendering and encoding run on a scheduler of their own, never on the shard of the
+ * room, and read the canvas through its lock-free view.
+ *
+ * After every render for joining clients the image is encoded once as a PNG with a transparent background.
+ * A client joining the room is sent that image followed by only the shapes added after it, see
+ * {@link Room#join}. PNG snapshots and tiles for viewers are drawn over white, see {@link CanvasImageServer}.
+ *
+ * The image covers the 1000x800 canvas of the client window, shapes outside it are clipped.
+ */
+public class CanvasRaster {
+
+    public static final int WIDTH = 1000;
+    public static final int HEIGHT = 800;
+
+    // Width and height of a tile, and the zoom level at which one tile covers the whole canvas.
+    public static final int TILE_SIZE = 256;
+    public static final int MAX_ZOOM = 2;
+
+    /**
+     * An encoded image of the first shapes of a canvas, as sent to joining clients. Immutable.
+     */
+    public static final class Snapshot {
+        private final List<Shape> shapes;
+        private final ShapeFrame frame;
+
+        private Snapshot(List<Shape> shapes, ShapeFrame frame) {
+            this.shapes = shapes;
+            this.frame = frame;
+        }
+
+        /**
+         * Checks if the image shows the first shapes of a canvas, i.e. it was not cleared since.
+         * @param canvas shapes of the canvas.
+         * @return true if the canvas continues the shapes in the image.
+         */
+        public boolean covers(List<Shape> canvas) {
+            int last = shapes.size() - 1;
+            return last >= 0 && canvas.size() > last && canvas.get(0) == shapes.get(0)
+                    && canvas.get(last) == shapes.get(last);
+        }
+
+        /**
+         * Gets the number of shapes in the image.
+         * @return number of shapes.
+         */
+        public int getShapeCount() {
+            return shapes.size();
+        }
+
+        /**
+         * Gets the image as a frame for the clients of the room.
+         * @return frame of a {@link CanvasImage}, encoded when first sent.
+         */
+        public ShapeFrame getFrame() {
+            return frame;
+        }
+    }
+
+    private final Supplier<List<Shape>> canvas;
+    private final Scheduler renderer;
+    private final WireFormat wireFormat;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private volatile Snapshot latest;
+
+    // Only used on the renderer.
+    private BufferedImage image;
+    private List<Shape> rendered = Collections.emptyList();
+
+    /**
+     * Create the raster of a canvas. Nothing is rendered until asked for.
+     * @param canvas gives the current shapes of the canvas, from any thread.
+     * @param renderer scheduler that renders and encodes the image, runs one task at a time.
+     * @param wireFormat format of the frames sent to joining clients.
+     */
+    public CanvasRaster(Supplier<List<Shape>> canvas, Scheduler renderer, WireFormat wireFormat) {
+        this.canvas = canvas;
+        this.renderer = renderer;
+        this.wireFormat = wireFormat;
+    }
+
+    /**
+     * Gets the latest image for joining clients.
+     * @return latest snapshot, or null if none was made.
+     */
+    public Snapshot getLatest() {
+        return latest;
+    }
+
+    /**
+     * Renders the shapes added since the last render and encodes a new snapshot for joining clients, on the
+     * renderer. Does nothing if a refresh is already waiting, so callers may ask for it often. Never blocks.
+     */
+    public void refresh() {
+        if (refreshQueued.compareAndSet(false, true)) {
+            renderer.scheduleDirect(() -> {
+                refreshQueued.set(false);
+                try {
+                    List<Shape> shapes = render();
+                    if (!shapes.isEmpty()) {
+                        CanvasImage canvasImage = new CanvasImage(0, 0, WIDTH, HEIGHT, encode(image));
+                        latest = new Snapshot(shapes, ShapeFrame.of(canvasImage, wireFormat));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Renders the current canvas over white as a PNG, on the renderer.
+     * @return PNG bytes.
+     */
+    public Single<byte[]> png() {
+        return renderOverWhite(1, 0, 0, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Renders a square tile of the current canvas over white as a PNG, on the renderer. At zoom level 0 a
+     * tile shows {@value #TILE_SIZE} pixels of the canvas, and every level up halves the scale, so at
+     * {@value #MAX_ZOOM} one tile holds a thumbnail of the whole canvas.
+     * @param zoom zoom level, between 0 and {@value #MAX_ZOOM}.
+     * @param column column of the tile, counted from the left.
+     * @param row row of the tile, counted from the top.
+     * @return PNG bytes.
+     * @throws IllegalArgumentException if the tile is outside the canvas.
+     */
+    public Single<byte[]> tile(int zoom, int column, int row) {
+        int span = TILE_SIZE << zoom;
+        if (zoom < 0 || zoom > MAX_ZOOM || column < 0 || row < 0 || column * span >= WIDTH
+                || row * span >= HEIGHT) {
+            throw new IllegalArgumentException("No tile " + zoom + "/" + column + "/" + row);
+        }
+        return renderOverWhite(1 << zoom, column * span, row * span, TILE_SIZE, TILE_SIZE);
+    }
+
+    /**
+     * Renders an area of the current canvas, scaled down, over white as a PNG, on the renderer.
+     * @param divisor the scale is 1 divided by this.
+     * @param x left edge of the area on the canvas.
+     * @param y top edge of the area on the canvas.
+     * @param width width of the image.
+     * @param height height of the image.
+     * @return PNG bytes.
+     */
+    private Single<byte[]> renderOverWhite(int divisor, int x, int y, int width, int height) {
+        return Single.fromCallable(() -> {
+            render();
+            BufferedImage tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = tile.createGraphics();
+            try {
+                g2.setColor(Color.WHITE);
+                g2.fillRect(0, 0, width, height);
+                if (divisor > 1) {
+                    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    g2.scale(1.0 / divisor, 1.0 / divisor);
+                }
+                g2.drawImage(image, -x, -y, null);
+            } finally {
+                g2.dispose();
+            }
+            return encode(tile);
+        }).subscribeOn(renderer);
+    }
+
+    /**
+     * Brings the image up to date with the canvas. Only called on the renderer.
+     * @return the shapes in the image.
+     */
+    private List<Shape> render() {
+        List<Shape> shapes = canvas.get();
+        int from = rendered.size();
+        if (image == null || !continues(rendered, shapes)) {
+            image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            from = 0;
+        }
+        if (from < shapes.size()) {
+            Graphics2D g2 = image.createGraphics();
+            try {
+                for (int i = from; i < shapes.size(); i++) {
+                    shapes.get(i).draw(g2);
+                }
+            } finally {
+                g2.dispose();
+            }
+        }
+        rendered = shapes;
+        return shapes;
+    }
+
+    /**
+     * Checks if a list of shapes starts with all shapes of an earlier list. Lists of a canvas are only
+     * appended to until it is cleared, so comparing the first and last shape is enough.
+     */
+    private static boolean continues(List<Shape> earlier, List<Shape> later) {
+        if (earlier.isEmpty()) {
+            return true;
+        }
+        int last = earlier.size() - 1;
+        return later.size() > last && later.get(0) == earlier.get(0) && later.get(last) == earlier.get(last);
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        if (!ImageIO.write(image, "png", out)) {
+            throw new IOException("No PNG writer");
+        }
+        return out.toByteArray();
+    }
+}
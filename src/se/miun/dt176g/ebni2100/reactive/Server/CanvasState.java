@@ -0,0 +1,165 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Clear;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.ShapeGrid;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Viewport;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the state of the canvas on the server.
+ *
+ * The history is compacted at every clear-command, since nothing drawn before it is visible any more.
+ * A joining client is sent the shapes drawn since the last clear, read from a consistent view of the canvas.
+ * That view is taken from the lock-free {@link ChunkedShapeList} in {@link #joinSequence()} without copying,
+ * so it replaces the snapshots the canvas used to freeze every few shapes.
+ *
+ * Strokes that are still being drawn are assembled from their parts, and only added to the canvas as a
+ * freehand when they end. A joining client is sent the open strokes after the canvas, so it can render
+ * the rest of them.
+ *
+ * Shapes are kept in a {@link ChunkedShapeList}. Applying shapes must be synchronized by the caller,
+ * while {@link #getShapes()} may be called from any thread without locking.
+ *
+ * For clients that only see part of the canvas, the shapes are also indexed by the tiles of
+ * {@link Viewport} their bounds touch. The index is built when first asked for, so canvases only watched
+ * whole do not pay for it. Like applying shapes, it must be synchronized by the caller.
+ */
+public class CanvasState {
+
+    // All shapes on the canvas, in drawing order. Replaced by an empty list at a clear-command.
+    private volatile ChunkedShapeList shapes = new ChunkedShapeList();
+
+    // Strokes being drawn, by stroke-id, in the order they began.
+    private final Map<Long, Freehand> openStrokes = new LinkedHashMap<>();
+
+    // Shapes by the tiles they touch, or null until a part of the canvas is asked for.
+    private ShapeGrid tiles;
+
+    /**
+     * Apply a shape received from a client.
+     * @param shape the shape, a clear-command empties the canvas and drops the history.
+     * @return the shape that changed the canvas, which is the finished freehand for the end of a stroke,
+     *         or null if the canvas was not changed.
+     */
+    public Shape apply(Shape shape) {
+        if (shape instanceof StrokeDelta) {
+            return applyStrokeDelta((StrokeDelta) shape);
+        }
+        if (shape instanceof Clear) {
+            shapes = new ChunkedShapeList();
+            tiles = null;
+            return shape;
+        }
+
+        shapes.add(shape);
+        if (tiles != null) {
+            tiles.add(shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Grow an open stroke, and add it to the canvas when it ends. Parts of unknown strokes are ignored.
+     * @param delta part of a stroke.
+     * @return the finished freehand at the end of a stroke, otherwise null.
+     */
+    private Shape applyStrokeDelta(StrokeDelta delta) {
+        Long id = delta.getStrokeId();
+        switch (delta.getPhase()) {
+            case BEGIN:
+                openStrokes.put(id, delta.toFreehand());
+                return null;
+            case APPEND: {
+                Freehand freehand = openStrokes.get(id);
+                if (freehand != null) {
+                    delta.appendTo(freehand);
+                }
+                return null;
+            }
+            default: {
+                Freehand freehand = openStrokes.remove(id);
+                return freehand != null ? apply(freehand) : null;
+            }
+        }
+    }
+
+    /**
+     * Gets the shapes a joining client needs: the shapes on the canvas, and the beginning of every open
+     * stroke.
+     * @return shapes in drawing order.
+     */
+    public List<Shape> joinSequence() {
+        List<Shape> all = shapes.snapshot();
+        if (openStrokes.isEmpty()) {
+            return all;
+        }
+        List<Shape> sequence = new ArrayList<>(all.size() + openStrokes.size());
+        sequence.addAll(all);
+        openStrokes.forEach((id, freehand) -> sequence.add(StrokeDelta.begin(id, freehand)));
+        return sequence;
+    }
+
+    /**
+     * Gets the shapes a client that only sees part of the canvas needs: the shapes whose bounds touch the
+     * area, and the beginning of every open stroke that touches it so far.
+     * @param area area of the canvas, aligned to tiles.
+     * @return shapes in drawing order.
+     */
+    public List<Shape> joinSequence(Rectangle area) {
+        if (tiles == null) {
+            tiles = new ShapeGrid(Viewport.TILE_SIZE);
+            for (Shape shape : shapes.snapshot()) {
+                tiles.add(shape);
+            }
+        }
+        List<Shape> sequence = tiles.query(area);
+        openStrokes.forEach((id, freehand) -> {
+            if (freehand.getPointCount() > 0 && freehand.intersects(area)) {
+                sequence.add(StrokeDelta.begin(id, freehand));
+            }
+        });
+        return sequence;
+    }
+
+    /**
+     * Gets a stroke that is being drawn.
+     * @param strokeId id of the stroke.
+     * @return the stroke drawn so far, or null if it is not open.
+     */
+    public Freehand getOpenStroke(long strokeId) {
+        return openStrokes.get(strokeId);
+    }
+
+    /**
+     * Gets the strokes that are being drawn.
+     * @return unmodifiable view of the strokes drawn so far, by stroke-id, in the order they began.
+     */
+    public Map<Long, Freehand> getOpenStrokes() {
+        return Collections.unmodifiableMap(openStrokes);
+    }
+
+    /**
+     * Gets a consistent view of all shapes on the canvas. Safe to call from any thread.
+     * @return immutable list of shapes.
+     */
+    public List<Shape> getShapes() {
+        return shapes.snapshot();
+    }
+
+    /**
+     * Gets the number of shapes on the canvas.
+     * @return number of shapes.
+     */
+    public int size() {
+        return shapes.size();
+    }
+}
@@ -0,0 +1,89 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only list of shapes for one writer and any number of lock-free readers.
+ *
+ * Shapes are stored in fixed-size chunks that are never moved, so appending never copies earlier shapes.
+ * The writer stores a shape before publishing the new length through a volatile field, so a reader that
+ * reads the length sees every shape below it. {@link #snapshot()} captures the length once, giving a
+ * consistent, immutable view that later appends do not change.
+ */
+public class ChunkedShapeList {
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Directory of chunks, replaced by a larger copy when full. Chunks are shared between copies.
+    private volatile Shape[][] chunks = new Shape[4][];
+    private volatile int size;
+
+    /**
+     * Append a shape. Must only be called by one thread at a time.
+     * @param shape shape to append.
+     */
+    public void add(Shape shape) {
+        int index = size;
+        int chunk = index >>> CHUNK_SHIFT;
+        Shape[][] directory = chunks;
+        if (chunk == directory.length) {
+            directory = Arrays.copyOf(directory, directory.length * 2);
+            chunks = directory;
+        }
+        if (directory[chunk] == null) {
+            directory[chunk] = new Shape[CHUNK_SIZE];
+        }
+        directory[chunk][index & CHUNK_MASK] = shape;
+        size = index + 1; // Publish.
+    }
+
+    /**
+     * Gets the number of published shapes.
+     * @return number of shapes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets an immutable view of the shapes published so far. Safe to call from any thread.
+     * @return view of the shapes.
+     */
+    public List<Shape> snapshot() {
+        int length = size;
+        return new Snapshot(chunks, length);
+    }
+
+    /**
+     * Immutable view of the first shapes of the list.
+     */
+    private static class Snapshot extends AbstractList<Shape> implements RandomAccess {
+        private final Shape[][] chunks;
+        private final int length;
+
+        Snapshot(Shape[][] chunks, int length) {
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        @Override
+        public Shape get(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+            }
+            return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+}
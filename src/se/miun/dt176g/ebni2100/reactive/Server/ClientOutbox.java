@@ -0,0 +1,216 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Oval;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.StraightLine;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeFrame;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded queue of shapes waiting to be sent to one client.
+ *
+ * Shapes are offered by the thread emitting to shapeSubject, which never blocks, and taken by a single
+ * drainer that writes them to the client. When a client falls more than the capacity behind, the
+ * {@link SlowConsumerPolicy} decides what happens. Shapes replayed when the client subscribes, and
+ * snapshots, do not count against the capacity. Shapes are queued as {@link ShapeFrame}s, so the bytes of
+ * a shape sent to every client are shared.
+ */
+public class ClientOutbox {
+
+    /**
+     * What to do when a client's queue is full.
+     */
+    public enum SlowConsumerPolicy {
+        /**
+         * Drop the oldest queued shape to make room for the new one. Only drawn shapes are dropped, never
+         * clear-commands, room joins or stroke parts. If only those are queued, the queue is replaced by a
+         * snapshot like with {@link #SNAPSHOT}.
+         */
+        DROP_OLDEST,
+        /** Replace the queue with a snapshot of the current canvas. */
+        SNAPSHOT,
+        /** Disconnect the client. */
+        DISCONNECT
+    }
+
+    private final int capacity;
+    private final SlowConsumerPolicy policy;
+    private final Supplier<List<ShapeFrame>> snapshotSupplier;
+    private final Consumer<ClientOutbox> onReady;
+    private final Consumer<ClientOutbox> onOverflowDisconnect;
+
+    private final ArrayDeque<ShapeFrame> unbounded = new ArrayDeque<>(); // Replayed or snapshot shapes, sent first.
+    private final ArrayDeque<ShapeFrame> live = new ArrayDeque<>();
+    private boolean replaying;
+    private boolean draining;
+    private boolean closed;
+    private long dropped;
+
+    /**
+     * Create an outbox.
+     * @param capacity maximum number of live shapes queued.
+     * @param policy policy applied when the queue is full.
+     * @param snapshotSupplier gives the current canvas, starting with a clear. Called while shapes are emitted.
+     * @param onReady called when shapes became available and no drainer is active, should start a drainer.
+     *                Must not block.
+     * @param onOverflowDisconnect called when the client should be disconnected.
+     */
+    public ClientOutbox(int capacity, SlowConsumerPolicy policy, Supplier<List<ShapeFrame>> snapshotSupplier,
+                        Consumer<ClientOutbox> onReady, Consumer<ClientOutbox> onOverflowDisconnect) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.snapshotSupplier = snapshotSupplier;
+        this.onReady = onReady;
+        this.onOverflowDisconnect = onOverflowDisconnect;
+    }
+
+    /**
+     * Mark that the following shapes are replayed history, which is not bounded.
+     */
+    public synchronized void beginReplay() {
+        replaying = true;
+    }
+
+    /**
+     * Mark the end of the replayed history.
+     */
+    public synchronized void endReplay() {
+        replaying = false;
+    }
+
+    /**
+     * Queue a shape for the client. Never blocks.
+     * @param shape shape to be sent.
+     */
+    public void offer(ShapeFrame shape) {
+        boolean ready;
+        boolean disconnect = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (replaying) {
+                unbounded.add(shape);
+            } else if (live.size() < capacity) {
+                live.add(shape);
+            } else {
+                dropped++;
+                switch (policy) {
+                    case DROP_OLDEST:
+                        if (removeOldestDrawnShape()) {
+                            live.add(shape);
+                        } else {
+                            replaceWithSnapshot();
+                        }
+                        break;
+                    case SNAPSHOT:
+                        replaceWithSnapshot();
+                        break;
+                    case DISCONNECT:
+                    default:
+                        closed = true;
+                        unbounded.clear();
+                        live.clear();
+                        disconnect = true;
+                        break;
+                }
+            }
+            ready = !draining && depthNow() > 0;
+            if (ready) {
+                draining = true;
+            }
+        }
+        if (disconnect) {
+            onOverflowDisconnect.accept(this);
+        } else if (ready) {
+            onReady.accept(this);
+        }
+    }
+
+    /**
+     * Take the next shape. Only called by the active drainer.
+     * @return next shape, or null if the queue is empty, in which case the drainer must stop.
+     */
+    public ShapeFrame poll() {
+        ShapeFrame shape;
+        boolean fromLive;
+        synchronized (this) {
+            fromLive = unbounded.isEmpty();
+            shape = fromLive ? live.poll() : unbounded.poll();
+            if (shape == null) {
+                draining = false;
+                return null;
+            }
+        }
+        if (fromLive) {
+            ServerMetrics.taken(shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Stop queueing shapes, for example when the client disconnected.
+     */
+    public synchronized void close() {
+        closed = true;
+        unbounded.clear();
+        live.clear();
+    }
+
+    /**
+     * Gets the number of queued shapes.
+     * @return queue depth.
+     */
+    public synchronized int depth() {
+        return depthNow();
+    }
+
+    /**
+     * Gets the number of shapes that were dropped or coalesced because the client was too slow.
+     * @return dropped shapes.
+     */
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Remove the oldest queued shape that can be dropped without breaking the state of the client.
+     * @return false if only clear-commands, room joins and stroke parts are queued.
+     */
+    private boolean removeOldestDrawnShape() {
+        Iterator<ShapeFrame> queued = live.iterator();
+        while (queued.hasNext()) {
+            if (isDrawnShape(queued.next().getShape())) {
+                queued.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDrawnShape(Shape shape) {
+        return shape instanceof Rectangle || shape instanceof Oval || shape instanceof StraightLine
+                || shape instanceof Freehand;
+    }
+
+    /**
+     * Replace everything queued with a snapshot, which already contains the offered shape.
+     */
+    private void replaceWithSnapshot() {
+        dropped += live.size() - 1;
+        unbounded.clear();
+        live.clear();
+        unbounded.addAll(snapshotSupplier.get());
+    }
+
+    private int depthNow() {
+        return unbounded.size() + live.size();
+    }
+}
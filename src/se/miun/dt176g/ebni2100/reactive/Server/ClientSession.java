@@ -0,0 +1,191 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import se.miun.dt176g.ebni2100.reactive.Client.CanvasImage;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Sequenced;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Viewport;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeFrame;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A connected client and the room it draws in, shared by the blocking and the non-blocking engine.
+ *
+ * The client joins a room with its first shape, a join-room command, or the default room if it starts
+ * drawing without one. A client that reconnects resumes the room where it left off. Its freehand strokes
+ * are simplified before they are accepted, if enabled, and the strokes it left open are ended when it
+ * disconnects. A client may only add to and end the strokes it began itself. A client may send its viewport at any time, before joining or while drawing, to only be sent
+ * the shapes on the tiles it sees. Only used by the thread reading from the client.
+ */
+public class ClientSession {
+
+    private final RoomRegistry registry;
+    private final StrokeSimplifier simplifier;
+    private final Set<Long> openStrokes = new HashSet<>();
+    private ClientOutbox outbox;
+    private Room room;
+    private Single<Disposable> subscription;
+    private volatile Disposable membership; // Subscription once joined, read on the shard for snapshots.
+    private Viewport viewport;
+
+    // Shapes handed to the room but not yet accepted, used by the non-blocking engine to bound them.
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Create a session.
+     * @param registry rooms of the server.
+     * @param simplifyTolerance tolerance of freehand simplification, or 0 if strokes are not simplified.
+     */
+    public ClientSession(RoomRegistry registry, double simplifyTolerance) {
+        this.registry = registry;
+        this.simplifier = simplifyTolerance > 0 ? new StrokeSimplifier(simplifyTolerance) : null;
+    }
+
+    /**
+     * Sets the send-queue of the client. Must be called before the first shape is received.
+     * @param outbox the client's send-queue.
+     */
+    public void setOutbox(ClientOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    /**
+     * Handles a shape received from the client.
+     * @param shape the received shape.
+     * @return position in the shape log after the shape once it is accepted, or 0 if nothing was logged.
+     * @throws IOException if the client picked an invalid room, a new room past the maximum, or a room after it
+     * started drawing, or sent a stamped shape or an image of the canvas.
+     */
+    public Single<Integer> receive(Shape shape) throws IOException {
+        if (shape instanceof JoinRoom) {
+            String name = ((JoinRoom) shape).getRoom();
+            if (room != null) {
+                throw new InvalidObjectException("Already in room " + room.getName() + ", cannot join " + name);
+            }
+            if (!JoinRoom.isValidName(name)) {
+                throw new InvalidObjectException("Invalid room name: " + name);
+            }
+            Room joined;
+            try {
+                joined = registry.join(name);
+            } catch (IllegalStateException e) {
+                throw new InvalidObjectException(e.getMessage());
+            }
+            join(joined, (JoinRoom) shape);
+            return Single.just(0);
+        }
+        if (shape instanceof Viewport) {
+            Viewport moved = (Viewport) shape;
+            viewport = moved;
+            if (room != null) {
+                Room in = room;
+                subscription.flatMapCompletable(member -> in.setViewport(member, moved))
+                        .subscribe(() -> {}, Throwable::printStackTrace);
+            }
+            return Single.just(0);
+        }
+        if (shape instanceof Sequenced) {
+            throw new InvalidObjectException("Only the server stamps sequence numbers");
+        }
+        if (shape instanceof CanvasImage) {
+            throw new InvalidObjectException("Only the server sends images of the canvas");
+        }
+        if (room == null) {
+            join(registry.getDefault(), new JoinRoom(JoinRoom.DEFAULT_ROOM));
+        }
+        if (!trackStroke(shape)) {
+            return Single.just(0);
+        }
+        if (simplifier != null) {
+            shape = simplifier.simplify(shape);
+        }
+        return room.accept(shape);
+    }
+
+    private void join(Room room, JoinRoom request) {
+        this.room = room;
+        subscription = room.join(outbox, request, viewport).cache();
+        subscription.subscribe(dp -> membership = dp, Throwable::printStackTrace);
+    }
+
+    /**
+     * Keeps track of the strokes the client has begun but not ended. Parts of strokes the client did not
+     * begin, and the beginning of a stroke another client in the room is drawing with the same id, are
+     * dropped.
+     * @param shape shape received from the client.
+     * @return false if the shape is to be dropped.
+     */
+    private boolean trackStroke(Shape shape) {
+        if (!(shape instanceof StrokeDelta)) {
+            return true;
+        }
+        StrokeDelta delta = (StrokeDelta) shape;
+        Long id = delta.getStrokeId();
+        switch (delta.getPhase()) {
+            case BEGIN:
+                if (!room.claimStroke(id, this)) {
+                    return false;
+                }
+                openStrokes.add(id);
+                return true;
+            case APPEND:
+                return openStrokes.contains(id);
+            default:
+                if (!openStrokes.remove(id)) {
+                    return false;
+                }
+                room.releaseStroke(id, this);
+                return true;
+        }
+    }
+
+    /**
+     * Ends the strokes the client left open, so that they are stored and no longer drawn as being in
+     * progress, and leaves the room. Called once the client disconnected.
+     */
+    public void close() {
+        if (room == null) {
+            return;
+        }
+        for (Long id : openStrokes) {
+            room.accept(StrokeDelta.end(id)).subscribe(position -> {}, Throwable::printStackTrace);
+            room.releaseStroke(id, this);
+        }
+        openStrokes.clear();
+        Room left = room;
+        subscription.flatMapCompletable(left::leave).subscribe(() -> {}, Throwable::printStackTrace);
+    }
+
+    /**
+     * Gets the current canvas of the client's room, see {@link Room#snapshot}.
+     * @return snapshot of the canvas.
+     */
+    public List<ShapeFrame> snapshot() {
+        return room.snapshot(membership);
+    }
+
+    /**
+     * Gets the room of the client.
+     * @return the room, or null if the client has not joined one yet.
+     */
+    public Room getRoom() {
+        return room;
+    }
+
+    /**
+     * Gets the counter of shapes handed to the room but not yet accepted.
+     * @return counter.
+     */
+    AtomicInteger getPending() {
+        return pending;
+    }
+}
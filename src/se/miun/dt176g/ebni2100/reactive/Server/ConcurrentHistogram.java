@@ -0,0 +1,110 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in microseconds that many threads record into at once, with buckets that grow with
+ * the value so every recorded value is off by at most 1/64 of it. Uses the same buckets as the histogram of
+ * the load generator.
+ *
+ * Recording does not allocate and takes no lock. Reading walks the buckets while they are recorded into, so
+ * a summary may miss the values recorded meanwhile.
+ */
+public class ConcurrentHistogram {
+
+    // Values below this are counted exactly, above it in 64 buckets per power of two.
+    private static final int LINEAR = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int MAX_SHIFT = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + MAX_SHIFT * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     * @param micros duration in microseconds, negative values count as 0.
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long previous = max.get();
+        while (value > previous && !max.compareAndSet(previous, value)) {
+            previous = max.get();
+        }
+    }
+
+    /**
+     * Records the time passed since a start time.
+     * @param startNanos start time from {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Forgets all recorded durations, to start a new measurement.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Summarizes the recorded durations.
+     * @return count, mean, percentiles and maximum in microseconds.
+     */
+    public ServerMetricsMXBean.Summary summarize() {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long highest = max.get();
+        double mean = total == 0 ? 0 : (double) sum.get() / count.get();
+        return new ServerMetricsMXBean.Summary(total, mean, percentile(snapshot, total, highest, 0.5),
+                percentile(snapshot, total, highest, 0.99), percentile(snapshot, total, highest, 0.999), highest);
+    }
+
+    private static long percentile(long[] counts, long total, long max, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highestOf(i));
+            }
+        }
+        return max;
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = Math.min(MAX_SHIFT, 63 - Long.numberOfLeadingZeros(value) - 6);
+        long sub = Math.min(2 * SUB_BUCKETS - 1, value >>> shift);
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (sub - SUB_BUCKETS);
+    }
+
+    private static long highestOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
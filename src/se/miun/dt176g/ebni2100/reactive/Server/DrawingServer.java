@@ -1,24 +1,30 @@
 package se.miun.dt176g.ebni2100.reactive.Server;
 
 import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
+import javax.management.JMException;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.rxjava3.disposables.Disposable;
-import io.reactivex.rxjava3.subjects.ReplaySubject;
-import se.miun.dt176g.ebni2100.reactive.Client.Clear;
 import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeFrame;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeInput;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeOutput;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
 
 /**
  * Represents the server that facilitates communication between clients, allowing them to share and draw
@@ -27,26 +33,59 @@ import se.miun.dt176g.ebni2100.reactive.Client.Shape;
  * This class initializes a server socket, manages client connections, and handles the communication of
  * shapes between the server and connected clients.
  *
- * The server maintains a list of shapes received from clients and uses a ReplaySubject to buffer and emit
- * shapes to subscribers. Each connected client has its own output stream to receive shapes from the server.
+ * Clients draw in named rooms, picked when they connect. Each room keeps its canvas in a CanvasState,
+ * which is compacted at every clear-command, and uses a PublishSubject to emit new shapes to the clients in
+ * the room. A joining client is sent the shapes on the canvas, or only those it missed when it reconnects.
+ * Rooms are served by a fixed set of shard threads, see {@link RoomRegistry}. Each connected client has its
+ * own output stream to receive shapes from the server. The server-frame shows the default room, unless the
+ * server runs headless.
+ *
+ * Several servers can form a cluster, so clients can connect to any of them. One leads and orders the shapes
+ * of every room, the others follow it, see {@link ReplicationLeader} and {@link ReplicationFollower}.
+ *
+ * Freehand strokes arrive in parts while they are drawn. The parts are forwarded to all clients as they
+ * arrive, and the stroke is stored as one freehand when it ends. Strokes left open by a client that
+ * disconnects are ended by the server.
+ *
+ * Clients joining a large canvas are sent an image of it followed by the shapes drawn since, and the images
+ * can also be fetched over HTTP, see {@link CanvasRaster} and {@link CanvasImageServer}.
  *
  * It also provides methods to send shapes to clients, observe the stream of
- * shapes, and perform cleanup when clients disconnect.
+ * shapes, and perform cleanup when clients disconnect. Measurements of the server, like the rate of shapes
+ * and how long they take to reach the clients, are published over JMX, see {@link ServerMetrics}.
  *
  * @author Ebba Nimér
  */
 public class DrawingServer {
 
-    // List to store shapes received from clients
-    private static final List<Shape> shapes = new ArrayList<>();
-
-    // Use ReplaySubject to buffer emitted shapes.
-    private static final ReplaySubject<Shape> shapesSubject = ReplaySubject.create();
+    // Rooms built from the shapes received from clients.
+    private static RoomRegistry rooms;
     private static ServerDrawingFrame serverMainFrame;
+    private static ServerMetrics metrics;
+
+    // Format used to send and receive shapes, must match the clients.
+    private static WireFormat wireFormat = WireFormat.JAVA;
+
+    // Containers holding shape-outputs to each client, and the session of each nio-connection.
+    private static final ConcurrentMap<Socket, ShapeOutput> outputStreams = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<NioConnection, ClientSession> nioSessions = new ConcurrentHashMap<>();
+
+    // Tolerance of freehand simplification in multiples of the stroke thickness, 0 if not simplified.
+    private static double simplifyTolerance;
 
-    // Containers holding output-streams and disposables to each client.
-    private static final ConcurrentMap<Socket, ObjectOutputStream> outputStreams = new ConcurrentHashMap<>();
-    private static final ConcurrentMap<Socket, Disposable> disposableMap = new ConcurrentHashMap<>();
+    // Bounded send-queue of each client, keyed by the client address.
+    private static final ConcurrentMap<SocketAddress, ClientOutbox> outboxes = new ConcurrentHashMap<>();
+    private static int queueCapacity = 1024;
+    private static ClientOutbox.SlowConsumerPolicy slowConsumerPolicy = ClientOutbox.SlowConsumerPolicy.SNAPSHOT;
+
+    // Maximum number of encoded frames handed to a nio-connection before waiting for it to drain.
+    private static final int NIO_FRAMES_IN_FLIGHT = 16;
+
+    // Maximum number of shapes read from a nio-connection before waiting for its room to accept them.
+    private static final int NIO_SHAPES_IN_FLIGHT = 64;
+
+    // Runs the blocking reader and writer of each client, the io-scheduler or virtual threads.
+    private static Scheduler clientScheduler = Schedulers.io();
 
     // Keep track on all disposables.
     static CompositeDisposable compositeDisposable = new CompositeDisposable();
@@ -55,25 +94,62 @@ public class DrawingServer {
      * Handles the main logic for client connections, setting up the server socket,
      * and initiating the handling of client connections.
      *
-     * @param args Command-line arguments.
+     * @param args Command-line arguments, see {@link ServerConfig}.
      * @throws IOException If an I/O error occurs while setting up the server socket.
      */
     public static void main(String[] args) throws IOException {
-        int portNumber = 12345;
-        ServerSocket serverSocket = new ServerSocket(portNumber);
-        System.out.println("Server is running. Waiting for client connections...");
+        ServerConfig config = ServerConfig.parse(args);
+        wireFormat = config.getWireFormat();
+        queueCapacity = config.getQueueCapacity();
+        slowConsumerPolicy = config.getSlowConsumerPolicy();
+        simplifyTolerance = config.getSimplifyTolerance();
+        if (config.getClientThreads() == ServerConfig.ClientThreads.VIRTUAL) {
+            ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+            clientScheduler = Schedulers.from(executor);
+            compositeDisposable.add(Disposable.fromAction(executor::shutdown));
+        }
+        rooms = recoverRooms(config);
+        rooms.setRasterJoinShapes(config.getRasterJoin());
+        rooms.setMaxRooms(config.getMaxRooms());
+        publishMetrics();
 
-        // Initialize the server frame.
-        serverMainFrame = new ServerDrawingFrame();
-        serverMainFrame.setVisible(true);
+        showCanvas(config);
+        startReplication(config);
+        if (config.getHttpPort() > 0) {
+            CanvasImageServer imageServer = new CanvasImageServer(rooms, config.getHttpPort());
+            imageServer.start();
+            compositeDisposable.add(Disposable.fromAction(imageServer::close));
+        }
 
         // Handle incoming client connections.
-        handleClientConnections(serverSocket);
+        if (config.getEngine() == ServerConfig.Engine.NIO) {
+            startNioServer(config);
+        } else {
+            ServerSocket serverSocket = new ServerSocket(config.getPort());
+            handleClientConnections(serverSocket);
+        }
+        System.out.println("Server is running. Waiting for client connections...");
 
         // Add a shutdown hook to dispose of disposables when the application exits.
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Shutting down...");
             compositeDisposable.dispose();
+            try {
+                rooms.shutdown(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            closeShapeLog();
+            System.out.println("Fan-out latency: " + metrics.getFanOutLatency());
+            System.out.println("Encoding time: " + metrics.getEncodeTime());
+            System.out.println("Reconnects: " + Room.getResumed() + " resumed, " + Room.getResyncedFromCanvas()
+                    + " sent the canvas.");
+            System.out.println("Joins sent an image of the canvas: " + Room.getJoinedFromImage());
+            if (simplifyTolerance > 0) {
+                System.out.println("Simplified strokes: " + StrokeSimplifier.getPointsRemoved() + " of "
+                        + StrokeSimplifier.getPointsReceived() + " points removed, "
+                        + StrokeSimplifier.getBytesSaved() + " bytes saved.");
+            }
         }));
 
     }
@@ -114,99 +190,330 @@ public class DrawingServer {
     }
 
     /**
-     * Handles a specific client connection by setting up an object output stream,
-     * subscribing to the shapeSubject, and initiating the listening process for
-     * incoming shapes from the client.
+     * Handles a specific client connection by setting up a shape-output and a bounded send-queue,
+     * and initiating the listening process for incoming shapes from the client. The queue is subscribed to
+     * a room when the client picks one, and drained on the client scheduler only while it holds shapes.
      *
      * @param clientSocket The client socket.
      * @return An observable emitting the client socket.
      */
     private static Observable<Socket> handleClient(Socket clientSocket) {
         System.out.println("Client connected: " + clientSocket.getInetAddress());
+        ClientSession session = new ClientSession(rooms, simplifyTolerance);
 
         try {
-            // Open object output-stream and add to map.
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(clientSocket.getOutputStream());
-            outputStreams.put(clientSocket, objectOutputStream);
-
-            // Subscribe to shapeSubject for the client and listen to emitted shapes.
-            Disposable dp = shapesSubject
-                    .observeOn(Schedulers.io())
-                    .subscribe(shape -> sendShapeToClient(clientSocket, shape), // send emitted shape to client.
-                            throwable -> {
-                                System.err.println("Error sending shapes to the client: " + throwable.getMessage());
-                                throwable.printStackTrace();
-                            },
-                            () -> {
-                                // Cleanup when the observable is completed (client disconnected).
-                                cleanupOnClientDisconnect(clientSocket);
-                            });
-
-            disposableMap.put(clientSocket, dp);
+            // Open shape-output and add to map.
+            ShapeOutput shapeOutput = wireFormat.newOutput(clientSocket.getOutputStream());
+            outputStreams.put(clientSocket, shapeOutput);
+
+            // Queue emitted shapes for the client, and send them from an io-thread.
+            ClientOutbox outbox = new ClientOutbox(queueCapacity, slowConsumerPolicy, session::snapshot,
+                    box -> clientScheduler.scheduleDirect(() -> drainToClient(clientSocket, box)),
+                    box -> {
+                        System.out.println("Disconnecting slow client: " + clientSocket.getInetAddress());
+                        cleanupOnClientDisconnect(clientSocket);
+                    });
+            outboxes.put(clientSocket.getRemoteSocketAddress(), outbox);
+            session.setOutbox(outbox);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
         // Return an observable emitting the client socket and execute logic for listening for shapes.
         return Observable.just(clientSocket)
-                .observeOn(Schedulers.io())
-                .doOnNext(DrawingServer::listenForShapes);
+                .observeOn(clientScheduler)
+                .doOnNext(socket -> listenForShapes(socket, session));
     }
 
     /**
-     * Listens for incoming shapes from a specific client by setting up an object input stream.
-     * This method runs on a separate thread for each client.
+     * Listens for incoming shapes from a specific client by setting up a shape-input.
+     * This method runs on a separate thread for each client, a virtual one if configured, and waits for
+     * the room of the client to accept each shape before reading the next. The client is cleaned up and its
+     * socket closed whenever the reader stops, whether the client disconnected or sent something unreadable.
      *
      * @param socket The client socket.
+     * @param session The client's session.
      */
-    private static void listenForShapes(Socket socket) {
+    private static void listenForShapes(Socket socket, ClientSession session) {
+        ShapeLog shapeLog = rooms.getShapeLog();
         try {
-            ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
+            ShapeInput shapeInput = wireFormat.newInput(socket.getInputStream());
 
             while (true) {
                 try {
-                    // Get the shape sent from client.
-                    Shape receivedShape = (Shape) objectInputStream.readObject();
-
-                    // If it's a clear command, clear shapes.
-                    if (receivedShape instanceof Clear) {
-                        shapes.clear();
-                    } else {
-                        // Otherwise, add shape to list.
-                        shapes.add(receivedShape);
-                    }
+                    // Get the shape sent from client and wait for its room to accept it.
+                    Shape receivedShape = shapeInput.read();
+                    ServerMetrics.shapeReceived();
+                    int logPosition = session.receive(receivedShape).blockingGet();
 
-                    // Emit the shape and update the server-frame.
-                    shapesSubject.onNext(receivedShape);
-                    serverMainFrame.updateIncomingShapes(shapes);
+                    // Wait until the shape is durable before reading the next, if the log requires it.
+                    if (shapeLog != null) {
+                        shapeLog.awaitDurable(logPosition);
+                    }
                 } catch (EOFException e) {
                     // EOFException indicates that the client has closed the connection
                     System.out.println("Client disconnected: " + socket.getInetAddress());
-                    cleanupOnClientDisconnect(socket);
                     break;
                 } catch (IOException | ClassNotFoundException e) {
                     e.printStackTrace(); // Log other exceptions
                     break;
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // The shape could not be logged.
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
             }
         } catch (IOException e) {
             e.printStackTrace(); // Log exceptions related to socket creation
+        } finally {
+            // However the reader stopped, release the client and leave its room.
+            cleanupOnClientDisconnect(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            session.close();
+        }
+    }
+
+    /**
+     * Opens the shape log, if configured, and rebuilds the rooms from it.
+     *
+     * @param config The server settings.
+     * @return The rooms of the server.
+     * @throws IOException If the log could not be opened or is not a shape log.
+     */
+    private static RoomRegistry recoverRooms(ServerConfig config) throws IOException {
+        Path path = config.getLogPath();
+        ShapeLog shapeLog = path != null
+                ? ShapeLog.open(path, config.getDurability(), config.getLogFlushMillis())
+                : null;
+        RoomRegistry registry = new RoomRegistry(config.getShards(), wireFormat, config.getResumeHistory(), shapeLog);
+        if (shapeLog != null) {
+            long start = System.nanoTime();
+            int recovered = registry.recover();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("Recovered " + recovered + " shapes from " + path + " in " + millis + " ms, in "
+                    + registry.getRooms().size() + " rooms.");
         }
+        return registry;
     }
 
     /**
-     * Sends a shape to a specific client using the corresponding object output stream.
+     * Shows the canvas of the default room in the server frame, unless the server runs headless. The live
+     * view is repainted from the shard for every accepted shape, the sampled view reads the canvas on the
+     * event dispatching thread at a low frame rate and leaves the shard alone.
+     *
+     * @param config The server settings.
+     */
+    private static void showCanvas(ServerConfig config) {
+        if (config.getView() == ServerConfig.View.HEADLESS) {
+            System.out.println("Running headless, without the server frame.");
+            return;
+        }
+        serverMainFrame = new ServerDrawingFrame();
+        serverMainFrame.setVisible(true);
+        if (config.getView() == ServerConfig.View.SAMPLED) {
+            serverMainFrame.sample(rooms.getDefault(), config.getViewFps());
+        } else {
+            rooms.getDefault().setCanvasListener(serverMainFrame::updateIncomingShapes);
+        }
+    }
+
+    /**
+     * Publishes the measurements of the server over JMX. The server runs without them if they could not be
+     * published.
+     */
+    private static void publishMetrics() {
+        metrics = new ServerMetrics(rooms, DrawingServer::getQueueDepths);
+        try {
+            compositeDisposable.add(metrics.register());
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Leads or follows a cluster of servers, if configured.
+     *
+     * @param config The server settings.
+     * @throws IOException If the peer port could not be bound.
+     */
+    private static void startReplication(ServerConfig config) throws IOException {
+        if (config.getPeerPort() > 0) {
+            ReplicationLeader leader = new ReplicationLeader(rooms, config.getPeerPort());
+            leader.start();
+            compositeDisposable.add(Disposable.fromAction(leader::close));
+        } else if (config.getLeaderHost() != null) {
+            ReplicationFollower follower = new ReplicationFollower(rooms, config.getLeaderHost(),
+                    config.getLeaderPort());
+            follower.start();
+            compositeDisposable.add(Disposable.fromAction(follower::close));
+        }
+    }
+
+    /**
+     * Forces the remaining shapes to disk and closes the shape log.
+     */
+    private static void closeShapeLog() {
+        ShapeLog shapeLog = rooms.getShapeLog();
+        if (shapeLog != null) {
+            try {
+                shapeLog.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Starts the non-blocking engine. Shapes read by the event loops are handed to the rooms like in the
+     * blocking engine, without waiting for each to be accepted. Each client subscribes to its room by queueing
+     * encoded frames on its connection, which never blocks the emitting thread.
+     *
+     * @param config The server settings.
+     * @throws IOException If the server channel could not be opened.
+     */
+    private static void startNioServer(ServerConfig config) throws IOException {
+        NioServer nioServer = new NioServer(config.getPort(), config.getWorkerThreads(), wireFormat,
+                new NioServer.Handler() {
+            @Override
+            public void onConnect(NioConnection connection) {
+                connection.send(wireFormat.header());
+                ClientSession session = new ClientSession(rooms, simplifyTolerance);
+
+                // Encode queued shapes on the event loop, a few frames at a time.
+                ClientOutbox outbox = new ClientOutbox(queueCapacity, slowConsumerPolicy, session::snapshot,
+                        box -> connection.execute(() -> drainToConnection(connection, box)),
+                        box -> {
+                            System.out.println("Disconnecting slow client: " + connection.getRemoteAddress());
+                            connection.close();
+                        });
+                connection.setOnDrained(() -> drainToConnection(connection, outbox));
+                outboxes.put(connection.getRemoteAddress(), outbox);
+                session.setOutbox(outbox);
+                nioSessions.put(connection, session);
+            }
+
+            @Override
+            public void onShape(NioConnection connection, Shape shape) throws IOException {
+                ServerMetrics.shapeReceived();
+                ClientSession session = nioSessions.get(connection);
+                ShapeLog shapeLog = rooms.getShapeLog();
+
+                // Stop reading from the client until the shape is durable, if the log requires it.
+                if (shapeLog != null && shapeLog.getDurability() == ShapeLog.Durability.SYNC) {
+                    connection.suspendReads();
+                    session.receive(shape).subscribe(
+                            logPosition -> shapeLog.whenDurable(logPosition, connection::resumeReads),
+                            throwable -> failConnection(connection, throwable));
+                    return;
+                }
+
+                // Otherwise stop reading when too many shapes wait for the room, until it caught up.
+                AtomicInteger pending = session.getPending();
+                if (pending.incrementAndGet() >= NIO_SHAPES_IN_FLIGHT) {
+                    connection.suspendReads();
+                }
+                session.receive(shape).subscribe(
+                        logPosition -> {
+                            if (pending.decrementAndGet() == NIO_SHAPES_IN_FLIGHT - 1) {
+                                connection.execute(() -> {
+                                    if (pending.get() < NIO_SHAPES_IN_FLIGHT) {
+                                        connection.resumeReads();
+                                    }
+                                });
+                            }
+                        },
+                        throwable -> failConnection(connection, throwable));
+            }
+
+            @Override
+            public void onDisconnect(NioConnection connection) {
+                ClientOutbox outbox = outboxes.remove(connection.getRemoteAddress());
+                if (outbox != null) {
+                    outbox.close();
+                }
+                ClientSession session = nioSessions.remove(connection);
+                if (session != null) {
+                    session.close();
+                }
+            }
+        });
+        nioServer.start();
+        compositeDisposable.add(Disposable.fromAction(nioServer::close));
+    }
+
+    /**
+     * Closes a nio-connection whose shape could not be accepted.
+     *
+     * @param connection The client connection.
+     * @param throwable Cause of the failure.
+     */
+    private static void failConnection(NioConnection connection, Throwable throwable) {
+        throwable.printStackTrace();
+        connection.close();
+    }
+
+    /**
+     * Gets the number of shapes waiting to be sent to each connected client.
+     *
+     * @return Queue depth per client address.
+     */
+    public static Map<SocketAddress, Integer> getQueueDepths() {
+        Map<SocketAddress, Integer> depths = new HashMap<>();
+        outboxes.forEach((address, outbox) -> depths.put(address, outbox.depth()));
+        return depths;
+    }
+
+    /**
+     * Sends queued shapes to a blocking client until its queue is empty.
+     *
+     * @param clientSocket The client socket.
+     * @param outbox The client's send-queue.
+     */
+    private static void drainToClient(Socket clientSocket, ClientOutbox outbox) {
+        ShapeFrame shape;
+        while ((shape = outbox.poll()) != null) {
+            sendShapeToClient(clientSocket, shape);
+        }
+    }
+
+    /**
+     * Encodes queued shapes onto a nio-connection, stopping when enough frames are in flight.
+     * The connection calls this again once it has written them. Runs on the event loop.
+     *
+     * @param connection The client connection.
+     * @param outbox The client's send-queue.
+     */
+    private static void drainToConnection(NioConnection connection, ClientOutbox outbox) {
+        while (connection.getQueuedFrames() < NIO_FRAMES_IN_FLIGHT) {
+            ShapeFrame shape = outbox.poll();
+            if (shape == null) {
+                return;
+            }
+            connection.send(shape.getBytes());
+            ServerMetrics.shapeSent();
+        }
+    }
+
+    /**
+     * Sends a shape to a specific client using the corresponding shape-output. A shape that is already
+     * encoded in the client's format is written without encoding it again.
      *
      * @param clientSocket The client socket.
      * @param shape The shape to be sent.
      */
-    private static void sendShapeToClient(Socket clientSocket, Shape shape) {
+    private static void sendShapeToClient(Socket clientSocket, ShapeFrame shape) {
         // Get the relevant output-stream for the client.
-        ObjectOutputStream objectOutputStream = outputStreams.get(clientSocket);
-        if (objectOutputStream != null) {
+        ShapeOutput shapeOutput = outputStreams.get(clientSocket);
+        if (shapeOutput != null) {
             try {
-                objectOutputStream.writeObject(shape);  // send shape.
-                objectOutputStream.flush();
+                shapeOutput.write(shape);  // send shape.
+                ServerMetrics.shapeSent();
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -216,20 +523,20 @@ public class DrawingServer {
 
     /**
      * Cleans up resources when a client disconnects by removing it from the output-stream map
-     * and closing the associated object output stream.
+     * and closing the associated shape-output. The client leaves its room once its reader stops.
      *
      * @param clientSocket The client socket.
      */
     private static void cleanupOnClientDisconnect(Socket clientSocket) {
-        // Dispose of the disposable associated with the clientSocket.
-        Disposable disposable = disposableMap.remove(clientSocket);
-        if (disposable != null && !disposable.isDisposed()) {
-            disposable.dispose();
+        ClientOutbox outbox = outboxes.remove(clientSocket.getRemoteSocketAddress());
+        if (outbox != null) {
+            outbox.close();
         }
-        ObjectOutputStream objectOutputStream = outputStreams.remove(clientSocket);
-        if (objectOutputStream != null) {
+
+        ShapeOutput shapeOutput = outputStreams.remove(clientSocket);
+        if (shapeOutput != null) {
             try {
-                objectOutputStream.close();
+                shapeOutput.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
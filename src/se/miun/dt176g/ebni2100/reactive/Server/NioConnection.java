@@ -0,0 +1,250 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.BinaryShapeCodec;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A client connection served by a {@link NioEventLoop}. Holds the read buffer with partially received
+ * frames and the queue of frames waiting to be written.
+ *
+ * Only the event loop reads and writes the channel. Other threads hand over frames with {@link #send}.
+ */
+public class NioConnection {
+
+    private static final int INITIAL_READ_BUFFER = 1024;
+
+    // Maximum number of queued frames handed to one gathering write.
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final NioEventLoop eventLoop;
+    private final SocketAddress remoteAddress;
+    private final WireFormat wireFormat;
+    private SelectionKey key;
+
+    // Read buffer, kept in write-mode between reads.
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    private boolean headerReceived;
+
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER]; // Only used by the event loop.
+    private final AtomicInteger queuedFrames = new AtomicInteger();
+    private volatile Runnable onDrained;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private boolean writing;
+    private boolean readsSuspended;
+
+    NioConnection(SocketChannel channel, NioEventLoop eventLoop, WireFormat wireFormat) throws IOException {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.wireFormat = wireFormat;
+        this.remoteAddress = channel.getRemoteAddress();
+    }
+
+    /**
+     * Queue a frame for sending. May be called from any thread. The frame is not copied, so the same
+     * frame can be queued on many connections.
+     * @param frame complete frame, must not be modified afterwards.
+     */
+    public void send(byte[] frame) {
+        if (closed.get()) {
+            return;
+        }
+        outbound.add(ByteBuffer.wrap(frame));
+        queuedFrames.incrementAndGet();
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(this, this::enableWrites);
+        }
+    }
+
+    /**
+     * Gets the number of frames queued but not completely written.
+     * @return number of frames.
+     */
+    public int getQueuedFrames() {
+        return queuedFrames.get();
+    }
+
+    /**
+     * Set a callback run on the event loop each time all queued frames have been written.
+     * @param onDrained callback.
+     */
+    public void setOnDrained(Runnable onDrained) {
+        this.onDrained = onDrained;
+    }
+
+    /**
+     * Run a task on the event loop of this connection. If the task fails, the connection is closed.
+     * @param task task to run.
+     */
+    public void execute(Runnable task) {
+        eventLoop.execute(this, task);
+    }
+
+    /**
+     * Stop reading from the client until {@link #resumeReads} is called. Only called on the event loop.
+     */
+    public void suspendReads() {
+        readsSuspended = true;
+        updateInterest();
+    }
+
+    /**
+     * Continue reading from the client. May be called from any thread.
+     */
+    public void resumeReads() {
+        eventLoop.execute(this, () -> {
+            readsSuspended = false;
+            updateInterest();
+        });
+    }
+
+    /**
+     * Gets the address of the client.
+     * @return remote address.
+     */
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Close the connection. May be called from any thread.
+     */
+    public void close() {
+        eventLoop.execute(this::closeNow);
+    }
+
+    void register(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Read what is available from the channel and decode complete frames.
+     * @param handler receives the decoded shapes.
+     * @throws IOException if the channel failed or the data was malformed.
+     * @return false if the client closed the connection.
+     */
+    boolean onReadable(NioServer.Handler handler) throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            return false;
+        }
+
+        readBuffer.flip();
+        if (!headerReceived) {
+            if (readBuffer.remaining() < wireFormat.header().length) {
+                readBuffer.compact();
+                return true;
+            }
+            wireFormat.readHeader(readBuffer);
+            headerReceived = true;
+        }
+
+        int length;
+        while ((length = BinaryShapeCodec.readFrameLength(readBuffer)) >= 0) {
+            int end = readBuffer.position() + length;
+            int limit = readBuffer.limit();
+            readBuffer.limit(end);
+            Shape shape = wireFormat.decode(readBuffer);
+            readBuffer.limit(limit);
+            readBuffer.position(end);
+            handler.onShape(this, shape);
+        }
+        readBuffer.compact();
+
+        // Grow the buffer if a frame does not fit.
+        if (!readBuffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+        return true;
+    }
+
+    /**
+     * Write queued frames until the queue is empty or the socket buffer is full.
+     * @throws IOException if the channel failed.
+     */
+    void onWritable() throws IOException {
+        while (true) {
+            // Write the frames at the head of the queue with a single gathering write. Only this thread
+            // removes frames, so the first frames iterated are the head of the queue.
+            int count = 0;
+            for (ByteBuffer frame : outbound) {
+                gather[count++] = frame;
+                if (count == MAX_GATHER) {
+                    break;
+                }
+            }
+            if (count == 0) {
+                break;
+            }
+            channel.write(gather, 0, count);
+
+            int written = 0;
+            while (written < count && !gather[written].hasRemaining()) {
+                outbound.poll();
+                written++;
+            }
+            queuedFrames.addAndGet(-written);
+            Arrays.fill(gather, 0, count, null);
+            if (written < count) {
+                return; // Socket buffer full, wait for the next write-event.
+            }
+        }
+        writing = false;
+        updateInterest();
+        flushScheduled.set(false);
+
+        // A frame may have been queued after the queue was found empty but before the flag was cleared.
+        if (!outbound.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+            enableWrites();
+        }
+
+        Runnable drained = onDrained;
+        if (drained != null) {
+            drained.run();
+        }
+    }
+
+    private void enableWrites() {
+        writing = true;
+        updateInterest();
+    }
+
+    private void updateInterest() {
+        if (key != null && key.isValid()) {
+            key.interestOps((readsSuspended ? 0 : SelectionKey.OP_READ) | (writing ? SelectionKey.OP_WRITE : 0));
+        }
+    }
+
+    void closeNow() {
+        if (closed.compareAndSet(false, true)) {
+            outbound.clear();
+            queuedFrames.set(0);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            eventLoop.onClosed(this);
+        }
+    }
+}
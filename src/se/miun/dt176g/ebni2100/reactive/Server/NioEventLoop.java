@@ -0,0 +1,167 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single selector thread serving many client connections. Work from other threads is handed
+ * over with {@link #execute} and runs on the loop between selects.
+ *
+ * Whatever a connection or a task throws, including errors such as a stack overflow while decoding, is
+ * caught on the loop. Only the connection that failed is closed, and the loop keeps serving the others.
+ */
+class NioEventLoop implements Runnable {
+
+    private final Selector selector;
+    private final NioServer.Handler handler;
+    private final WireFormat wireFormat;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    NioEventLoop(String name, WireFormat wireFormat, NioServer.Handler handler) throws IOException {
+        this.selector = Selector.open();
+        this.wireFormat = wireFormat;
+        this.handler = handler;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Run a task on the loop thread.
+     * @param task task to run.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Run a task of a connection on the loop thread. If the task fails, the connection is closed.
+     * @param connection connection the task belongs to.
+     * @param task task to run.
+     */
+    void execute(NioConnection connection, Runnable task) {
+        execute(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                closeAfterFailure(connection, t);
+            }
+        });
+    }
+
+    /**
+     * Hand over an accepted channel to this loop.
+     * @param channel accepted channel.
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                NioConnection connection = new NioConnection(channel, this, wireFormat);
+                connection.register(channel.register(selector, SelectionKey.OP_READ, connection));
+                handler.onConnect(connection);
+            } catch (Throwable e) {
+                e.printStackTrace();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already failing.
+                }
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                // Tasks queued by the loop itself do not wake the selector, so don't block if any are pending.
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                runTasks();
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handleKey(key);
+                }
+                selector.selectedKeys().clear();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Handle the ready operations of a single connection.
+     * @param key selection key of the connection.
+     */
+    private void handleKey(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable() && !connection.onReadable(handler)) {
+                System.out.println("Client disconnected: " + connection.getRemoteAddress());
+                connection.closeNow();
+                return;
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (Throwable t) {
+            closeAfterFailure(connection, t);
+        }
+    }
+
+    /**
+     * Close a connection that failed, without letting anything escape to the loop.
+     * @param connection the connection.
+     * @param failure what it failed with.
+     */
+    private void closeAfterFailure(NioConnection connection, Throwable failure) {
+        System.err.println("Closing connection " + connection.getRemoteAddress() + ": " + failure);
+        if (!(failure instanceof IOException)) {
+            failure.printStackTrace();
+        }
+        try {
+            connection.closeNow();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    void onClosed(NioConnection connection) {
+        handler.onDisconnect(connection);
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+}
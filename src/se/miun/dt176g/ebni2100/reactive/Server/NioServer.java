@@ -0,0 +1,96 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking server core. One acceptor thread accepts connections and spreads them round-robin over a
+ * fixed number of {@link NioEventLoop}s, so the thread count does not grow with the number of clients.
+ */
+public class NioServer {
+
+    /**
+     * Callbacks for connection events. Called on the event loop of the connection and must not block.
+     */
+    public interface Handler {
+        void onConnect(NioConnection connection);
+
+        void onShape(NioConnection connection, Shape shape) throws IOException;
+
+        void onDisconnect(NioConnection connection);
+    }
+
+    private final ServerSocketChannel serverChannel;
+    private final NioEventLoop[] eventLoops;
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    /**
+     * Bind the server channel and create the event loops.
+     * @param port port to listen on.
+     * @param workerThreads number of event loops.
+     * @param wireFormat format of the frames sent by the clients.
+     * @param handler receives connection events.
+     * @throws IOException if the port could not be bound.
+     */
+    public NioServer(int port, int workerThreads, WireFormat wireFormat, Handler handler) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+
+        eventLoops = new NioEventLoop[workerThreads];
+        for (int i = 0; i < workerThreads; i++) {
+            eventLoops[i] = new NioEventLoop("nio-loop-" + i, wireFormat, handler);
+        }
+        acceptor = new Thread(this::acceptConnections, "nio-acceptor");
+    }
+
+    /**
+     * Start the event loops and begin accepting connections.
+     */
+    public void start() {
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        acceptor.start();
+    }
+
+    /**
+     * Accept connections until the server is closed. The channel is kept blocking as this thread does
+     * nothing else.
+     */
+    private void acceptConnections() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                System.out.println("Client connected: " + channel.getRemoteAddress());
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            } catch (IOException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop accepting connections and stop the event loops.
+     */
+    public void close() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import se.miun.dt176g.ebni2100.reactive.Protocol.PeerCodec;
+import se.miun.dt176g.ebni2100.reactive.Protocol.PeerMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A link to another server node. Messages are encoded by the sending thread and queued, and written by a
+ * writer on the io-scheduler, so that sending never blocks a shard. Messages are read by a single reader.
+ */
+public class PeerLink implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Socket socket;
+    private final DataInputStream inputStream;
+    private final OutputStream outputStream;
+    private final BlockingQueue<byte[]> outgoing = new LinkedBlockingQueue<>();
+    private volatile boolean closed;
+
+    /**
+     * Exchange headers with the other node and start the writer.
+     * @param socket connected socket.
+     * @throws IOException if the other end is not a server node.
+     */
+    public PeerLink(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        outputStream = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        PeerCodec.writeHeader(outputStream);
+        outputStream.flush();
+        inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        PeerCodec.readHeader(inputStream);
+        Schedulers.io().scheduleDirect(this::writeLoop);
+    }
+
+    /**
+     * Queue a message for sending. May be called from any thread, never blocks.
+     * @param message the message.
+     */
+    public void send(PeerMessage message) {
+        if (!closed) {
+            outgoing.add(PeerCodec.encodeFrame(message));
+        }
+    }
+
+    /**
+     * Read the next message. Only called by the reader of the link.
+     * @return the message.
+     * @throws IOException if the link was closed or failed.
+     */
+    public PeerMessage read() throws IOException {
+        return PeerCodec.read(inputStream);
+    }
+
+    /**
+     * Write queued messages, flushing whenever the queue is empty.
+     */
+    private void writeLoop() {
+        try {
+            while (!closed) {
+                outputStream.write(outgoing.take());
+                byte[] next;
+                while ((next = outgoing.poll()) != null) {
+                    outputStream.write(next);
+                }
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                e.printStackTrace();
+            }
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return socket.getRemoteSocketAddress();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close the link, dropping queued messages. May be called from any thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        outgoing.clear();
+        outgoing.add(new byte[0]); // Wake the writer.
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
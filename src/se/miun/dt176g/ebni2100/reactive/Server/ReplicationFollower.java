@@ -0,0 +1,129 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.PeerMessage;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.Socket;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A follower node of a cluster. Forwards the shapes of its clients to the leader, and applies the states and
+ * events of the rooms the leader replicates, which its clients are sent like on the leader.
+ *
+ * When the link to the leader is lost, the follower links up again every second. Shapes drawn while it is
+ * not linked are dropped, and the leader syncs every room when it links up.
+ */
+public class ReplicationFollower implements RoomRegistry.Forwarder {
+
+    private static final long RETRY_MILLIS = 1000;
+
+    private final RoomRegistry rooms;
+    private final String host;
+    private final int port;
+    private volatile PeerLink link;
+    private volatile boolean running = true;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Create a follower.
+     * @param rooms rooms of this node.
+     * @param host host of the leader.
+     * @param port peer port of the leader.
+     */
+    public ReplicationFollower(RoomRegistry rooms, String host, int port) {
+        this.rooms = rooms;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Start forwarding shapes and link to the leader.
+     */
+    public void start() {
+        rooms.setForwarder(this);
+        Schedulers.io().scheduleDirect(this::run);
+    }
+
+    @Override
+    public void forward(Room room, Shape shape) {
+        PeerLink current = link;
+        if (current != null && !current.isClosed()) {
+            current.send(PeerMessage.forward(room.getName(), shape));
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Link to the leader and apply what it replicates, until closed.
+     */
+    private void run() {
+        while (running) {
+            try (Socket socket = new Socket(host, port)) {
+                PeerLink current = new PeerLink(socket);
+                link = current;
+                System.out.println("Linked to leader " + host + ":" + port);
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    System.out.println("Dropped " + lost + " shapes while not linked.");
+                }
+                applyReplicated(current);
+            } catch (IOException | IllegalArgumentException e) {
+                if (running) {
+                    System.out.println("Not linked to leader " + host + ":" + port + ": " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            link = null;
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hand the messages of the leader to their rooms. Messages of a room are applied in the order they
+     * arrive, since the room runs them in order on its shard. Messages for an invalid room name are dropped.
+     * @param current link to the leader.
+     * @throws IOException if the link failed.
+     * @throws InterruptedException if interrupted while waiting for the rooms.
+     */
+    private void applyReplicated(PeerLink current) throws IOException, InterruptedException {
+        Semaphore window = new Semaphore(ReplicationLeader.PEER_WINDOW);
+        while (true) {
+            PeerMessage message = current.read();
+            if (message.getType() == PeerMessage.Type.FORWARD) {
+                throw new StreamCorruptedException("Unexpected forward from the leader");
+            }
+            if (!JoinRoom.isValidName(message.getRoom())) {
+                System.out.println("Dropped a " + message.getType() + " for invalid room " + message.getRoom());
+                continue;
+            }
+            window.acquire();
+            rooms.get(message.getRoom()).replicate(message)
+                    .doFinally(window::release)
+                    .subscribe(() -> {}, Throwable::printStackTrace);
+        }
+    }
+
+    /**
+     * Stop linking to the leader.
+     */
+    public void close() {
+        running = false;
+        PeerLink current = link;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Protocol.PeerMessage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The leader node of a cluster. Followers link to it, forward the shapes of their clients, and are sent
+ * the state and the events of every room.
+ *
+ * The leader accepts forwarded shapes like the shapes of its own clients, so the shard of a room gives the
+ * order of all shapes drawn in it, on any node. Each follower is replicated every room, those created later
+ * included. Runs on the io-scheduler, one reader per follower.
+ */
+public class ReplicationLeader {
+
+    // Maximum number of forwarded shapes of one follower waiting for their rooms.
+    static final int PEER_WINDOW = 1024;
+
+    private final RoomRegistry rooms;
+    private final ServerSocket serverSocket;
+    private final Set<Follower> followers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A linked follower and its subscriptions to the rooms.
+     */
+    private static class Follower {
+        final PeerLink link;
+        final ConcurrentMap<Room, Single<Disposable>> subscriptions = new ConcurrentHashMap<>();
+
+        Follower(PeerLink link) {
+            this.link = link;
+        }
+
+        /**
+         * Replicate a room to the follower, unless it already is.
+         * @param room the room.
+         */
+        void follow(Room room) {
+            if (link.isClosed()) {
+                return;
+            }
+            Single<Disposable> subscription = room.replicateTo(link::send).cache();
+            if (subscriptions.putIfAbsent(room, subscription) == null) {
+                subscription.subscribe(dp -> {}, Throwable::printStackTrace);
+            }
+        }
+
+        void close() {
+            link.close();
+            subscriptions.values().forEach(subscription -> subscription.subscribe(Disposable::dispose,
+                    Throwable::printStackTrace));
+        }
+    }
+
+    /**
+     * Bind the port followers link to.
+     * @param rooms rooms of this node.
+     * @param port port to listen on.
+     * @throws IOException if the port could not be bound.
+     */
+    public ReplicationLeader(RoomRegistry rooms, int port) throws IOException {
+        this.rooms = rooms;
+        this.serverSocket = new ServerSocket(port);
+    }
+
+    /**
+     * Start accepting followers.
+     */
+    public void start() {
+        rooms.addRoomListener(room -> followers.forEach(follower -> follower.follow(room)));
+        Schedulers.io().scheduleDirect(this::acceptFollowers);
+        System.out.println("Leading on port " + serverSocket.getLocalPort());
+    }
+
+    private void acceptFollowers() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Schedulers.io().scheduleDirect(() -> serveFollower(socket));
+            } catch (SocketException e) {
+                return; // Closed.
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Replicate all rooms to a follower, and accept the shapes it forwards until it disconnects. Shapes forwarded
+     * for an invalid room name are dropped.
+     * @param socket socket of the follower.
+     */
+    private void serveFollower(Socket socket) {
+        Follower follower;
+        try {
+            follower = new Follower(new PeerLink(socket));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        System.out.println("Follower linked: " + follower.link.getRemoteAddress());
+        followers.add(follower);
+        rooms.getRooms().forEach(follower::follow);
+
+        Semaphore window = new Semaphore(PEER_WINDOW);
+        try {
+            while (true) {
+                PeerMessage message = follower.link.read();
+                if (message.getType() != PeerMessage.Type.FORWARD) {
+                    throw new StreamCorruptedException("Unexpected " + message.getType() + " from a follower");
+                }
+                if (!JoinRoom.isValidName(message.getRoom())) {
+                    // Only this shape is dropped, the follower stays linked.
+                    System.out.println("Dropped a shape for invalid room " + message.getRoom() + " from "
+                            + follower.link.getRemoteAddress());
+                    continue;
+                }
+                window.acquire();
+                rooms.get(message.getRoom()).accept(message.getShape())
+                        .doFinally(window::release)
+                        .subscribe(logPosition -> {}, Throwable::printStackTrace);
+            }
+        } catch (EOFException | SocketException e) {
+            System.out.println("Follower unlinked: " + follower.link.getRemoteAddress());
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        followers.remove(follower);
+        follower.close();
+    }
+
+    /**
+     * Gets the port followers link to.
+     * @return the bound port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stop accepting followers and unlink the linked ones.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        followers.forEach(Follower::close);
+    }
+}
@@ -0,0 +1,688 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import se.miun.dt176g.ebni2100.reactive.Client.Clear;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Viewport;
+import se.miun.dt176g.ebni2100.reactive.Protocol.PeerMessage;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeFrame;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A named canvas that clients draw on together. Each room has its own canvas state and its own subject
+ * emitting the shapes drawn in it to the clients in the room.
+ *
+ * A room is served by one shard of the {@link RoomRegistry}, a single thread shared with other rooms.
+ * All changes to the room, and all joins and leaves, run on that thread in the order they were submitted,
+ * so the room needs no locks and a busy room only delays the rooms on the same shard.
+ *
+ * Every accepted shape gets the next sequence number of the room. On a follower node the shapes of clients
+ * are forwarded to the leader instead, and the room is changed only by the events the leader replicates,
+ * so all nodes apply the shapes of a room in the same order.
+ *
+ * The room keeps the latest accepted shapes, so a client that reconnects is only sent the shapes it missed.
+ * A client that missed more, or whose epoch is not the room's, is sent a clear-command and the canvas. The
+ * epoch is picked when the room is created, so it changes at a restart, and on a follower it is the leader's.
+ *
+ * A client joining a large canvas is sent an image of it, rendered off the shard by the room's
+ * {@link CanvasRaster}, followed by only the shapes drawn after the image, if enabled in the registry.
+ * This only applies to clients that see the whole canvas. The drawing client sends its viewport before it
+ * joins, so it is always sent the shapes of its tiles.
+ *
+ * A client that sent its {@link Viewport} is only sent the shapes on the tiles it sees, and the strokes
+ * drawn across them. When it moves to other tiles it is sent their shapes again, followed by the join-reply.
+ * A client that reconnects with its viewport on the tiles it already holds, which it tells by passing the
+ * sequence number of the last shape it applied on them, is only sent the shapes it missed on those tiles,
+ * if they are all in the history and its epoch is the room's. Otherwise, or if a stroke it missed parts of
+ * began before it left, it is sent the shapes of its tiles again.
+ */
+public class Room {
+
+    // Reconnects served from the history, and from the canvas, by all rooms.
+    private static final AtomicLong resumed = new AtomicLong();
+    private static final AtomicLong resyncedFromCanvas = new AtomicLong();
+    private static final AtomicLong joinedFromImage = new AtomicLong();
+
+    private final String name;
+    private final RoomRegistry registry;
+    private final Scheduler shard;
+    private final WireFormat wireFormat;
+    private final CanvasRaster raster;
+
+    // Changed only on the shard, the canvas is replaced at a sync and its shapes may be read from any thread.
+    private volatile CanvasState canvas;
+
+    // Only used on the shard.
+    private final PublishSubject<ShapeFrame> shapesSubject = PublishSubject.create();
+    private long sequence; // Sequence number of the last accepted shape.
+    private long epoch = newEpoch();
+    private final int historyCapacity;
+    private final ArrayDeque<ShapeFrame> history = new ArrayDeque<>(); // Latest accepted shapes, oldest first.
+    private int members;
+    private int rasterRequested; // Canvas size when the raster was last asked to refresh.
+    private Shape committed; // Shape that changed the canvas, while the accepted shape is emitted.
+
+    // Client drawing each open stroke of this node, by stroke-id. Used by the reading threads of the clients.
+    private final ConcurrentMap<Long, ClientSession> strokeOwners = new ConcurrentHashMap<>();
+
+    // Called on the shard with the shapes on the canvas whenever they changed.
+    private volatile Consumer<List<Shape>> canvasListener;
+
+    Room(String name, RoomRegistry registry, Scheduler shard, Scheduler renderer, WireFormat wireFormat,
+         int historyCapacity) {
+        this.name = name;
+        this.registry = registry;
+        this.shard = shard;
+        this.wireFormat = wireFormat;
+        this.raster = new CanvasRaster(this::getShapes, renderer, wireFormat);
+        this.historyCapacity = historyCapacity;
+        this.canvas = new CanvasState();
+    }
+
+    private static long newEpoch() {
+        long epoch;
+        do {
+            epoch = ThreadLocalRandom.current().nextLong();
+        } while (epoch == 0);
+        return epoch;
+    }
+
+    /**
+     * Stores a shape, logs it and emits it to the clients in the room, on the shard of the room. On a
+     * follower node the shape is forwarded to the leader instead.
+     * @param shape shape received from a client.
+     * @return position in the shape log after the shape, or 0 if nothing was logged.
+     */
+    public Single<Integer> accept(Shape shape) {
+        RoomRegistry.Forwarder forwarder = registry.getForwarder();
+        if (forwarder != null) {
+            forwarder.forward(this, shape);
+            return Single.just(0);
+        }
+        return Single.fromCallable(() -> acceptNow(sequence + 1, shape)).subscribeOn(shard);
+    }
+
+    private int acceptNow(long sequence, Shape shape) throws IOException {
+        this.sequence = sequence;
+
+        // Add the shape to the canvas, or clear it if it's a clear command. Parts of a stroke only
+        // change the canvas when the stroke ends.
+        Shape committed = canvas.apply(shape);
+
+        // Log what changed the canvas, so that a restart rebuilds the same canvas.
+        int logPosition = committed != null ? registry.append(this, committed) : 0;
+
+        // Emit the shape, encoded once for all clients, and keep it for clients that reconnect.
+        long encodeStart = System.nanoTime();
+        ShapeFrame frame = ShapeFrame.encode(shape, wireFormat, sequence);
+        ServerMetrics.encoded(encodeStart);
+        if (historyCapacity > 0) {
+            if (history.size() == historyCapacity) {
+                history.removeFirst();
+            }
+            history.addLast(frame);
+        }
+        this.committed = committed;
+        shapesSubject.onNext(frame);
+        this.committed = null;
+        Consumer<List<Shape>> listener = canvasListener;
+        if (committed != null && listener != null) {
+            listener.accept(canvas.getShapes());
+        }
+        if (committed != null) {
+            refreshRasterIfBehind();
+        }
+        return logPosition;
+    }
+
+    /**
+     * Asks the raster to render the canvas again when the canvas grew by the number of shapes joining clients
+     * are sent an image from, or was cleared. Only called on the shard.
+     */
+    private void refreshRasterIfBehind() {
+        int every = registry.getRasterJoinShapes();
+        int size = canvas.size();
+        if (every > 0 && (size < rasterRequested || size - rasterRequested >= every)) {
+            rasterRequested = size;
+            raster.refresh();
+        }
+    }
+
+    /**
+     * Adds a recovered shape to the canvas. Only called before clients connect.
+     * @param shape shape read from the log.
+     */
+    void restore(Shape shape) {
+        canvas.apply(shape);
+    }
+
+    /**
+     * Applies a message replicated by the leader, on the shard of the room. An event is accepted with the
+     * sequence number the leader gave it. A sync replaces the canvas and the history with the shapes that
+     * follow it, and the clients in the room are sent a clear-command followed by the new canvas, and the
+     * join-reply at the end of the sync.
+     * @param message event or part of a sync of this room.
+     * @return completes when the message was applied.
+     */
+    public Completable replicate(PeerMessage message) {
+        return Completable.fromAction(() -> {
+            if (message.getType() == PeerMessage.Type.EVENT) {
+                if (message.getSequence() != sequence + 1) {
+                    System.out.println("Room " + name + " skipped from " + sequence + " to "
+                            + message.getSequence());
+                }
+                acceptNow(message.getSequence(), message.getShape());
+            } else if (message.getType() == PeerMessage.Type.SYNC) {
+                epoch = message.getEpoch();
+                sequence = message.getSequence();
+                history.clear();
+                canvas = new CanvasState();
+                shapesSubject.onNext(ShapeFrame.encode(new Clear(Color.WHITE, 0), wireFormat));
+            } else if (message.getType() == PeerMessage.Type.SYNC_SHAPE) {
+                canvas.apply(message.getShape());
+                shapesSubject.onNext(ShapeFrame.encode(message.getShape(), wireFormat));
+            } else {
+                shapesSubject.onNext(ShapeFrame.encode(new JoinRoom(name, epoch, sequence), wireFormat));
+                Consumer<List<Shape>> listener = canvasListener;
+                if (listener != null) {
+                    listener.accept(canvas.getShapes());
+                }
+            }
+        }).subscribeOn(shard);
+    }
+
+    /**
+     * Replicates the room to a follower node, on the shard of the room. The follower is sent the state of the
+     * room followed by every shape accepted after it, so it misses none and gets none twice.
+     * @param peer receives the messages of the room, must not block.
+     * @return disposable of the subscription.
+     */
+    public Single<Disposable> replicateTo(Consumer<PeerMessage> peer) {
+        return Single.fromCallable(() -> {
+            syncMessages().forEach(peer);
+            return shapesSubject.subscribe(frame -> peer.accept(PeerMessage.event(name, frame.getSequence(),
+                    frame.getShape())));
+        }).subscribeOn(shard);
+    }
+
+    /**
+     * Queues what a joining client needs and subscribes its send-queue to the room, on the shard of the room,
+     * so that no shape is missed or sent twice in between. A reconnecting client is queued the shapes it
+     * missed if they are all in the history, otherwise a clear-command and the canvas state, followed by the
+     * join-reply. These are queued without limit, the queue bound only applies to new shapes.
+     * @param outbox the client's send-queue.
+     * @param request the client's join-command.
+     * @return disposable of the subscription, to be passed to {@link #leave}.
+     */
+    public Single<Disposable> join(ClientOutbox outbox, JoinRoom request) {
+        return join(outbox, request, null);
+    }
+
+    /**
+     * Joins like {@link #join(ClientOutbox, JoinRoom)}, but a client that sent its viewport is queued the
+     * reply and the shapes on its tiles instead of the canvas, and only sent the new shapes on them. If it
+     * reconnects on the tiles it holds, it is only queued the shapes it missed on them, when it can be resumed.
+     * Only a client without a viewport may be queued an image of the canvas instead of its shapes.
+     * @param outbox the client's send-queue.
+     * @param request the client's join-command.
+     * @param viewport the client's viewport, or null if it sees the whole canvas.
+     * @return disposable of the subscription, to be passed to {@link #setViewport} and {@link #leave}.
+     */
+    public Single<Disposable> join(ClientOutbox outbox, JoinRoom request, Viewport viewport) {
+        return Single.<Disposable>fromCallable(() -> {
+            Member member = new Member(outbox);
+            outbox.beginReplay();
+            List<ShapeFrame> missed = missedFrames(request);
+            if (viewport != null) {
+                if (missed != null && member.resume(viewport, missed)) {
+                    resumed.incrementAndGet();
+                } else {
+                    member.moveTo(viewport).forEach(outbox::offer);
+                }
+            } else if (missed != null) {
+                missed.forEach(outbox::offer);
+                resumed.incrementAndGet();
+            } else {
+                if (request.getSequence() > 0) {
+                    outbox.offer(ShapeFrame.of(new Clear(Color.WHITE, 0), wireFormat));
+                    resyncedFromCanvas.incrementAndGet();
+                }
+                canvasFrames().forEach(outbox::offer);
+            }
+            outbox.offer(ShapeFrame.of(new JoinRoom(name, epoch, sequence), wireFormat));
+            member.subscription = shapesSubject.subscribe(member::offer,
+                    throwable -> {
+                        System.err.println("Error sending shapes to the client: " + throwable.getMessage());
+                        throwable.printStackTrace();
+                    });
+            outbox.endReplay();
+            members++;
+            return member;
+        }).subscribeOn(shard);
+    }
+
+    /**
+     * Gets the shapes a reconnecting client missed, if they are all in the history. Only called on the shard.
+     * @param request the client's join-command.
+     * @return the missed frames, oldest first, or null if the client joins from scratch or missed too much.
+     */
+    private List<ShapeFrame> missedFrames(JoinRoom request) {
+        long after = request.getSequence();
+        if (after <= 0 || request.getEpoch() != epoch || after > sequence || sequence - after > history.size()) {
+            return null;
+        }
+        // The newest are at the end of the history.
+        int count = (int) (sequence - after);
+        Iterator<ShapeFrame> newestFirst = history.descendingIterator();
+        ShapeFrame[] frames = new ShapeFrame[count];
+        for (int i = count - 1; i >= 0; i--) {
+            frames[i] = newestFirst.next();
+        }
+        return Arrays.asList(frames);
+    }
+
+    /**
+     * Moves a client to the tiles of a new viewport, on the shard of the room. The client is queued the reply,
+     * the shapes on the tiles and the join-reply, without limit, and from then on only sent the new shapes on
+     * them. The join-reply tells the client the shapes of the tiles are complete.
+     * @param subscription subscription returned by {@link #join}.
+     * @param viewport the client's new viewport.
+     * @return completes when the shapes are queued.
+     */
+    public Completable setViewport(Disposable subscription, Viewport viewport) {
+        return Completable.fromAction(() -> {
+            Member member = (Member) subscription;
+            if (member.isDisposed()) {
+                return;
+            }
+            member.outbox.beginReplay();
+            member.moveTo(viewport).forEach(member.outbox::offer);
+            member.outbox.offer(ShapeFrame.of(new JoinRoom(name, epoch, sequence), wireFormat));
+            member.outbox.endReplay();
+        }).subscribeOn(shard);
+    }
+
+    /**
+     * Unsubscribes a client from the room, on the shard of the room. Runs after shapes the client sent
+     * before leaving are accepted.
+     * @param subscription subscription returned by {@link #join}.
+     * @return completes when the client has left.
+     */
+    public Completable leave(Disposable subscription) {
+        return Completable.fromAction(() -> {
+            subscription.dispose();
+            members--;
+        }).subscribeOn(shard);
+    }
+
+    /**
+     * Gets the current canvas as a clear-command followed by all stored shapes and open strokes, and the
+     * join-reply with the sequence number the following shapes count from. Sent to clients that fell too far
+     * behind. Only called on the shard, while a shape is accepted.
+     * @return snapshot of the canvas.
+     */
+    public List<ShapeFrame> snapshot() {
+        return snapshot(null);
+    }
+
+    /**
+     * Gets the current canvas like {@link #snapshot()}, or for a client that sent its viewport the reply and
+     * the shapes on its tiles, followed by the join-reply. Only called on the shard, while a shape is accepted.
+     * @param subscription the client's subscription returned by {@link #join}, or null.
+     * @return snapshot of the canvas.
+     */
+    public List<ShapeFrame> snapshot(Disposable subscription) {
+        if (subscription instanceof Member && ((Member) subscription).viewport != null) {
+            Member member = (Member) subscription;
+            List<ShapeFrame> snapshot = member.moveTo(member.viewport);
+            snapshot.add(ShapeFrame.of(new JoinRoom(name, epoch, sequence), wireFormat));
+            return snapshot;
+        }
+        List<ShapeFrame> snapshot = new ArrayList<>();
+        snapshot.add(ShapeFrame.of(new Clear(Color.WHITE, 0), wireFormat));
+        snapshot.addAll(canvasFrames());
+        snapshot.add(ShapeFrame.of(new JoinRoom(name, epoch, sequence), wireFormat));
+        return snapshot;
+    }
+
+    /**
+     * Gets the frames that draw the canvas state: the shapes and the beginning of every open stroke. If the
+     * canvas is large enough, and the latest image of it was not cleared since, the image replaces the
+     * shapes in it. Only called on the shard.
+     * @return frames in drawing order.
+     */
+    private List<ShapeFrame> canvasFrames() {
+        List<Shape> shapes = canvas.joinSequence();
+        int from = 0;
+        List<ShapeFrame> frames = new ArrayList<>(shapes.size() + 1);
+        CanvasRaster.Snapshot image = raster.getLatest();
+        int minShapes = registry.getRasterJoinShapes();
+        if (minShapes > 0 && canvas.size() >= minShapes && image != null && image.covers(shapes)) {
+            frames.add(image.getFrame());
+            from = image.getShapeCount();
+            joinedFromImage.incrementAndGet();
+        }
+        for (int i = from; i < shapes.size(); i++) {
+            frames.add(ShapeFrame.of(shapes.get(i), wireFormat));
+        }
+        return frames;
+    }
+
+    /**
+     * Sets the listener called with the shapes on the canvas when they changed, and calls it with the current
+     * shapes.
+     * @param canvasListener listener, called on the shard.
+     */
+    public void setCanvasListener(Consumer<List<Shape>> canvasListener) {
+        shard.scheduleDirect(() -> {
+            this.canvasListener = canvasListener;
+            canvasListener.accept(canvas.getShapes());
+        });
+    }
+
+    /**
+     * Gets the image of the canvas, rendered off the shard.
+     * @return raster of the canvas.
+     */
+    public CanvasRaster getRaster() {
+        return raster;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the shapes and open strokes on the canvas and the epoch and sequence number of the last accepted
+     * shape, on the shard.
+     * @return the messages that sync a follower with the room.
+     */
+    public Single<List<PeerMessage>> state() {
+        return Single.fromCallable(this::syncMessages).subscribeOn(shard);
+    }
+
+    /**
+     * Gets the messages that sync a follower with the room. Only called on the shard.
+     * @return a sync, a message per shape of the join sequence, and the end of the sync.
+     */
+    private List<PeerMessage> syncMessages() {
+        List<Shape> shapes = canvas.joinSequence();
+        List<PeerMessage> messages = new ArrayList<>(shapes.size() + 2);
+        messages.add(PeerMessage.sync(name, epoch, sequence));
+        for (Shape shape : shapes) {
+            messages.add(PeerMessage.syncShape(name, shape));
+        }
+        messages.add(PeerMessage.syncEnd(name));
+        return messages;
+    }
+
+    /**
+     * Claims a stroke-id for the client beginning the stroke, so that no other client can add to it or end it.
+     * Safe to call from any thread.
+     * @param strokeId id of the stroke.
+     * @param owner session of the client.
+     * @return false if another client in the room is drawing a stroke with the id.
+     */
+    boolean claimStroke(long strokeId, ClientSession owner) {
+        ClientSession current = strokeOwners.putIfAbsent(strokeId, owner);
+        return current == null || current == owner;
+    }
+
+    /**
+     * Releases a stroke-id claimed by a client, once it ended the stroke. Safe to call from any thread.
+     * @param strokeId id of the stroke.
+     * @param owner session of the client.
+     */
+    void releaseStroke(long strokeId, ClientSession owner) {
+        strokeOwners.remove(strokeId, owner);
+    }
+
+    /**
+     * Gets the shapes on the canvas. Safe to call from any thread, unlike the canvas listener this does not
+     * involve the shard.
+     * @return immutable list of shapes.
+     */
+    public List<Shape> getShapes() {
+        return canvas.getShapes();
+    }
+
+    /**
+     * Gets the number of shapes on the canvas. Only exact on the shard.
+     * @return number of shapes.
+     */
+    public int size() {
+        return canvas.size();
+    }
+
+    /**
+     * Gets the number of shapes kept for clients that reconnect. Only exact on the shard.
+     * @return number of shapes in the history.
+     */
+    public int getHistorySize() {
+        return history.size();
+    }
+
+    /**
+     * Gets the number of clients in the room. Only exact on the shard.
+     * @return number of clients.
+     */
+    public int getMembers() {
+        return members;
+    }
+
+    /**
+     * Gets the number of reconnects sent only the shapes they missed, in all rooms.
+     * @return number of reconnects.
+     */
+    public static long getResumed() {
+        return resumed.get();
+    }
+
+    /**
+     * Gets the number of joins, reconnects and snapshots sent an image of the canvas instead of its shapes, in
+     * all rooms.
+     * @return number of joins.
+     */
+    public static long getJoinedFromImage() {
+        return joinedFromImage.get();
+    }
+
+    /**
+     * Gets the number of reconnects that missed too much and were sent the canvas, in all rooms.
+     * @return number of reconnects.
+     */
+    public static long getResyncedFromCanvas() {
+        return resyncedFromCanvas.get();
+    }
+
+    /**
+     * A client in the room, queued the shapes emitted to the room. A client that sent its viewport is only
+     * queued the shapes whose bounds touch its tiles. A stroke is queued from the part that first reaches the
+     * tiles, as one beginning holding all its points so far, and then in full. A stroke that reached them in
+     * no part, but whose finished bounds touch them, is queued finished. Only used on the shard.
+     */
+    private final class Member implements Disposable {
+        private final ClientOutbox outbox;
+        private final Set<Long> strokes = new HashSet<>(); // Open strokes the client was queued.
+        private Disposable subscription;
+        private Viewport viewport; // Null if the client sees the whole canvas.
+        private Rectangle area; // Area of the tiles of the viewport.
+
+        Member(ClientOutbox outbox) {
+            this.outbox = outbox;
+        }
+
+        /**
+         * Moves the client to the tiles of a viewport.
+         * @param viewport the new viewport.
+         * @return the reply and the frames drawing the tiles, to be queued for the client.
+         */
+        List<ShapeFrame> moveTo(Viewport viewport) {
+            this.viewport = viewport;
+            area = viewport.getTileArea();
+            strokes.clear();
+            List<Shape> shapes = canvas.joinSequence(area);
+            List<ShapeFrame> frames = new ArrayList<>(shapes.size() + 2);
+            frames.add(ShapeFrame.of(viewport, wireFormat));
+            for (Shape shape : shapes) {
+                if (shape instanceof StrokeDelta) {
+                    strokes.add(((StrokeDelta) shape).getStrokeId());
+                }
+                frames.add(ShapeFrame.of(shape, wireFormat));
+            }
+            return frames;
+        }
+
+        /**
+         * Resumes the client on the tiles of a viewport it already holds, queueing the shapes it missed on
+         * them. The open strokes on the tiles are taken to be on the client, so a stroke it missed parts of
+         * must have begun after it left, or the client cannot be resumed.
+         * @param viewport the client's viewport.
+         * @param missed frames the client missed, oldest first.
+         * @return true if the client was resumed, false if nothing was queued.
+         */
+        boolean resume(Viewport viewport, List<ShapeFrame> missed) {
+            Set<Long> begun = new HashSet<>();
+            for (ShapeFrame frame : missed) {
+                if (frame.getShape() instanceof StrokeDelta) {
+                    StrokeDelta delta = (StrokeDelta) frame.getShape();
+                    if (delta.getPhase() == StrokeDelta.Phase.BEGIN) {
+                        begun.add(delta.getStrokeId());
+                    } else if (!begun.contains(delta.getStrokeId())) {
+                        return false;
+                    }
+                }
+            }
+            this.viewport = viewport;
+            area = viewport.getTileArea();
+            strokes.clear();
+            canvas.getOpenStrokes().forEach((id, freehand) -> {
+                if (!begun.contains(id) && freehand.getPointCount() > 0 && freehand.intersects(area)) {
+                    strokes.add(id);
+                }
+            });
+
+            // Replay the strokes from their parts, as the canvas only holds how they are now.
+            Map<Long, Freehand> drawn = new HashMap<>();
+            for (ShapeFrame frame : missed) {
+                if (frame.getShape() instanceof StrokeDelta) {
+                    StrokeDelta delta = (StrokeDelta) frame.getShape();
+                    Long id = delta.getStrokeId();
+                    Freehand stroke;
+                    if (delta.getPhase() == StrokeDelta.Phase.BEGIN) {
+                        stroke = delta.toFreehand();
+                        drawn.put(id, stroke);
+                    } else if (delta.getPhase() == StrokeDelta.Phase.APPEND) {
+                        stroke = drawn.get(id);
+                        if (stroke != null) {
+                            delta.appendTo(stroke);
+                        }
+                    } else {
+                        stroke = drawn.remove(id);
+                    }
+                    offerStrokeDelta(frame, delta, stroke);
+                } else {
+                    offer(frame);
+                }
+            }
+            return true;
+        }
+
+        void offer(ShapeFrame frame) {
+            Shape shape = frame.getShape();
+            if (area == null || shape instanceof Clear || shape instanceof JoinRoom) {
+                outbox.offer(frame);
+            } else if (shape instanceof StrokeDelta) {
+                StrokeDelta delta = (StrokeDelta) shape;
+                offerStrokeDelta(frame, delta, delta.getPhase() == StrokeDelta.Phase.END
+                        ? committed : canvas.getOpenStroke(delta.getStrokeId()));
+            } else if (shape.intersects(area)) {
+                outbox.offer(frame);
+            }
+        }
+
+        /**
+         * Queues a part of a stroke if the client has the stroke, or the stroke so far if the part reaches the
+         * tiles, or the finished stroke at its end if it touches them.
+         * @param frame frame of the part.
+         * @param delta part of the stroke.
+         * @param stroke the stroke including the part, which is the finished freehand at its end, or null if
+         *               the stroke is unknown.
+         */
+        private void offerStrokeDelta(ShapeFrame frame, StrokeDelta delta, Shape stroke) {
+            long id = delta.getStrokeId();
+            if (strokes.contains(id)) {
+                if (delta.getPhase() == StrokeDelta.Phase.END) {
+                    strokes.remove(id);
+                }
+                outbox.offer(frame);
+            } else if (stroke == null) {
+                return;
+            } else if (delta.getPhase() == StrokeDelta.Phase.END) {
+                if (stroke.intersects(area)) {
+                    outbox.offer(ShapeFrame.encode(stroke, wireFormat, frame.getSequence()));
+                }
+            } else if (reaches((Freehand) stroke, delta)) {
+                strokes.add(id);
+                outbox.offer(ShapeFrame.encode(StrokeDelta.begin(id, (Freehand) stroke), wireFormat,
+                        frame.getSequence()));
+            }
+        }
+
+        /**
+         * Checks if a part of a stroke, or the segment joining it to the stroke, touches the tiles.
+         * @param freehand the stroke, the part already appended.
+         * @param delta part of the stroke.
+         * @return true if the part reaches the tiles.
+         */
+        private boolean reaches(Freehand freehand, StrokeDelta delta) {
+            if (delta.intersects(area)) {
+                return true;
+            }
+            int previous = freehand.getPointCount() - delta.getPointCount() - 1;
+            if (delta.getPointCount() == 0 || previous < 0) {
+                return false;
+            }
+            int fromX = freehand.getPointX(previous);
+            int fromY = freehand.getPointY(previous);
+            int pad = freehand.getThickness() + 1;
+            return new Rectangle(Math.min(fromX, delta.getPointX(0)) - pad, Math.min(fromY, delta.getPointY(0)) - pad,
+                    Math.abs(fromX - delta.getPointX(0)) + 2 * pad + 1,
+                    Math.abs(fromY - delta.getPointY(0)) + 2 * pad + 1).intersects(area);
+        }
+
+        @Override
+        public void dispose() {
+            subscription.dispose();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return subscription.isDisposed();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Holds the rooms of the server, created when the first client joins them, and the shards that serve them.
+ * Rooms are never removed, so clients may only create up to a maximum number of them, see {@link #join}.
+ *
+ * A shard is a single thread. Rooms are spread over a fixed number of shards by the hash of their name,
+ * so the rooms on one shard are served in turn while the other shards carry on.
+ *
+ * All rooms share one shape log. A join-room command is logged before a shape whenever the room differs
+ * from that of the previous record, and recovery follows these to rebuild every room. Records before the
+ * first such command belong to the default room.
+ *
+ * On a follower node the registry has a {@link Forwarder}, which sends the shapes of clients to the leader.
+ *
+ * The canvases of all rooms are rendered into images on one more thread, see {@link CanvasRaster}.
+ */
+public class RoomRegistry {
+
+    /**
+     * Sends shapes received on a follower node to the leader.
+     */
+    public interface Forwarder {
+        /**
+         * Forward a shape. Must not block.
+         * @param room room the shape was drawn in.
+         * @param shape the shape.
+         */
+        void forward(Room room, Shape shape);
+    }
+
+    private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final ExecutorService[] executors;
+    private final Scheduler[] shards;
+    private final ExecutorService rendererExecutor;
+    private final Scheduler renderer;
+    private final WireFormat wireFormat;
+    private final int historyCapacity;
+
+    // Log of accepted shapes of all rooms, or null if the canvases are only kept in memory.
+    private final ShapeLog shapeLog;
+    private Room loggedRoom; // Room of the last logged shape, guarded by this.
+
+    private volatile Forwarder forwarder;
+    private volatile int rasterJoinShapes;
+    private volatile int maxRooms = Integer.MAX_VALUE;
+    private final List<Consumer<Room>> roomListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Create the registry and start the shards.
+     * @param shardCount number of shard threads.
+     * @param wireFormat format the shapes of the rooms are encoded in.
+     * @param historyCapacity number of latest shapes each room keeps for clients that reconnect.
+     * @param shapeLog log of accepted shapes, or null.
+     */
+    public RoomRegistry(int shardCount, WireFormat wireFormat, int historyCapacity, ShapeLog shapeLog) {
+        this.wireFormat = wireFormat;
+        this.historyCapacity = historyCapacity;
+        this.shapeLog = shapeLog;
+        executors = new ExecutorService[shardCount];
+        shards = new Scheduler[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String threadName = "room-shard-" + i;
+            executors[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            shards[i] = Schedulers.from(executors[i]);
+        }
+        rendererExecutor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "canvas-raster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renderer = Schedulers.from(rendererExecutor);
+    }
+
+    /**
+     * Gets a room, creating it if it does not exist.
+     * @param name name of the room, see {@link JoinRoom#isValidName}.
+     * @return the room.
+     * @throws IllegalArgumentException if the name is not valid.
+     */
+    public Room get(String name) {
+        Room room = rooms.get(name);
+        if (room != null) {
+            return room;
+        }
+        if (!JoinRoom.isValidName(name)) {
+            throw new IllegalArgumentException("Invalid room name: " + name);
+        }
+        Room created = new Room(name, this, shardOf(name), renderer, wireFormat, historyCapacity);
+        room = rooms.putIfAbsent(name, created);
+        if (room != null) {
+            return room;
+        }
+        roomListeners.forEach(listener -> listener.accept(created));
+        return created;
+    }
+
+    /**
+     * Gets a room for a client joining it, creating it only while there are fewer rooms than the maximum.
+     * Recovery and replication create rooms with {@link #get} instead, since the log and the leader already
+     * hold them.
+     * @param name name of the room, see {@link JoinRoom#isValidName}.
+     * @return the room.
+     * @throws IllegalArgumentException if the name is not valid.
+     * @throws IllegalStateException if the room does not exist and there are already as many rooms as allowed.
+     */
+    public Room join(String name) {
+        Room room = rooms.get(name);
+        if (room != null) {
+            return room;
+        }
+        synchronized (rooms) {
+            // The default room can always be joined, so it keeps its place even before it exists.
+            int taken = rooms.size() + (rooms.containsKey(JoinRoom.DEFAULT_ROOM) ? 0 : 1);
+            if (!rooms.containsKey(name) && !name.equals(JoinRoom.DEFAULT_ROOM) && taken >= maxRooms) {
+                throw new IllegalStateException("Too many rooms, cannot create " + name);
+            }
+            return get(name);
+        }
+    }
+
+    /**
+     * Gets a room if it exists.
+     * @param name name of the room.
+     * @return the room, or null if no client joined it.
+     */
+    public Room find(String name) {
+        return rooms.get(name);
+    }
+
+    /**
+     * Adds a listener called with every room created from now on, on the thread that created it.
+     * @param listener listener, must not block.
+     */
+    public void addRoomListener(Consumer<Room> listener) {
+        roomListeners.add(listener);
+    }
+
+    /**
+     * Gets the default room.
+     * @return the room.
+     */
+    public Room getDefault() {
+        return get(JoinRoom.DEFAULT_ROOM);
+    }
+
+    private Scheduler shardOf(String name) {
+        return shards[Math.floorMod(name.hashCode(), shards.length)];
+    }
+
+    /**
+     * Rebuilds the rooms from the shape log. Must be called before clients connect.
+     * @return number of recovered shapes.
+     * @throws IOException if the log is not a shape log.
+     */
+    public int recover() throws IOException {
+        if (shapeLog == null) {
+            return 0;
+        }
+        Room[] current = {getDefault()};
+        int[] count = {0};
+        shapeLog.recover(shape -> {
+            if (shape instanceof JoinRoom) {
+                current[0] = get(((JoinRoom) shape).getRoom());
+            } else {
+                current[0].restore(shape);
+                count[0]++;
+            }
+        });
+        synchronized (this) {
+            loggedRoom = current[0];
+        }
+        return count[0];
+    }
+
+    /**
+     * Appends a shape of a room to the shape log. Called on the shard of the room.
+     * @param room room the shape was accepted in.
+     * @param shape shape to append.
+     * @return position in the log after the shape, or 0 if there is no log.
+     * @throws IOException if the log could not be grown.
+     */
+    synchronized int append(Room room, Shape shape) throws IOException {
+        if (shapeLog == null) {
+            return 0;
+        }
+        if (room != loggedRoom) {
+            shapeLog.append(new JoinRoom(room.getName()));
+            loggedRoom = room;
+        }
+        return shapeLog.append(shape);
+    }
+
+    /**
+     * Gets the forwarder of a follower node.
+     * @return forwarder, or null if this node accepts shapes itself.
+     */
+    public Forwarder getForwarder() {
+        return forwarder;
+    }
+
+    /**
+     * Makes this node a follower, sending shapes to the leader instead of accepting them.
+     * @param forwarder forwarder to the leader.
+     */
+    public void setForwarder(Forwarder forwarder) {
+        this.forwarder = forwarder;
+    }
+
+    /**
+     * Gets the shape log.
+     * @return log, or null if the canvases are only kept in memory.
+     */
+    public ShapeLog getShapeLog() {
+        return shapeLog;
+    }
+
+    public Collection<Room> getRooms() {
+        return rooms.values();
+    }
+
+    /**
+     * Gets the size of canvas from which joining clients are sent an image of the canvas instead of its shapes.
+     * @return number of shapes, or 0 if joining clients are always sent the shapes.
+     */
+    public int getRasterJoinShapes() {
+        return rasterJoinShapes;
+    }
+
+    /**
+     * Sends clients joining a canvas of at least this many shapes an image of the canvas, followed by the
+     * shapes added after it. The image is rendered again every time the canvas grew by as many shapes.
+     * @param rasterJoinShapes number of shapes, or 0 to always send the shapes.
+     */
+    public void setRasterJoinShapes(int rasterJoinShapes) {
+        this.rasterJoinShapes = rasterJoinShapes;
+    }
+
+    /**
+     * Limits the number of rooms clients may create with {@link #join}, the default room included.
+     * @param maxRooms number of rooms.
+     */
+    public void setMaxRooms(int maxRooms) {
+        this.maxRooms = maxRooms;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Stops the shards after the work already submitted to them, and waits for them to finish.
+     * @param timeoutMillis longest time to wait for each shard.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+        for (ExecutorService executor : executors) {
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        rendererExecutor.shutdown();
+    }
+}
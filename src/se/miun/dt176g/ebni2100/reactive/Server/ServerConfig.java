@@ -0,0 +1,358 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.awt.GraphicsEnvironment;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Holds the server settings, parsed from command-line arguments of the form "--name=value".
+ * A single argument without a name selects the wire format.
+ */
+public class ServerConfig {
+
+    /**
+     * Available ways of handling client connections.
+     */
+    public enum Engine {
+        /** One blocking reader per client on the io-scheduler. */
+        BLOCKING,
+        /** Non-blocking channels served by a small, fixed set of selector threads. */
+        NIO
+    }
+
+    /**
+     * Ways of showing the canvas of the default room on the server.
+     */
+    public enum View {
+        /** A frame repainted whenever a shape is accepted, called from the shard of the room. */
+        LIVE,
+        /** A frame that samples the canvas a few times per second on the event dispatching thread. */
+        SAMPLED,
+        /** No frame, for servers without a display. */
+        HEADLESS
+    }
+
+    /**
+     * Kinds of threads the blocking engine reads from and writes to each client on.
+     */
+    public enum ClientThreads {
+        /** Platform threads of the io-scheduler, one held by each blocked reader and writer. */
+        PLATFORM,
+        /**
+         * A new virtual thread for each reader and writer, needs Java 21 or later. Experimental: it has not
+         * been benchmarked against the platform threads yet.
+         */
+        VIRTUAL
+    }
+
+    private int port = 12345;
+    private WireFormat wireFormat = WireFormat.parse(null);
+    private Engine engine = Engine.BLOCKING;
+    private ClientThreads clientThreads = ClientThreads.PLATFORM;
+    private View view = GraphicsEnvironment.isHeadless() ? View.HEADLESS : View.LIVE;
+    private int viewFps = 4;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private int shards = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 1024;
+    private ClientOutbox.SlowConsumerPolicy slowConsumerPolicy = ClientOutbox.SlowConsumerPolicy.SNAPSHOT;
+    private int resumeHistory = 1024;
+    private int rasterJoin = 1000;
+    private int maxRooms = 1000;
+    private int httpPort;
+    private Path logPath;
+    private ShapeLog.Durability durability = ShapeLog.Durability.BATCH;
+    private long logFlushMillis = 10;
+    private double simplifyTolerance;
+    private int peerPort;
+    private String leaderHost;
+    private int leaderPort;
+
+    /**
+     * Parse the command-line arguments.
+     * @param args command-line arguments.
+     * @return parsed settings.
+     * @throws IllegalArgumentException if an argument is unknown or has an invalid value.
+     */
+    public static ServerConfig parse(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                config.wireFormat = WireFormat.parse(arg);
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Missing value: " + arg);
+            }
+            config.set(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        config.validate();
+        return config;
+    }
+
+    /**
+     * Set a single named option.
+     * @param name name of the option.
+     * @param value value of the option.
+     */
+    private void set(String name, String value) {
+        switch (name) {
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "wire":
+                wireFormat = WireFormat.parse(value);
+                break;
+            case "engine":
+                engine = Engine.valueOf(value.trim().toUpperCase());
+                break;
+            case "client-threads":
+                clientThreads = ClientThreads.valueOf(value.trim().toUpperCase());
+                break;
+            case "view":
+                view = View.valueOf(value.trim().toUpperCase());
+                break;
+            case "view-fps":
+                viewFps = Integer.parseInt(value);
+                break;
+            case "workers":
+                workerThreads = Integer.parseInt(value);
+                break;
+            case "shards":
+                shards = Integer.parseInt(value);
+                break;
+            case "queue-capacity":
+                queueCapacity = Integer.parseInt(value);
+                break;
+            case "slow-consumer":
+                slowConsumerPolicy = ClientOutbox.SlowConsumerPolicy.valueOf(value.trim().toUpperCase());
+                break;
+            case "resume-history":
+                resumeHistory = Integer.parseInt(value);
+                break;
+            case "raster-join":
+                rasterJoin = Integer.parseInt(value);
+                break;
+            case "max-rooms":
+                maxRooms = Integer.parseInt(value);
+                break;
+            case "http-port":
+                httpPort = Integer.parseInt(value);
+                break;
+            case "log":
+                logPath = Paths.get(value);
+                break;
+            case "durability":
+                durability = ShapeLog.Durability.valueOf(value.trim().toUpperCase());
+                break;
+            case "log-flush-ms":
+                logFlushMillis = Long.parseLong(value);
+                break;
+            case "simplify":
+                simplifyTolerance = Double.parseDouble(value);
+                break;
+            case "peer-port":
+                peerPort = Integer.parseInt(value);
+                break;
+            case "leader": {
+                int colon = value.lastIndexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("--leader must be host:port");
+                }
+                leaderHost = value.substring(0, colon);
+                leaderPort = Integer.parseInt(value.substring(colon + 1));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+    /**
+     * Check that the combination of options is supported.
+     */
+    private void validate() {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("--workers must be at least 1");
+        }
+        if (clientThreads == ClientThreads.VIRTUAL && engine != Engine.BLOCKING) {
+            throw new IllegalArgumentException("--client-threads=virtual only applies to the blocking engine");
+        }
+        if (clientThreads == ClientThreads.VIRTUAL && !VirtualThreads.isSupported()) {
+            throw new IllegalArgumentException("--client-threads=virtual needs Java 21 or later, this is "
+                    + Runtime.version());
+        }
+        if (view != View.HEADLESS && GraphicsEnvironment.isHeadless()) {
+            throw new IllegalArgumentException("--view=" + view.name().toLowerCase()
+                    + " needs a display, use --view=headless");
+        }
+        if (viewFps < 1 || viewFps > 60) {
+            throw new IllegalArgumentException("--view-fps must be between 1 and 60");
+        }
+        if (shards < 1) {
+            throw new IllegalArgumentException("--shards must be at least 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("--queue-capacity must be at least 1");
+        }
+        if (resumeHistory < 0) {
+            throw new IllegalArgumentException("--resume-history must not be negative");
+        }
+        if (rasterJoin < 0) {
+            throw new IllegalArgumentException("--raster-join must not be negative");
+        }
+        if (maxRooms < 1) {
+            throw new IllegalArgumentException("--max-rooms must be at least 1");
+        }
+        if (httpPort < 0 || httpPort > 65535) {
+            throw new IllegalArgumentException("--http-port must be a port number, or 0 for none");
+        }
+        if (logFlushMillis < 0) {
+            throw new IllegalArgumentException("--log-flush-ms must not be negative");
+        }
+        if (!(simplifyTolerance >= 0)) {
+            throw new IllegalArgumentException("--simplify must not be negative");
+        }
+        if (leaderHost != null && peerPort > 0) {
+            throw new IllegalArgumentException("A follower (--leader) cannot also lead (--peer-port)");
+        }
+        if (leaderHost != null && logPath != null) {
+            throw new IllegalArgumentException("Followers keep no log, the leader logs for the cluster");
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Gets the kind of threads the blocking engine serves each client on.
+     * @return kind of threads.
+     */
+    public ClientThreads getClientThreads() {
+        return clientThreads;
+    }
+
+    /**
+     * Gets how the server shows the canvas of the default room.
+     * @return view, headless by default on machines without a display.
+     */
+    public View getView() {
+        return view;
+    }
+
+    /**
+     * Gets how many times per second the sampled view shows the canvas.
+     * @return frames per second.
+     */
+    public int getViewFps() {
+        return viewFps;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Gets the number of threads the rooms are spread over.
+     * @return number of shards.
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public ClientOutbox.SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    /**
+     * Gets the number of latest shapes each room keeps, so reconnecting clients are only sent what they missed.
+     * @return number of shapes, 0 to always send the canvas.
+     */
+    public int getResumeHistory() {
+        return resumeHistory;
+    }
+
+    /**
+     * Gets the size of canvas from which joining clients are sent an image of the canvas, followed by the
+     * shapes drawn after it, instead of all its shapes.
+     * @return number of shapes, 0 to always send the shapes.
+     */
+    public int getRasterJoin() {
+        return rasterJoin;
+    }
+
+    /**
+     * Gets the largest number of rooms clients may create, the default room included.
+     * @return number of rooms.
+     */
+    public int getMaxRooms() {
+        return maxRooms;
+    }
+
+    /**
+     * Gets the port that images of the canvases are served on over HTTP.
+     * @return port, or 0 if the images are not served.
+     */
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    /**
+     * Gets the path of the shape log.
+     * @return path, or null if the canvas is only kept in memory.
+     */
+    public Path getLogPath() {
+        return logPath;
+    }
+
+    public ShapeLog.Durability getDurability() {
+        return durability;
+    }
+
+    public long getLogFlushMillis() {
+        return logFlushMillis;
+    }
+
+    /**
+     * Gets the tolerance of freehand simplification, in multiples of the stroke thickness.
+     * @return tolerance, or 0 if strokes are not simplified.
+     */
+    public double getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+    /**
+     * Gets the port followers link to, if this node leads a cluster.
+     * @return port, or 0 if this node does not lead.
+     */
+    public int getPeerPort() {
+        return peerPort;
+    }
+
+    /**
+     * Gets the host of the leader, if this node follows one.
+     * @return host, or null if this node does not follow.
+     */
+    public String getLeaderHost() {
+        return leaderHost;
+    }
+
+    public int getLeaderPort() {
+        return leaderPort;
+    }
+}
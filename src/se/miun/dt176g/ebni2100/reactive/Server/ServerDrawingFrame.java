@@ -1,6 +1,7 @@
 package se.miun.dt176g.ebni2100.reactive.Server;
 
 import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.ShapeGrid;
 
 import javax.swing.*;
 import java.awt.*;
@@ -11,13 +12,20 @@ import java.util.List;
 /**
  * Represents the main frame for the server-side drawing application.
  * Displays incoming shapes received from connected clients.
+ *
+ * The frame is either updated by the room whenever a shape is accepted, or samples the canvas of the room
+ * itself at a fixed frame rate, so that showing the canvas never delays accepting shapes.
  */
 public class ServerDrawingFrame extends JFrame {
 
-    // List to store incoming shapes from connected clients
-    private List<Shape> incomingShapes = new ArrayList<>();
+    // Immutable view of the incoming shapes from connected clients, replaced on every update.
+    private volatile List<Shape> incomingShapes = new ArrayList<>();
     private final JPanel shapeDisplayPanel;
 
+    // Spatial index of the painted shapes, only used on the event dispatching thread.
+    private final ShapeGrid grid = new ShapeGrid(64);
+    private List<Shape> indexedShapes = new ArrayList<>();
+
     /**
      * Initializes the server drawing frame.
      * Sets up the frame properties and creates a custom panel for shape display.
@@ -32,7 +40,15 @@ public class ServerDrawingFrame extends JFrame {
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
-                for (Shape shape : incomingShapes){
+                List<Shape> shapes = incomingShapes;
+                updateIndex(shapes);
+
+                // Only draw the shapes in the area being repainted.
+                java.awt.Rectangle clip = g.getClipBounds();
+                Iterable<Shape> visible = clip == null || clip.contains(0, 0, getWidth(), getHeight())
+                        ? shapes
+                        : grid.query(clip);
+                for (Shape shape : visible){
                     shape.draw(g);
                 }
             }
@@ -42,14 +58,72 @@ public class ServerDrawingFrame extends JFrame {
         this.getContentPane().add(shapeDisplayPanel, BorderLayout.CENTER);
     }
 
+    /**
+     * Shows the canvas of a room by sampling it at a fixed rate on the event dispatching thread, instead of
+     * being updated by the room for every accepted shape.
+     * @param room room to show.
+     * @param fps samples per second.
+     */
+    public void sample(Room room, int fps) {
+        setTitle("Server Drawing (" + fps + " fps)");
+        Timer sampler = new Timer(1000 / fps, e -> updateIncomingShapes(room.getShapes()));
+        sampler.setCoalesce(true);
+        sampler.start();
+    }
+
     /**
      * Updates the list of incoming shapes and triggers a repaint of the shape display panel.
-     * @param shapes List of incoming shapes received from connected clients.
+     * @param shapes Immutable view of the incoming shapes received from connected clients.
      */
     public void updateIncomingShapes(List<Shape> shapes) {
+        List<Shape> previous = incomingShapes;
+        if (shapes.size() == previous.size() && isContinuation(previous, shapes)) {
+            return; // Nothing changed since the last update.
+        }
         incomingShapes = shapes;
-        shapeDisplayPanel.repaint();
-        shapeDisplayPanel.revalidate();
+
+        // If shapes were only added, repaint just the area they cover.
+        if (isContinuation(previous, shapes) && shapes.size() > previous.size()) {
+            java.awt.Rectangle dirty = shapes.get(previous.size()).getBounds();
+            for (int i = previous.size() + 1; i < shapes.size(); i++) {
+                dirty = dirty.union(shapes.get(i).getBounds());
+            }
+            shapeDisplayPanel.repaint(dirty);
+        } else {
+            shapeDisplayPanel.repaint();
+        }
+    }
+
+    /**
+     * Brings the spatial index up to date with the shapes. Shapes that were added are indexed, and the
+     * index is rebuilt if the canvas was cleared in between.
+     * @param shapes shapes to be painted.
+     */
+    private void updateIndex(List<Shape> shapes) {
+        if (!isContinuation(indexedShapes, shapes)) {
+            grid.clear();
+            indexedShapes = new ArrayList<>();
+        }
+        for (int i = grid.size(); i < shapes.size(); i++) {
+            grid.add(shapes.get(i));
+        }
+        indexedShapes = shapes;
+    }
+
+    /**
+     * Checks if a list of shapes starts with all shapes of an earlier list, i.e. shapes were only added.
+     * Shape lists are append-only until the canvas is cleared, so comparing the first and last shape of
+     * the earlier list is enough.
+     * @param earlier earlier list.
+     * @param later later list.
+     * @return true if the later list continues the earlier.
+     */
+    private static boolean isContinuation(List<Shape> earlier, List<Shape> later) {
+        if (earlier.isEmpty()) {
+            return true;
+        }
+        int last = earlier.size() - 1;
+        return later.size() > last && later.get(0) == earlier.get(0) && later.get(last) == earlier.get(last);
     }
 
 }
@@ -0,0 +1,195 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeFrame;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collects the measurements of the server and publishes them over JMX, see {@link ServerMetricsMXBean}.
+ *
+ * The threads reading, accepting and sending shapes record into static counters and histograms, which
+ * neither allocate nor lock, so the measurements cost the clients next to nothing. Everything else is
+ * computed when the measurements are read.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    /**
+     * Name the measurements are published under.
+     */
+    public static final String OBJECT_NAME = "se.miun.dt176g.ebni2100.reactive:type=DrawingServer";
+
+    // Recorded by the threads serving the clients and the rooms.
+    private static final LongAdder shapesReceived = new LongAdder();
+    private static final LongAdder shapesSent = new LongAdder();
+    private static final ConcurrentHistogram encodeTime = new ConcurrentHistogram();
+    private static final ConcurrentHistogram fanOutLatency = new ConcurrentHistogram();
+
+    private final RoomRegistry rooms;
+    private final Supplier<Map<SocketAddress, Integer>> queueDepths;
+
+    // Rates over the last whole second, and the totals they were computed from, only changed by the ticker.
+    private volatile long receivedPerSecond;
+    private volatile long sentPerSecond;
+    private long lastReceived;
+    private long lastSent;
+
+    /**
+     * Create the measurements of a server.
+     * @param rooms rooms of the server.
+     * @param queueDepths gives the number of shapes waiting to be sent to each connected client.
+     */
+    public ServerMetrics(RoomRegistry rooms, Supplier<Map<SocketAddress, Integer>> queueDepths) {
+        this.rooms = rooms;
+        this.queueDepths = queueDepths;
+    }
+
+    /**
+     * Publishes the measurements on the platform MBean server and starts computing the rates.
+     * @return disposable that stops computing the rates and withdraws the measurements.
+     * @throws JMException if the measurements could not be published.
+     */
+    public Disposable register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        server.registerMBean(this, name);
+        Disposable ticker = Schedulers.computation().schedulePeriodicallyDirect(this::tick, 1, 1, TimeUnit.SECONDS);
+        return Disposable.fromAction(() -> {
+            ticker.dispose();
+            server.unregisterMBean(name);
+        });
+    }
+
+    private void tick() {
+        long received = shapesReceived.sum();
+        long sent = shapesSent.sum();
+        receivedPerSecond = Math.max(0, received - lastReceived);
+        sentPerSecond = Math.max(0, sent - lastSent);
+        lastReceived = received;
+        lastSent = sent;
+    }
+
+    /**
+     * Counts a shape received from a client.
+     */
+    public static void shapeReceived() {
+        shapesReceived.increment();
+    }
+
+    /**
+     * Counts a shape written to a client.
+     */
+    public static void shapeSent() {
+        shapesSent.increment();
+    }
+
+    /**
+     * Records the time taken to encode an accepted shape.
+     * @param startNanos time the encoding started, from {@link System#nanoTime()}.
+     */
+    public static void encoded(long startNanos) {
+        encodeTime.recordSince(startNanos);
+    }
+
+    /**
+     * Records the fan-out latency of an accepted shape taken from a client's send-queue.
+     * @param frame the shape, ignored if it was not accepted as a new shape.
+     */
+    public static void taken(ShapeFrame frame) {
+        if (frame.getSequence() > 0) {
+            fanOutLatency.recordSince(frame.getAcceptedNanos());
+        }
+    }
+
+    @Override
+    public int getConnectedClients() {
+        return queueDepths.get().size();
+    }
+
+    @Override
+    public long getShapesReceived() {
+        return shapesReceived.sum();
+    }
+
+    @Override
+    public long getShapesSent() {
+        return shapesSent.sum();
+    }
+
+    @Override
+    public long getShapesReceivedPerSecond() {
+        return receivedPerSecond;
+    }
+
+    @Override
+    public long getShapesSentPerSecond() {
+        return sentPerSecond;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        queueDepths.get().forEach((address, depth) -> depths.put(String.valueOf(address), depth));
+        return depths;
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        int max = 0;
+        for (int depth : queueDepths.get().values()) {
+            max = Math.max(max, depth);
+        }
+        return max;
+    }
+
+    @Override
+    public Summary getEncodeTime() {
+        return encodeTime.summarize();
+    }
+
+    @Override
+    public Summary getFanOutLatency() {
+        return fanOutLatency.summarize();
+    }
+
+    @Override
+    public int getRooms() {
+        return rooms.getRooms().size();
+    }
+
+    @Override
+    public int getCanvasShapes() {
+        int shapes = 0;
+        for (Room room : rooms.getRooms()) {
+            shapes += room.size();
+        }
+        return shapes;
+    }
+
+    @Override
+    public int getHistoryShapes() {
+        int shapes = 0;
+        for (Room room : rooms.getRooms()) {
+            shapes += room.getHistorySize();
+        }
+        return shapes;
+    }
+
+    @Override
+    public void reset() {
+        shapesReceived.reset();
+        shapesSent.reset();
+        encodeTime.reset();
+        fanOutLatency.reset();
+    }
+}
@@ -0,0 +1,144 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+
+/**
+ * Measurements of a running server, published over JMX as {@value ServerMetrics#OBJECT_NAME}. They can be
+ * read with jconsole or any other JMX client attached to the server process.
+ *
+ * Counters and histograms cover the time since the server started, or since they were last reset.
+ */
+public interface ServerMetricsMXBean {
+
+    /**
+     * Count, mean, percentiles and maximum of a histogram of durations, in microseconds.
+     */
+    class Summary {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        @ConstructorProperties({"count", "mean", "p50", "p99", "p999", "max"})
+        public Summary(long count, double mean, long p50, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50 %d us, p99 %d us, p99.9 %d us, max %d us (%d samples)",
+                    p50, p99, p999, max, count);
+        }
+    }
+
+    /**
+     * Gets the number of connected clients.
+     * @return connected clients.
+     */
+    int getConnectedClients();
+
+    /**
+     * Gets the number of shapes received from clients.
+     * @return received shapes.
+     */
+    long getShapesReceived();
+
+    /**
+     * Gets the number of shapes written to clients, counting every client a shape is sent to.
+     * @return sent shapes.
+     */
+    long getShapesSent();
+
+    /**
+     * Gets the number of shapes received from clients during the last whole second.
+     * @return shapes per second.
+     */
+    long getShapesReceivedPerSecond();
+
+    /**
+     * Gets the number of shapes written to clients during the last whole second.
+     * @return shapes per second.
+     */
+    long getShapesSentPerSecond();
+
+    /**
+     * Gets the number of shapes waiting to be sent to each connected client.
+     * @return queue depth per client address.
+     */
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * Gets the deepest send-queue of the connected clients.
+     * @return queue depth.
+     */
+    int getMaxQueueDepth();
+
+    /**
+     * Gets the time taken to encode an accepted shape into the frame sent to the clients of its room.
+     * @return encoding time in microseconds.
+     */
+    Summary getEncodeTime();
+
+    /**
+     * Gets the time from a shape being accepted in its room to it being taken from the send-queue of a client
+     * in the room, to be written. Measured once for every client the shape is sent to. Shapes replayed to
+     * joining clients are not measured.
+     * @return fan-out latency in microseconds.
+     */
+    Summary getFanOutLatency();
+
+    /**
+     * Gets the number of rooms.
+     * @return rooms.
+     */
+    int getRooms();
+
+    /**
+     * Gets the number of shapes on the canvases of all rooms.
+     * @return stored shapes.
+     */
+    int getCanvasShapes();
+
+    /**
+     * Gets the number of shapes the rooms keep for clients that reconnect.
+     * @return shapes in the resume histories.
+     */
+    int getHistoryShapes();
+
+    /**
+     * Starts a new measurement by resetting the counters and histograms.
+     */
+    void reset();
+}
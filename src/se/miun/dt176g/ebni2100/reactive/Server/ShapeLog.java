@@ -0,0 +1,359 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Protocol.BinaryShapeCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped log of the shapes accepted by the server, used to rebuild the canvas after
+ * a restart.
+ *
+ * The file starts with the stream header of {@link BinaryShapeCodec}, followed by one record per shape:
+ * the binary frame of the shape and a CRC32C of the frame. Recovery stops at the first record that is
+ * incomplete or fails the checksum, so a record torn by a crash is dropped.
+ *
+ * A flusher thread forces written records to disk, several records at a time (group commit). How long
+ * callers wait for that depends on the {@link Durability} mode.
+ */
+public class ShapeLog implements Closeable {
+
+    /**
+     * When appended shapes are forced to disk.
+     */
+    public enum Durability {
+        /** Left to the operating system. Survives a server crash, but not a power loss. */
+        NONE,
+        /** Forced by the flusher every few milliseconds, callers do not wait. */
+        BATCH,
+        /**
+         * Forced before the waiting caller continues, concurrent callers share one force. The server reads
+         * nothing more from the sender until its shape is durable, but the shape is sent to the other clients
+         * and followers as soon as it is written, so they may see a shape that a crash then loses.
+         */
+        SYNC
+    }
+
+    private static final int INITIAL_MAPPING = 64 * 1024 * 1024;
+    private static final int CRC_LENGTH = 4;
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final long flushMillis;
+    private final CRC32C crc = new CRC32C();
+
+    private volatile MappedByteBuffer mapping;
+    private volatile int writePosition;
+    private int durablePosition;
+    private final List<PendingCallback> callbacks = new ArrayList<>();
+    private volatile boolean running = true;
+    private Thread flusher;
+
+    private ShapeLog(FileChannel channel, Durability durability, long flushMillis) {
+        this.channel = channel;
+        this.durability = durability;
+        this.flushMillis = flushMillis;
+    }
+
+    /**
+     * Open the log, creating the file if it does not exist. Call {@link #recover} before appending.
+     * @param path path of the log file.
+     * @param durability when appended shapes are forced to disk.
+     * @param flushMillis interval of the flusher in batch-mode.
+     * @return opened log.
+     * @throws IOException if the file could not be opened or mapped.
+     */
+    public static ShapeLog open(Path path, Durability durability, long flushMillis) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ShapeLog log = new ShapeLog(channel, durability, flushMillis);
+        log.map(Math.max(INITIAL_MAPPING, channel.size()));
+        return log;
+    }
+
+    /**
+     * Read all valid records, and position the log after the last of them.
+     * @param consumer receives the recovered shapes in order.
+     * @return number of recovered shapes.
+     * @throws IOException if the file is not a shape log.
+     */
+    public int recover(Consumer<Shape> consumer) throws IOException {
+        ByteBuffer buffer = mapping.duplicate();
+        byte[] header = BinaryShapeCodec.header();
+        if (buffer.get(0) == 0) {
+            // New log, write the header.
+            buffer.put(header);
+            writePosition = header.length;
+            durablePosition = writePosition;
+            startFlusher();
+            return 0;
+        }
+        BinaryShapeCodec.readHeader(buffer);
+
+        int[] count = new int[1];
+        int validEnd = readRecords(buffer, crc, shape -> {
+            consumer.accept(shape);
+            count[0]++;
+        });
+
+        // Overwrite whatever follows the last valid record.
+        writePosition = validEnd;
+        durablePosition = writePosition;
+        startFlusher();
+        return count[0];
+    }
+
+    /**
+     * Read all valid records of a log without opening it for appending, such as a log recorded by another
+     * server that is still running.
+     * @param path path of the log file.
+     * @param consumer receives the shapes in order.
+     * @return number of shapes read.
+     * @throws IOException if the file could not be read or is not a shape log.
+     */
+    public static int read(Path path, Consumer<Shape> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            BinaryShapeCodec.readHeader(buffer);
+            int[] count = new int[1];
+            readRecords(buffer, new CRC32C(), shape -> {
+                consumer.accept(shape);
+                count[0]++;
+            });
+            return count[0];
+        }
+    }
+
+    /**
+     * Read the records following the header, up to the first that is incomplete or fails the checksum.
+     * @param buffer buffer positioned after the header.
+     * @param crc checksum to use.
+     * @param consumer receives the shapes in order.
+     * @return position after the last valid record.
+     * @throws IOException if a valid record could not be decoded.
+     */
+    private static int readRecords(ByteBuffer buffer, CRC32C crc, Consumer<Shape> consumer) throws IOException {
+        int validEnd = buffer.position();
+        while (true) {
+            int start = validEnd;
+            int length;
+            try {
+                length = BinaryShapeCodec.readFrameLength(buffer);
+            } catch (StreamCorruptedException e) {
+                break;
+            }
+            if (length <= 0 || buffer.remaining() < length + CRC_LENGTH) {
+                break;
+            }
+            int end = buffer.position() + length;
+            if (checksum(crc, buffer, start, end) != buffer.getInt(end)) {
+                break;
+            }
+
+            ByteBuffer body = buffer.duplicate();
+            body.limit(end);
+            consumer.accept(BinaryShapeCodec.decode(body));
+            validEnd = end + CRC_LENGTH;
+            buffer.position(validEnd);
+        }
+        return validEnd;
+    }
+
+    /**
+     * Append a shape. Callers must not append concurrently.
+     * @param shape shape to append.
+     * @return position after the record, to be passed to {@link #awaitDurable} or {@link #whenDurable}.
+     * @throws IOException if the log could not be grown.
+     */
+    public int append(Shape shape) throws IOException {
+        byte[] frame = BinaryShapeCodec.encodeFrame(shape);
+        int recordLength = frame.length + CRC_LENGTH;
+        if (mapping.capacity() - writePosition < recordLength + 1) {
+            grow(writePosition + recordLength + 1);
+        }
+
+        ByteBuffer buffer = mapping.duplicate();
+        buffer.position(writePosition);
+        buffer.put(frame);
+        crc.reset();
+        crc.update(frame);
+        buffer.putInt((int) crc.getValue());
+        // Mark the end of the log, in case a longer, older record is being overwritten.
+        buffer.put((byte) 0);
+
+        writePosition += recordLength;
+        if (durability != Durability.NONE) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        return writePosition;
+    }
+
+    /**
+     * Blocks until the log is durable up to the given position. Returns at once unless in sync-mode.
+     * @param position position returned by append.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized void awaitDurable(int position) throws InterruptedException {
+        if (durability != Durability.SYNC) {
+            return;
+        }
+        while (durablePosition < position && running) {
+            wait();
+        }
+    }
+
+    /**
+     * Run a callback once the log is durable up to the given position. Runs it at once unless in sync-mode,
+     * otherwise on the flusher thread.
+     * @param position position returned by append.
+     * @param callback callback, must not block.
+     */
+    public void whenDurable(int position, Runnable callback) {
+        synchronized (this) {
+            if (durability == Durability.SYNC && durablePosition < position && running) {
+                callbacks.add(new PendingCallback(position, callback));
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Gets the durability mode.
+     * @return durability.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Force remaining records to disk and close the file.
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        mapping.force();
+        channel.close();
+    }
+
+    private void startFlusher() {
+        if (durability == Durability.NONE) {
+            return;
+        }
+        flusher = new Thread(this::flushLoop, "shape-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Force written records to disk until closed. In batch-mode the flusher waits for the interval, so
+     * records written in between share a force. In sync-mode it forces as soon as anything was written,
+     * and records written during a force share the next one.
+     */
+    private void flushLoop() {
+        List<Runnable> ready = new ArrayList<>();
+        while (true) {
+            try {
+                synchronized (this) {
+                    while (running && writePosition == durablePosition) {
+                        wait();
+                    }
+                    if (!running) {
+                        return;
+                    }
+                }
+                if (durability == Durability.BATCH) {
+                    Thread.sleep(flushMillis);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            int target = writePosition;
+            mapping.force();
+
+            synchronized (this) {
+                durablePosition = target;
+                callbacks.removeIf(pending -> {
+                    if (pending.position <= target) {
+                        ready.add(pending.callback);
+                        return true;
+                    }
+                    return false;
+                });
+                notifyAll();
+            }
+            ready.forEach(Runnable::run);
+            ready.clear();
+        }
+    }
+
+    /**
+     * Map a larger part of the file, at least double the current mapping.
+     * @param minimum minimum size of the mapping.
+     * @throws IOException if the mapping could not be grown.
+     */
+    private void grow(long minimum) throws IOException {
+        long size = Math.max(minimum, (long) mapping.capacity() * 2);
+        if (size > Integer.MAX_VALUE) {
+            if (minimum > Integer.MAX_VALUE) {
+                throw new IOException("Shape log is full");
+            }
+            size = Integer.MAX_VALUE;
+        }
+        map(size);
+    }
+
+    private void map(long size) throws IOException {
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static int checksum(CRC32C crc, ByteBuffer buffer, int start, int end) {
+        ByteBuffer frame = buffer.duplicate();
+        frame.position(start);
+        frame.limit(end);
+        crc.reset();
+        crc.update(frame);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A callback waiting for the log to become durable.
+     */
+    private static class PendingCallback {
+        private final int position;
+        private final Runnable callback;
+
+        PendingCallback(int position, Runnable callback) {
+            this.position = position;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Protocol.BinaryShapeCodec;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes points from freehand strokes that do not change their shape by more than a tolerance, using the
+ * Ramer-Douglas-Peucker algorithm. The tolerance is a factor of the thickness of the stroke, since a small
+ * deviation is not visible in a thick line.
+ *
+ * Parts of a stroke are simplified one at a time, anchored at the last point kept of the previous part, so
+ * every point that is sent on is a point the client drew. One instance is used per client connection, and
+ * is not thread-safe. The metrics are shared by all instances.
+ */
+public class StrokeSimplifier {
+
+    private static final AtomicLong pointsReceived = new AtomicLong();
+    private static final AtomicLong pointsRemoved = new AtomicLong();
+    private static final AtomicLong bytesSaved = new AtomicLong();
+
+    private final double toleranceFactor;
+
+    // Last point kept of each open stroke, as {x, y}.
+    private final Map<Long, int[]> lastPoints = new HashMap<>();
+
+    /**
+     * Create a simplifier.
+     * @param toleranceFactor largest allowed distance of a removed point from the simplified line,
+     *                        in multiples of the stroke thickness.
+     */
+    public StrokeSimplifier(double toleranceFactor) {
+        this.toleranceFactor = toleranceFactor;
+    }
+
+    /**
+     * Simplify a freehand or a part of a stroke. Other shapes are returned unchanged.
+     * @param shape shape received from a client.
+     * @return simplified shape.
+     */
+    public Shape simplify(Shape shape) {
+        if (shape instanceof Freehand) {
+            return simplifyFreehand((Freehand) shape);
+        } else if (shape instanceof StrokeDelta) {
+            return simplifyDelta((StrokeDelta) shape);
+        }
+        return shape;
+    }
+
+    private Shape simplifyFreehand(Freehand freehand) {
+        int count = freehand.getPointCount();
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = freehand.getPointX(i);
+            ys[i] = freehand.getPointY(i);
+        }
+        boolean[] keep = simplify(xs, ys, 0, tolerance(freehand.getThickness()));
+        int kept = record(count, keep, 0);
+        if (kept == count) {
+            return freehand;
+        }
+
+        Freehand simplified = new Freehand(freehand.getColor(), freehand.getThickness());
+        simplified.setPosition(freehand.getX(), freehand.getY());
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                simplified.addPoint(xs[i], ys[i]);
+            }
+        }
+        recordBytes(freehand, simplified);
+        return simplified;
+    }
+
+    private Shape simplifyDelta(StrokeDelta delta) {
+        long id = delta.getStrokeId();
+        if (delta.getPhase() == StrokeDelta.Phase.END) {
+            lastPoints.remove(id);
+            return delta;
+        }
+        int[] anchor = delta.getPhase() == StrokeDelta.Phase.APPEND ? lastPoints.get(id) : null;
+        int count = delta.getPointCount();
+        if (count == 0) {
+            return delta;
+        }
+
+        // Put the anchor in front of the points, it is kept but not sent again.
+        int offset = anchor != null ? 1 : 0;
+        int[] xs = new int[count + offset];
+        int[] ys = new int[count + offset];
+        if (anchor != null) {
+            xs[0] = anchor[0];
+            ys[0] = anchor[1];
+        }
+        for (int i = 0; i < count; i++) {
+            xs[i + offset] = delta.getPointX(i);
+            ys[i + offset] = delta.getPointY(i);
+        }
+        boolean[] keep = simplify(xs, ys, offset, tolerance(delta.getThickness()));
+        lastPoints.put(id, new int[] {xs[xs.length - 1], ys[ys.length - 1]});
+        int kept = record(count, keep, offset);
+        if (kept == count) {
+            return delta;
+        }
+
+        int[] keptXs = new int[kept];
+        int[] keptYs = new int[kept];
+        int k = 0;
+        for (int i = offset; i < xs.length; i++) {
+            if (keep[i]) {
+                keptXs[k] = xs[i];
+                keptYs[k] = ys[i];
+                k++;
+            }
+        }
+        StrokeDelta simplified = new StrokeDelta(delta.getColor(), delta.getThickness(), id, delta.getPhase(),
+                keptXs, keptYs);
+        recordBytes(delta, simplified);
+        return simplified;
+    }
+
+    private double tolerance(int thickness) {
+        return toleranceFactor * Math.max(thickness, 1);
+    }
+
+    /**
+     * Count the points received and removed.
+     * @return number of points kept.
+     */
+    private static int record(int count, boolean[] keep, int offset) {
+        int kept = 0;
+        for (int i = offset; i < keep.length; i++) {
+            if (keep[i]) {
+                kept++;
+            }
+        }
+        pointsReceived.addAndGet(count);
+        pointsRemoved.addAndGet(count - kept);
+        return kept;
+    }
+
+    private static void recordBytes(Shape original, Shape simplified) {
+        bytesSaved.addAndGet(BinaryShapeCodec.encodeFrame(original).length
+                - BinaryShapeCodec.encodeFrame(simplified).length);
+    }
+
+    /**
+     * Mark the points of a polyline to keep, so that no removed point is further than the tolerance
+     * from the line through the kept points. The first and last points are always kept.
+     * @param xs x-coordinates.
+     * @param ys y-coordinates.
+     * @param from index of the first point to consider.
+     * @param tolerance largest allowed distance in pixels.
+     * @return which points to keep, indexed like the coordinates.
+     */
+    static boolean[] simplify(int[] xs, int[] ys, int from, double tolerance) {
+        int n = xs.length;
+        boolean[] keep = new boolean[n];
+        if (n - from <= 2) {
+            for (int i = from; i < n; i++) {
+                keep[i] = true;
+            }
+            return keep;
+        }
+        int first = Math.max(from - 1, 0);
+        keep[first] = true;
+        keep[n - 1] = true;
+
+        // Ranges still to be checked, as pairs of start and end index.
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = first;
+        stack[top++] = n - 1;
+        double limit = tolerance * tolerance;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            int farthest = -1;
+            double max = limit;
+            for (int i = start + 1; i < end; i++) {
+                double d = segmentDistanceSquared(xs[i], ys[i], xs[start], ys[start], xs[end], ys[end]);
+                if (d > max) {
+                    max = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = start;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = end;
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Squared distance from a point to a line segment.
+     */
+    private static double segmentDistanceSquared(int px, int py, int ax, int ay, int bx, int by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Gets the number of freehand points received by all simplifiers.
+     * @return number of points.
+     */
+    public static long getPointsReceived() {
+        return pointsReceived.get();
+    }
+
+    /**
+     * Gets the number of freehand points removed by all simplifiers.
+     * @return number of points.
+     */
+    public static long getPointsRemoved() {
+        return pointsRemoved.get();
+    }
+
+    /**
+     * Gets the number of bytes removed from the binary encoding of the simplified shapes.
+     * @return number of bytes.
+     */
+    public static long getBytesSaved() {
+        return bytesSaved.get();
+    }
+}
@@ -0,0 +1,55 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors that start a new virtual thread for each task, on JVMs that have them (Java 21 and
+ * later). The factory is looked up when the server starts, so the server still builds for and runs on older
+ * JVMs, which only have platform threads.
+ *
+ * The build still targets Java 17, so the factory is called through reflection. The virtual-thread mode is
+ * experimental until it has been measured on a Java 21 JVM, see ClientThreadsBenchmark.
+ */
+public final class VirtualThreads {
+
+    private static final Method NEW_EXECUTOR = findExecutorFactory();
+
+    private VirtualThreads() {
+    }
+
+    private static Method findExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if the JVM has virtual threads.
+     * @return true if virtual threads can be started.
+     */
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread.
+     * @return executor, to be shut down when no longer used.
+     * @throws UnsupportedOperationException if the JVM has no virtual threads.
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later, this is "
+                    + Runtime.version());
+        }
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Could not create virtual threads", e);
+        }
+    }
+}
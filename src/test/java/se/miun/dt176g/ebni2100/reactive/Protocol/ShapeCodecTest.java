@@ -0,0 +1,242 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.ebni2100.reactive.Client.CanvasImage;
+import se.miun.dt176g.ebni2100.reactive.Client.Clear;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Sequenced;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Viewport;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Oval;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.StraightLine;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips every kind of shape through both wire formats, and feeds the binary decoder corrupt frames.
+ * Shapes are compared by their binary encoding, which holds every field that is sent.
+ */
+class ShapeCodecTest {
+
+    private static List<Shape> allShapes() {
+        List<Shape> shapes = new ArrayList<>();
+
+        Rectangle rectangle = new Rectangle(new Color(10, 20, 30, 40), 3);
+        rectangle.setPosition(-5, 7);
+        rectangle.setSize(100, 50);
+        shapes.add(rectangle);
+
+        Oval oval = new Oval(Color.BLUE, 1);
+        oval.setPosition(300, 200);
+        oval.setSize(20, 80);
+        shapes.add(oval);
+
+        StraightLine line = new StraightLine(Color.GREEN, 8);
+        line.setPosition(10, 10);
+        line.setEndPoint(-40, 900);
+        shapes.add(line);
+
+        shapes.add(freehand(1000));
+        shapes.add(new Freehand(Color.BLACK, 2));
+        shapes.add(new Clear(Color.WHITE, 0));
+        shapes.add(new StrokeDelta(Color.RED, 5, 0x1234_5678_9abcL, StrokeDelta.Phase.APPEND,
+                new int[]{1, 2, -3}, new int[]{4, 5, 6}));
+        shapes.add(StrokeDelta.end(42));
+        shapes.add(new JoinRoom("room-1", -7, 123456789L));
+        shapes.add(new Sequenced(Long.MAX_VALUE, rectangle));
+        shapes.add(new CanvasImage(-256, 512, 64, 32, new byte[]{1, 2, 3, 4, 5}));
+        shapes.add(new Viewport(-1000, 2000, 1920, 1080));
+        return shapes;
+    }
+
+    private static Freehand freehand(int points) {
+        Freehand freehand = new Freehand(Color.RED, 3);
+        int x = 500;
+        int y = 400;
+        freehand.setPosition(x, y);
+        for (int i = 0; i < points; i++) {
+            x += (i * 7919) % 7 - 3;
+            y += (i * 104729) % 7 - 3;
+            freehand.addPoint(x, y);
+        }
+        return freehand;
+    }
+
+    private static List<Shape> roundTrip(WireFormat format, List<Shape> shapes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ShapeOutput output = format.newOutput(bytes)) {
+            for (Shape shape : shapes) {
+                output.write(shape);
+            }
+        }
+        List<Shape> decoded = new ArrayList<>();
+        try (ShapeInput input = format.newInput(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (int i = 0; i < shapes.size(); i++) {
+                decoded.add(input.read());
+            }
+            assertThrows(EOFException.class, input::read);
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        }
+        return decoded;
+    }
+
+    private static void assertSameShapes(List<Shape> expected, List<Shape> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getClass(), actual.get(i).getClass());
+            assertArrayEquals(BinaryShapeCodec.encodeFrame(expected.get(i)),
+                    BinaryShapeCodec.encodeFrame(actual.get(i)), "Shape " + i);
+        }
+    }
+
+    @Test
+    void binaryRoundTrip() throws IOException {
+        List<Shape> shapes = allShapes();
+        assertSameShapes(shapes, roundTrip(WireFormat.BINARY, shapes));
+    }
+
+    @Test
+    void javaRoundTrip() throws IOException {
+        List<Shape> shapes = allShapes();
+        assertSameShapes(shapes, roundTrip(WireFormat.JAVA, shapes));
+    }
+
+    @Test
+    void sharedFramesMatchTheEncoding() throws IOException {
+        for (WireFormat format : WireFormat.values()) {
+            for (Shape shape : allShapes()) {
+                byte[] frame = format.encodeFrame(shape);
+                ByteBuffer buffer = ByteBuffer.wrap(frame);
+                int length = BinaryShapeCodec.readFrameLength(buffer);
+                assertEquals(buffer.remaining(), length);
+                assertArrayEquals(BinaryShapeCodec.encodeFrame(shape),
+                        BinaryShapeCodec.encodeFrame(format.decode(buffer)));
+            }
+        }
+    }
+
+    @Test
+    void binaryIsCompact() {
+        Freehand freehand = freehand(1000);
+        int binary = WireFormat.BINARY.encodeFrame(freehand).length;
+        int java = WireFormat.JAVA.encodeFrame(freehand).length;
+        assertTrue(binary <= 2 * 1000 + 64, "Binary freehand of 1000 points is " + binary + " bytes");
+        assertTrue(binary * 4 < java, "Binary " + binary + " bytes, java " + java + " bytes");
+    }
+
+    @Test
+    void rejectsTruncatedFrames() {
+        for (Shape shape : allShapes()) {
+            byte[] body = bodyOf(shape);
+            for (int length = 0; length < body.length; length++) {
+                ByteBuffer buffer = ByteBuffer.wrap(body, 0, length);
+                if (shape instanceof Freehand && length > 0) {
+                    continue; // A freehand ends where its frame ends.
+                }
+                assertThrows(StreamCorruptedException.class, () -> BinaryShapeCodec.decode(buffer),
+                        shape.getClass().getSimpleName() + " cut at " + length);
+            }
+        }
+    }
+
+    @Test
+    void rejectsUnknownTags() {
+        byte[] body = bodyOf(new Clear(Color.WHITE, 0));
+        body[0] = 99;
+        assertThrows(StreamCorruptedException.class, () -> BinaryShapeCodec.decode(ByteBuffer.wrap(body)));
+    }
+
+    @Test
+    void rejectsNestedSequenceNumbersWithoutRecursing() {
+        // Deep enough to overflow the stack if every level were decoded.
+        int depth = 200_000;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int i = 0; i < depth; i++) {
+            body.write(BinaryShapeCodec.TAG_SEQUENCED);
+            body.write(new byte[]{0, 0, 0, 0, 0, 1}, 0, 6); // Color, thickness and sequence number.
+        }
+        byte[] clear = bodyOf(new Clear(Color.WHITE, 0));
+        body.write(clear, 0, clear.length);
+        assertThrows(StreamCorruptedException.class,
+                () -> BinaryShapeCodec.decode(ByteBuffer.wrap(body.toByteArray())));
+    }
+
+    @Test
+    void rejectsBadHeaders() {
+        byte[] header = {'R', 'P', 2};
+        assertThrows(StreamCorruptedException.class,
+                () -> WireFormat.BINARY.newInput(new ByteArrayInputStream(header)));
+        assertThrows(EOFException.class,
+                () -> WireFormat.BINARY.newInput(new ByteArrayInputStream(new byte[0])));
+        assertThrows(StreamCorruptedException.class,
+                () -> WireFormat.JAVA.newInput(new ByteArrayInputStream(WireFormat.BINARY.header())));
+    }
+
+    @Test
+    void rejectsHugeFrames() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(WireFormat.BINARY.header());
+        BinaryShapeCodec.writeVarInt(bytes, BinaryShapeCodec.MAX_FRAME_LENGTH + 1);
+        try (ShapeInput input = WireFormat.BINARY.newInput(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertThrows(StreamCorruptedException.class, input::read);
+        }
+    }
+
+    static byte[] bodyOf(Shape shape) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        BinaryShapeCodec.encode(shape, body);
+        return body.toByteArray();
+    }
+
+    @Test
+    void javaRejectsAFreehandWithABadPointCount() throws IOException {
+        Freehand freehand = new Freehand(Color.RED, 3);
+        freehand.addPoint(1, 2);
+        freehand.addPoint(3, 4);
+        freehand.addPoint(5, 6);
+        byte[] frame = WireFormat.JAVA.encodeFrame(freehand);
+
+        // The int fields are written in the order of their names: count, maxX, maxY, minX and minY.
+        byte[] fields = ByteBuffer.allocate(20).putInt(3).putInt(5).putInt(6).putInt(1).putInt(2).array();
+        int at = indexOf(frame, fields);
+        assertTrue(at > 0, "Point count not found in the frame");
+        for (int count : new int[] {-1, Integer.MAX_VALUE, BinaryShapeCodec.MAX_FRAME_LENGTH / 8 + 1}) {
+            byte[] corrupt = frame.clone();
+            ByteBuffer.wrap(corrupt, at, 4).putInt(count);
+            ByteBuffer buffer = ByteBuffer.wrap(corrupt);
+            BinaryShapeCodec.readFrameLength(buffer);
+            assertThrows(InvalidObjectException.class, () -> WireFormat.JAVA.decode(buffer), "Count " + count);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            boolean found = true;
+            for (int j = 0; j < part.length && found; j++) {
+                found = bytes[i + j] == part[j];
+            }
+            if (found) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,105 @@
+package se.miun.dt176g.ebni2100.reactive.Protocol;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams many shapes over a loopback socket in each wire format, and checks that the heap used by the two
+ * ends stays flat, so a long session does not hold on to the shapes it sent.
+ */
+class ShapeStreamSoakTest {
+
+    private static final int SHAPES = 200_000;
+    private static final int SAMPLES = 5;
+
+    // Largest growth of the heap between the first and the last sample. Streams that keep every shape they
+    // sent grow by more than 50 MB over the run.
+    private static final long MAX_GROWTH = 16 * 1024 * 1024;
+
+    private static Shape shape(int i) {
+        Shape shape;
+        if (i % 2 == 0) {
+            shape = new Rectangle(Color.RED, 2);
+            shape.setSize(10, 20);
+        } else {
+            Freehand freehand = new Freehand(Color.BLUE, 3);
+            for (int k = 0; k < 8; k++) {
+                freehand.addPoint(k, i % 500);
+            }
+            shape = freehand;
+        }
+        shape.setPosition(i % 900, i % 700);
+        return shape;
+    }
+
+    private static long heapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        Thread.sleep(100);
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void soak(WireFormat format) throws Exception {
+        try (ServerSocket server = new ServerSocket(0);
+             Socket client = new Socket("localhost", server.getLocalPort());
+             Socket accepted = server.accept()) {
+            int[] received = {0};
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try (ShapeInput input = format.newInput(accepted.getInputStream())) {
+                    for (int i = 0; i < SHAPES; i++) {
+                        input.read();
+                        received[0]++;
+                    }
+                } catch (IOException | ClassNotFoundException e) {
+                    failure.set(e);
+                }
+            });
+            reader.start();
+
+            ShapeOutput output = format.newOutput(client.getOutputStream());
+            long first = 0;
+            long last = 0;
+            for (int i = 0; i < SHAPES; i++) {
+                output.write(shape(i));
+                if ((i + 1) % (SHAPES / SAMPLES) == 0) {
+                    last = heapAfterGc();
+                    if (first == 0) {
+                        first = last;
+                    }
+                }
+            }
+            reader.join();
+            output.close();
+
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+            assertEquals(SHAPES, received[0]);
+            assertTrue(last - first < MAX_GROWTH, format + " heap grew from " + first / 1024 + " kB to "
+                    + last / 1024 + " kB");
+        }
+    }
+
+    @Test
+    void javaStreamHeapStaysFlat() throws Exception {
+        soak(WireFormat.JAVA);
+    }
+
+    @Test
+    void binaryStreamHeapStaysFlat() throws Exception {
+        soak(WireFormat.BINARY);
+    }
+}
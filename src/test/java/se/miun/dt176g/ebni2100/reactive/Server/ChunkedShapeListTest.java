@@ -0,0 +1,131 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.awt.Color;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Draws into one room from many writers while a reader iterates the canvas, and checks that every view the
+ * reader gets is complete and consistent.
+ */
+class ChunkedShapeListTest {
+
+    private static final int WRITERS = 8;
+    private static final int SHAPES_PER_WRITER = 5000;
+
+    private final RoomRegistry registry = new RoomRegistry(2, WireFormat.BINARY, 0, null);
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        registry.shutdown(1000);
+    }
+
+    /**
+     * Creates the shape a writer draws, holding the writer in its x and the count in its y.
+     */
+    private static Shape shape(int writer, int index) {
+        Rectangle rectangle = new Rectangle(Color.RED, 1);
+        rectangle.setPosition(writer, index);
+        rectangle.setSize(1, 1);
+        return rectangle;
+    }
+
+    /**
+     * Checks that a view holds no gaps, and the shapes of each writer in the order they were drawn.
+     * @return the number of shapes in the view.
+     */
+    private static int check(List<Shape> view) {
+        int[] next = new int[WRITERS];
+        int size = view.size();
+        for (int i = 0; i < size; i++) {
+            Shape shape = view.get(i);
+            if (shape == null) {
+                throw new AssertionError("Missing shape " + i + " of " + size);
+            }
+            if (shape.getY() != next[shape.getX()]++) {
+                throw new AssertionError("Shape " + i + " of writer " + shape.getX() + " is out of order");
+            }
+        }
+        if (view.size() != size) {
+            throw new AssertionError("View changed from " + size + " to " + view.size() + " shapes");
+        }
+        return size;
+    }
+
+    @Test
+    void readersSeeConsistentViewsWhileWritersDraw() throws InterruptedException {
+        Room room = registry.get("stress");
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers[w] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < SHAPES_PER_WRITER; i++) {
+                    room.accept(shape(writer, i)).blockingGet();
+                }
+            });
+            writers[w].start();
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            int seen = 0;
+            try {
+                while (writing.get()) {
+                    int size = check(room.getShapes());
+                    if (size < seen) {
+                        throw new AssertionError("Canvas shrank from " + seen + " to " + size + " shapes");
+                    }
+                    seen = size;
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        reader.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(WRITERS * SHAPES_PER_WRITER, check(room.getShapes()));
+    }
+
+    @Test
+    void snapshotsDoNotChangeWithLaterShapes() {
+        ChunkedShapeList list = new ChunkedShapeList();
+        for (int i = 0; i < 3000; i++) {
+            list.add(shape(0, i));
+        }
+        List<Shape> snapshot = list.snapshot();
+        for (int i = 3000; i < 5000; i++) {
+            list.add(shape(0, i));
+        }
+        assertEquals(3000, check(snapshot));
+        assertEquals(5000, check(list.snapshot()));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.get(3000));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(shape(0, 0)));
+    }
+}
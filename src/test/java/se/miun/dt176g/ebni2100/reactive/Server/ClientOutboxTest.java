@@ -0,0 +1,73 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.ebni2100.reactive.Client.Clear;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeFrame;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Overflows the queue of a client that never drains it, and checks what the drop-oldest policy keeps.
+ */
+class ClientOutboxTest {
+
+    private static ShapeFrame frame(Shape shape) {
+        return ShapeFrame.of(shape, WireFormat.BINARY);
+    }
+
+    private static ShapeFrame rectangle(int x) {
+        Rectangle rectangle = new Rectangle(Color.RED, 1);
+        rectangle.setPosition(x, 0);
+        return frame(rectangle);
+    }
+
+    private static List<Shape> drain(ClientOutbox outbox) {
+        List<Shape> shapes = new ArrayList<>();
+        ShapeFrame frame;
+        while ((frame = outbox.poll()) != null) {
+            shapes.add(frame.getShape());
+        }
+        return shapes;
+    }
+
+    @Test
+    void dropOldestKeepsClearsJoinsAndStrokeParts() {
+        ClientOutbox outbox = new ClientOutbox(4, ClientOutbox.SlowConsumerPolicy.DROP_OLDEST,
+                () -> { throw new AssertionError("Snapshot taken"); }, ready -> { }, slow -> { });
+        ShapeFrame join = frame(new JoinRoom("room"));
+        ShapeFrame clear = frame(new Clear(Color.WHITE, 0));
+        ShapeFrame end = frame(StrokeDelta.end(7));
+        ShapeFrame first = rectangle(1);
+        ShapeFrame second = rectangle(2);
+        outbox.offer(join);
+        outbox.offer(first);
+        outbox.offer(clear);
+        outbox.offer(end);
+        outbox.offer(second);
+
+        assertEquals(List.of(join.getShape(), clear.getShape(), end.getShape(), second.getShape()), drain(outbox));
+        assertEquals(1, outbox.dropped());
+    }
+
+    @Test
+    void dropOldestFallsBackToASnapshotWhenNothingCanBeDropped() {
+        ShapeFrame snapshot = frame(new Clear(Color.WHITE, 0));
+        ClientOutbox outbox = new ClientOutbox(2, ClientOutbox.SlowConsumerPolicy.DROP_OLDEST,
+                () -> List.of(snapshot), ready -> { }, slow -> { });
+        outbox.offer(frame(new JoinRoom("room")));
+        outbox.offer(frame(new Clear(Color.WHITE, 0)));
+        outbox.offer(rectangle(1));
+
+        assertEquals(List.of(snapshot.getShape()), drain(outbox));
+        assertEquals(2, outbox.dropped());
+    }
+}
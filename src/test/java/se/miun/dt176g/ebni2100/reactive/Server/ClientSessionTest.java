@@ -0,0 +1,75 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two clients in one room send parts of the same stroke, and only the one that began it may draw it.
+ */
+class ClientSessionTest {
+
+    private static final long STROKE = 7;
+
+    private final RoomRegistry registry = new RoomRegistry(1, WireFormat.BINARY, 100, null);
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        registry.shutdown(1000);
+    }
+
+    private ClientSession connect() throws IOException {
+        ClientSession session = new ClientSession(registry, 0);
+        session.setOutbox(new ClientOutbox(1000, ClientOutbox.SlowConsumerPolicy.DROP_OLDEST,
+                Collections::emptyList, ready -> {}, overflow -> {}));
+        session.receive(new JoinRoom("strokes")).blockingGet();
+        return session;
+    }
+
+    private static StrokeDelta part(StrokeDelta.Phase phase, int x) {
+        return new StrokeDelta(Color.RED, 2, STROKE, phase, new int[] {x}, new int[] {x});
+    }
+
+    private static void send(ClientSession session, Shape shape) throws IOException {
+        session.receive(shape).blockingGet();
+    }
+
+    @Test
+    void onlyTheClientThatBeganAStrokeDrawsIt() throws IOException {
+        ClientSession owner = connect();
+        ClientSession other = connect();
+
+        send(owner, part(StrokeDelta.Phase.BEGIN, 1));
+        send(other, part(StrokeDelta.Phase.BEGIN, 100));
+        send(other, part(StrokeDelta.Phase.APPEND, 101));
+        send(other, StrokeDelta.end(STROKE));
+        Room room = owner.getRoom();
+        assertTrue(room.getShapes().isEmpty(), "The stroke was ended by another client");
+
+        send(owner, part(StrokeDelta.Phase.APPEND, 2));
+        send(owner, StrokeDelta.end(STROKE));
+        List<Shape> shapes = room.getShapes();
+        assertEquals(1, shapes.size());
+        Freehand freehand = (Freehand) shapes.get(0);
+        assertEquals(2, freehand.getPointCount());
+        assertEquals(1, freehand.getPointX(0));
+        assertEquals(2, freehand.getPointX(1));
+
+        // Once ended, the id may be used by another client.
+        send(other, part(StrokeDelta.Phase.BEGIN, 100));
+        send(other, StrokeDelta.end(STROKE));
+        assertEquals(2, room.getShapes().size());
+    }
+}
@@ -0,0 +1,254 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.ebni2100.reactive.Client.Clear;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Protocol.BinaryShapeCodec;
+import se.miun.dt176g.ebni2100.reactive.Protocol.PeerCodec;
+import se.miun.dt176g.ebni2100.reactive.Protocol.PeerMessage;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a leader and followers in one JVM, linked over localhost, and checks that every node ends up with the
+ * same rooms.
+ */
+class ReplicationTest {
+
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    private final List<RoomRegistry> registries = new ArrayList<>();
+    private final List<ReplicationFollower> followers = new ArrayList<>();
+    private ReplicationLeader leader;
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        followers.forEach(ReplicationFollower::close);
+        if (leader != null) {
+            leader.close();
+        }
+        for (RoomRegistry registry : registries) {
+            registry.shutdown(1000);
+        }
+    }
+
+    private RoomRegistry newRegistry() {
+        RoomRegistry registry = new RoomRegistry(2, WireFormat.BINARY, 1000, null);
+        registries.add(registry);
+        return registry;
+    }
+
+    private RoomRegistry startLeader() throws Exception {
+        RoomRegistry rooms = newRegistry();
+        leader = new ReplicationLeader(rooms, 0);
+        leader.start();
+        return rooms;
+    }
+
+    private RoomRegistry startFollower() {
+        RoomRegistry rooms = newRegistry();
+        ReplicationFollower follower = new ReplicationFollower(rooms, "localhost", leader.getPort());
+        followers.add(follower);
+        follower.start();
+        return rooms;
+    }
+
+    /**
+     * Gets the state of a room as its sequence number and its shapes in their binary encoding.
+     */
+    private static List<String> stateOf(RoomRegistry rooms, String name) {
+        Room room = rooms.find(name);
+        if (room == null) {
+            return null;
+        }
+        List<String> state = new ArrayList<>();
+        for (PeerMessage message : room.state().blockingGet()) {
+            if (message.getType() == PeerMessage.Type.SYNC) {
+                state.add("sequence " + message.getSequence() + ", epoch " + message.getEpoch());
+            } else if (message.getShape() != null) {
+                state.add(Base64.getEncoder().encodeToString(BinaryShapeCodec.encodeFrame(message.getShape())));
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Waits until every follower has the same state of the rooms as the leader.
+     */
+    private static void awaitConverged(RoomRegistry leaderRooms, List<RoomRegistry> followerRooms,
+                                       List<String> names) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        for (RoomRegistry rooms : followerRooms) {
+            for (String name : names) {
+                List<String> expected = stateOf(leaderRooms, name);
+                List<String> actual = stateOf(rooms, name);
+                while (!expected.equals(actual) && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                    expected = stateOf(leaderRooms, name);
+                    actual = stateOf(rooms, name);
+                }
+                assertEquals(expected, actual, "Room " + name);
+            }
+        }
+    }
+
+    /**
+     * Waits until the shapes drawn on a follower reach the leader.
+     */
+    private static void awaitLinked(RoomRegistry leaderRooms, RoomRegistry followerRooms) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (leaderRooms.find("link") == null && System.currentTimeMillis() < deadline) {
+            followerRooms.get("link").accept(new Clear(Color.WHITE, 0)).blockingGet();
+            Thread.sleep(50);
+        }
+        assertTrue(leaderRooms.find("link") != null, "Follower did not link");
+    }
+
+    /**
+     * Draws rectangles, strokes in three parts and now and then a clear into random rooms.
+     */
+    private static void draw(RoomRegistry rooms, long drawer, int shapes, List<String> names) {
+        Random random = new Random(drawer);
+        for (int i = 0; i < shapes; i++) {
+            Room room = rooms.get(names.get(random.nextInt(names.size())));
+            int kind = random.nextInt(20);
+            if (kind == 0) {
+                room.accept(new Clear(Color.WHITE, 0)).blockingGet();
+            } else if (kind < 10) {
+                Rectangle rectangle = new Rectangle(Color.RED, 2);
+                rectangle.setPosition(random.nextInt(1000), random.nextInt(800));
+                rectangle.setSize(1 + random.nextInt(100), 1 + random.nextInt(100));
+                room.accept(rectangle).blockingGet();
+            } else {
+                long id = drawer * 1_000_000 + i;
+                int x = random.nextInt(1000);
+                int y = random.nextInt(800);
+                room.accept(new StrokeDelta(Color.BLUE, 3, id, StrokeDelta.Phase.BEGIN,
+                        new int[] {x}, new int[] {y})).blockingGet();
+                room.accept(new StrokeDelta(Color.BLUE, 3, id, StrokeDelta.Phase.APPEND,
+                        new int[] {x + 5, x + 9}, new int[] {y + 3, y - 2})).blockingGet();
+                room.accept(StrokeDelta.end(id)).blockingGet();
+            }
+        }
+    }
+
+    @Test
+    void nodesConvergeWhileDrawingConcurrently() throws Exception {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            names.add("room-" + i);
+        }
+        RoomRegistry leaderRooms = startLeader();
+        List<RoomRegistry> nodes = new ArrayList<>();
+        nodes.add(leaderRooms);
+        for (int i = 0; i < 2; i++) {
+            RoomRegistry followerRooms = startFollower();
+            awaitLinked(leaderRooms, followerRooms);
+            nodes.add(followerRooms);
+        }
+
+        List<Thread> drawers = new ArrayList<>();
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int thread = 0; thread < 3; thread++) {
+                RoomRegistry rooms = nodes.get(node);
+                long drawer = node * 10 + thread + 1;
+                Thread drawing = new Thread(() -> draw(rooms, drawer, 300, names));
+                drawers.add(drawing);
+                drawing.start();
+            }
+        }
+        // One more follower links while the others draw, and is synced with rooms that keep changing.
+        Thread.sleep(100);
+        RoomRegistry lateFollower = startFollower();
+        for (Thread drawing : drawers) {
+            drawing.join();
+        }
+
+        List<RoomRegistry> followerRooms = new ArrayList<>(nodes.subList(1, nodes.size()));
+        followerRooms.add(lateFollower);
+        awaitConverged(leaderRooms, followerRooms, names);
+    }
+
+    @Test
+    void syncsARoomLargerThanAFrame() throws Exception {
+        RoomRegistry leaderRooms = startLeader();
+        Room room = leaderRooms.get("large");
+        long bytes = 0;
+        for (int i = 0; bytes <= BinaryShapeCodec.MAX_FRAME_LENGTH; i++) {
+            // Points far apart, so each coordinate takes several bytes.
+            Freehand freehand = new Freehand(Color.RED, 2);
+            for (int point = 0; point < 200_000; point++) {
+                freehand.addPoint(point % 2 == 0 ? 0 : 1_000_000, i);
+            }
+            room.accept(freehand).blockingGet();
+            bytes += BinaryShapeCodec.encodeFrame(freehand).length;
+        }
+
+        RoomRegistry followerRooms = startFollower();
+        awaitConverged(leaderRooms, List.of(followerRooms), List.of("large"));
+
+        for (PeerMessage message : room.state().blockingGet()) {
+            assertTrue(PeerCodec.encodeFrame(message).length < BinaryShapeCodec.MAX_FRAME_LENGTH);
+        }
+    }
+
+    @Test
+    void dropsOnlyTheShapesOfAnInvalidRoom() throws Exception {
+        RoomRegistry leaderRooms = startLeader();
+        Freehand freehand = new Freehand(Color.BLUE, 4);
+        freehand.addPoint(1, 2);
+        try (PeerLink link = new PeerLink(new Socket("localhost", leader.getPort()))) {
+            link.send(PeerMessage.forward("not a room!", freehand));
+            link.send(PeerMessage.forward("valid", freehand));
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (leaderRooms.find("valid") == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, leaderRooms.find("valid").state().blockingGet().get(0).getSequence());
+            assertFalse(link.isClosed());
+        }
+    }
+
+    @Test
+    void roundTripsEveryMessage() throws Exception {
+        Freehand freehand = new Freehand(Color.BLUE, 4);
+        freehand.addPoint(1, 2);
+        freehand.addPoint(-3, 4);
+        List<PeerMessage> messages = Arrays.asList(
+                PeerMessage.forward("a", freehand),
+                PeerMessage.event("b", 7, freehand),
+                PeerMessage.sync("c", -5, 9),
+                PeerMessage.syncShape("c", freehand),
+                PeerMessage.syncEnd("c"));
+        for (PeerMessage message : messages) {
+            byte[] frame = PeerCodec.encodeFrame(message);
+            PeerMessage decoded = PeerCodec.read(new DataInputStream(new ByteArrayInputStream(frame)));
+            assertEquals(message.getType(), decoded.getType());
+            assertEquals(message.getRoom(), decoded.getRoom());
+            assertEquals(message.getEpoch(), decoded.getEpoch());
+            assertEquals(message.getSequence(), decoded.getSequence());
+            Shape shape = message.getShape();
+            if (shape != null) {
+                assertArrayEquals(BinaryShapeCodec.encodeFrame(shape), BinaryShapeCodec.encodeFrame(decoded.getShape()));
+            }
+        }
+    }
+}
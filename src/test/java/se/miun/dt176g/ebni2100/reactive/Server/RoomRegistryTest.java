@@ -0,0 +1,51 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Clients join more rooms than the registry allows, and only the rooms within the maximum are created.
+ */
+class RoomRegistryTest {
+
+    private final RoomRegistry registry = new RoomRegistry(1, WireFormat.BINARY, 100, null);
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        registry.shutdown(1000);
+    }
+
+    @Test
+    void clientsCannotCreateMoreRoomsThanTheMaximum() {
+        registry.setMaxRooms(3);
+        Room first = registry.join("first");
+        registry.join("second");
+
+        assertThrows(IllegalStateException.class, () -> registry.join("third"));
+        assertSame(first, registry.join("first"));
+        registry.join(JoinRoom.DEFAULT_ROOM);
+        assertEquals(3, registry.getRooms().size());
+    }
+
+    @Test
+    void sessionIsRejectedPastTheMaximum() throws IOException {
+        registry.setMaxRooms(1);
+        ClientSession session = new ClientSession(registry, 0);
+        session.setOutbox(new ClientOutbox(1000, ClientOutbox.SlowConsumerPolicy.DROP_OLDEST,
+                Collections::emptyList, ready -> {}, overflow -> {}));
+
+        assertThrows(InvalidObjectException.class, () -> session.receive(new JoinRoom("other")));
+        session.receive(new JoinRoom(JoinRoom.DEFAULT_ROOM)).blockingGet();
+        assertEquals(1, registry.getRooms().size());
+    }
+}
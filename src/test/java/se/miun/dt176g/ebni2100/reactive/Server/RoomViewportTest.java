@@ -0,0 +1,239 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import io.reactivex.rxjava3.disposables.Disposable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.ebni2100.reactive.Client.Clear;
+import se.miun.dt176g.ebni2100.reactive.Client.JoinRoom;
+import se.miun.dt176g.ebni2100.reactive.Client.Shape;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Viewport;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Rectangle;
+import se.miun.dt176g.ebni2100.reactive.Protocol.BinaryShapeCodec;
+import se.miun.dt176g.ebni2100.reactive.Protocol.ShapeFrame;
+import se.miun.dt176g.ebni2100.reactive.Protocol.WireFormat;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reconnects clients that only see part of the canvas, and checks that they end up with the same shapes and
+ * open strokes as a client joining the same tiles from scratch.
+ */
+class RoomViewportTest {
+
+    private static final Viewport VIEWPORT = new Viewport(0, 0, 300, 300);
+
+    private final RoomRegistry registry = new RoomRegistry(1, WireFormat.BINARY, 1000, null);
+    private final Room room = registry.get("viewport");
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        registry.shutdown(1000);
+    }
+
+    /**
+     * A client applying what it is sent like the drawing client does.
+     */
+    private class Client {
+        final List<Shape> shapes = new ArrayList<>();
+        final Map<Long, Freehand> strokes = new LinkedHashMap<>();
+        long epoch;
+        long lastSequence;
+        boolean viewportReplied;
+        ClientOutbox outbox;
+        Disposable membership;
+
+        void join(long after) {
+            outbox = new ClientOutbox(1 << 20, ClientOutbox.SlowConsumerPolicy.DROP_OLDEST, Collections::emptyList,
+                    ready -> {}, overflow -> {});
+            viewportReplied = false;
+            membership = room.join(outbox, new JoinRoom(room.getName(), epoch, after), VIEWPORT).blockingGet();
+            receive();
+        }
+
+        void leave() {
+            room.leave(membership).blockingAwait();
+            outbox.close();
+        }
+
+        void receive() {
+            for (ShapeFrame frame = outbox.poll(); frame != null; frame = outbox.poll()) {
+                Shape shape = frame.getShape();
+                if (frame.getSequence() > 0) {
+                    lastSequence = frame.getSequence();
+                }
+                if (shape instanceof JoinRoom) {
+                    epoch = ((JoinRoom) shape).getEpoch();
+                    lastSequence = ((JoinRoom) shape).getSequence();
+                } else if (shape instanceof Viewport) {
+                    viewportReplied = true;
+                    shapes.clear();
+                    strokes.clear();
+                } else if (shape instanceof StrokeDelta) {
+                    apply((StrokeDelta) shape);
+                } else if (shape instanceof Clear) {
+                    shapes.clear();
+                } else {
+                    shapes.add(shape);
+                }
+            }
+        }
+
+        private void apply(StrokeDelta delta) {
+            long id = delta.getStrokeId();
+            switch (delta.getPhase()) {
+                case BEGIN:
+                    strokes.put(id, delta.toFreehand());
+                    break;
+                case APPEND: {
+                    Freehand freehand = strokes.get(id);
+                    if (freehand != null) {
+                        delta.appendTo(freehand);
+                    }
+                    break;
+                }
+                default: {
+                    Freehand freehand = strokes.remove(id);
+                    if (freehand != null) {
+                        shapes.add(freehand);
+                    }
+                }
+            }
+        }
+
+        List<String> drawing() {
+            List<String> encoded = new ArrayList<>();
+            for (Shape shape : shapes) {
+                encoded.add(encode(shape));
+            }
+            Collections.sort(encoded);
+            strokes.forEach((id, freehand) -> encoded.add(id + ":" + encode(freehand)));
+            return encoded;
+        }
+    }
+
+    private static String encode(Shape shape) {
+        return Base64.getEncoder().encodeToString(BinaryShapeCodec.encodeFrame(shape));
+    }
+
+    private void draw(Shape shape) {
+        room.accept(shape).blockingGet();
+    }
+
+    private void rectangle(int x, int y) {
+        Rectangle rectangle = new Rectangle(Color.RED, 2);
+        rectangle.setPosition(x, y);
+        rectangle.setSize(150, 150);
+        draw(rectangle);
+    }
+
+    private void beginStroke(long id) {
+        draw(new StrokeDelta(Color.BLUE, 3, id, StrokeDelta.Phase.BEGIN, new int[0], new int[0]));
+    }
+
+    private void appendStroke(long id, int fromX, int fromY, int toX, int toY) {
+        int[] xs = new int[16];
+        int[] ys = new int[16];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = fromX + (toX - fromX) * i / (xs.length - 1);
+            ys[i] = fromY + (toY - fromY) * i / (xs.length - 1);
+        }
+        draw(new StrokeDelta(Color.BLUE, 3, id, StrokeDelta.Phase.APPEND, xs, ys));
+    }
+
+    private void endStroke(long id) {
+        draw(StrokeDelta.end(id));
+    }
+
+    private void assertSameAsFreshJoin(Client client) {
+        Client fresh = new Client();
+        fresh.join(0);
+        assertEquals(fresh.drawing(), client.drawing());
+        assertEquals(fresh.lastSequence, client.lastSequence);
+        fresh.leave();
+    }
+
+    @Test
+    void resumesOnTheSameTiles() {
+        Client client = new Client();
+        client.join(0);
+        assertTrue(client.viewportReplied);
+
+        rectangle(100, 100);
+        rectangle(2000, 2000);
+        beginStroke(1); // Open across the reconnect, without parts while the client is away.
+        appendStroke(1, 50, 50, 120, 80);
+        client.receive();
+        client.leave();
+
+        rectangle(450, -100);
+        rectangle(-3000, 100);
+        beginStroke(2); // Drawn from far away onto the tiles while the client is away.
+        appendStroke(2, 1500, 100, 900, 100);
+        appendStroke(2, 900, 100, 200, 100);
+        endStroke(2);
+        beginStroke(3); // Never reaches the tiles.
+        appendStroke(3, 3000, 3000, 3100, 3100);
+        endStroke(3);
+        beginStroke(4); // Still open when the client is back.
+        appendStroke(4, 1000, 50, 480, 60);
+        draw(new Clear(Color.WHITE, 0));
+        rectangle(10, 10);
+
+        client.join(client.lastSequence);
+        assertFalse(client.viewportReplied, "Resumed client was sent the tiles again");
+        assertSameAsFreshJoin(client);
+
+        appendStroke(1, 120, 80, 200, 200);
+        endStroke(1);
+        appendStroke(4, 480, 60, 300, 300);
+        endStroke(4);
+        client.receive();
+        assertSameAsFreshJoin(client);
+        client.leave();
+    }
+
+    @Test
+    void sendsTheTilesAgainWhenAStrokeWasDrawnAcrossTheReconnect() {
+        Client client = new Client();
+        client.join(0);
+        beginStroke(5);
+        appendStroke(5, 10, 10, 100, 100);
+        client.receive();
+        client.leave();
+
+        appendStroke(5, 100, 100, 200, 150);
+        rectangle(20, 20);
+
+        client.join(client.lastSequence);
+        assertTrue(client.viewportReplied);
+        assertSameAsFreshJoin(client);
+        client.leave();
+    }
+
+    @Test
+    void sendsTheTilesAgainForAnotherEpoch() {
+        Client client = new Client();
+        client.join(0);
+        rectangle(30, 30);
+        client.receive();
+        client.leave();
+
+        client.epoch++;
+        client.join(client.lastSequence);
+        assertTrue(client.viewportReplied);
+        assertSameAsFreshJoin(client);
+        client.leave();
+    }
+}
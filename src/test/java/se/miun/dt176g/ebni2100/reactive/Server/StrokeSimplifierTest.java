@@ -0,0 +1,119 @@
+package se.miun.dt176g.ebni2100.reactive.Server;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.ebni2100.reactive.Client.StrokeDelta;
+import se.miun.dt176g.ebni2100.reactive.Client.Shapes.Freehand;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Renders random strokes before and after simplification, whole and as parts the way the drawing panel sends
+ * them, and checks that no pixel of either rendering is further from the other than the tolerance allows.
+ */
+class StrokeSimplifierTest {
+
+    private static final int SIZE = 400;
+    private static final double FACTOR = 0.5;
+    private static final int[] THICKNESSES = {2, 5, 8};
+
+    @Test
+    void simplifiedStrokesLookTheSame() {
+        Random random = new Random(1);
+        int pointsDrawn = 0;
+        int pointsKept = 0;
+        for (int trial = 0; trial < 40; trial++) {
+            int thickness = THICKNESSES[trial % THICKNESSES.length];
+            Freehand raw = new Freehand(Color.BLACK, thickness);
+            Freehand viaParts = new Freehand(Color.BLACK, thickness);
+            StrokeSimplifier simplifier = new StrokeSimplifier(FACTOR);
+            simplifier.simplify(new StrokeDelta(Color.BLACK, thickness, trial, StrokeDelta.Phase.BEGIN,
+                    new int[0], new int[0]));
+
+            // A random walk that turns smoothly, sent in parts of 16 points.
+            double x = SIZE / 2.0;
+            double y = SIZE / 2.0;
+            double angle = 0;
+            int count = 300 + random.nextInt(500);
+            List<int[]> part = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                angle += random.nextGaussian() * 0.15;
+                x = Math.max(20, Math.min(SIZE - 20, x + Math.cos(angle) * 1.5));
+                y = Math.max(20, Math.min(SIZE - 20, y + Math.sin(angle) * 1.5));
+                raw.addPoint((int) x, (int) y);
+                part.add(new int[] {(int) x, (int) y});
+                if (part.size() == 16 || i == count - 1) {
+                    int[] xs = part.stream().mapToInt(point -> point[0]).toArray();
+                    int[] ys = part.stream().mapToInt(point -> point[1]).toArray();
+                    StrokeDelta simplified = (StrokeDelta) simplifier.simplify(new StrokeDelta(Color.BLACK,
+                            thickness, trial, StrokeDelta.Phase.APPEND, xs, ys));
+                    simplified.appendTo(viaParts);
+                    part.clear();
+                }
+            }
+            Freehand whole = (Freehand) new StrokeSimplifier(FACTOR).simplify(raw);
+
+            // The tolerance, the corners of the square caps, and a pixel of rasterization.
+            double allowed = FACTOR * thickness + thickness * (Math.sqrt(2) - 1) / 2 + 1;
+            assertLooksLike(raw, whole, allowed, "Trial " + trial + ", whole");
+            assertLooksLike(raw, viaParts, allowed, "Trial " + trial + ", in parts");
+            pointsDrawn += raw.getPointCount() * 2;
+            pointsKept += whole.getPointCount() + viaParts.getPointCount();
+        }
+        assertTrue(pointsKept < pointsDrawn / 2, "Kept " + pointsKept + " of " + pointsDrawn + " points");
+    }
+
+    private static void assertLooksLike(Freehand expected, Freehand actual, double allowed, String what) {
+        boolean[][] a = render(expected);
+        boolean[][] b = render(actual);
+        double distance = Math.max(farthestPixel(a, b), farthestPixel(b, a));
+        assertTrue(distance <= allowed, what + ": a pixel is " + distance + " px off, allowed " + allowed);
+    }
+
+    private static boolean[][] render(Freehand freehand) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        freehand.draw(g);
+        g.dispose();
+        boolean[][] painted = new boolean[SIZE][SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                painted[i][j] = (image.getRGB(i, j) >>> 24) != 0;
+            }
+        }
+        return painted;
+    }
+
+    /**
+     * Gets the largest distance from a pixel painted in one rendering to the nearest pixel painted in the other.
+     */
+    private static double farthestPixel(boolean[][] from, boolean[][] to) {
+        List<int[]> targets = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                if (to[i][j]) {
+                    targets.add(new int[] {i, j});
+                }
+            }
+        }
+        double farthest = 0;
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                if (from[i][j] && !to[i][j]) {
+                    double nearest = Double.MAX_VALUE;
+                    for (int[] target : targets) {
+                        nearest = Math.min(nearest, Math.hypot(target[0] - i, target[1] - j));
+                    }
+                    farthest = Math.max(farthest, nearest);
+                }
+            }
+        }
+        return farthest;
+    }
+}